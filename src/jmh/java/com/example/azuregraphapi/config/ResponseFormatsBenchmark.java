@@ -0,0 +1,67 @@
+package com.example.azuregraphapi.config;
+
+import com.example.azuregraphapi.dto.UserDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding cost and size of a 999-user page with memberships in each response format.
+ * Run with mvn -Pbenchmark test -Djmh.args="ResponseFormats -f 1"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResponseFormatsBenchmark {
+
+	@Param({"application/json", "application/x-jackson-smile", "application/cbor"})
+	public String format;
+
+	private ObjectMapper mapper;
+	private List<UserDTO> users;
+
+	/**
+	 * Encoded size, reported as the "bytes" column
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Size {
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		mapper = new ResponseFormats(new ObjectMapper(), new Jackson2ObjectMapperBuilder())
+				.mapperFor(MediaType.parseMediaType(format));
+		users = ResponseFormatsTests.samplePage(999);
+	}
+
+	@Benchmark
+	public byte[] encode(Size size) throws Exception {
+		byte[] encoded = mapper.writeValueAsBytes(users);
+		size.bytes = encoded.length;
+		return encoded;
+	}
+}
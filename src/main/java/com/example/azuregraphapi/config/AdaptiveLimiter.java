@@ -0,0 +1,385 @@
+package com.example.azuregraphapi.config;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Concurrency limit that adapts to Graph's behaviour with AIMD (additive increase, multiplicative decrease).
+ *
+ * Each call that completes under the latency threshold raises the limit by 1/limit, so the limit
+ * grows by about one per round of calls; a 429/503 response or a call over the threshold shrinks
+ * it by the backoff ratio. Callers over the limit wait in a queue of bounded length and are
+ * rejected when the queue is full or the wait exceeds the maxWait of their class.
+ *
+ * The limit is shared by priority classes, given in priority order:
+ * <ul>
+ *   <li>a class only starts a call while the classes before it keep their reserved slots free, so
+ *   when throttling shrinks the limit the lower classes give up capacity first (never below one slot)</li>
+ *   <li>while several classes have work, each runs at most its share of the limit; an idle class's
+ *   share goes to the others</li>
+ *   <li>a freed slot goes to the eligible waiter with the earliest enqueue time plus its class's aging
+ *   offset, so a lower class waits at most that offset behind newer higher-priority calls</li>
+ * </ul>
+ *
+ * Within a class, waiting callers are queued per tenant and released by weighted fair queuing (stride
+ * scheduling): each tenant's queue advances its virtual pass by 1/weight per released call and the
+ * queue with the lowest pass goes next (on a tie the tenant that has been waiting longest), so a tenant
+ * with a deep backlog cannot delay the other tenants' calls. maxQueue applies per tenant and class.
+ */
+public class AdaptiveLimiter {
+
+    /**
+     * @param share      relative share of the limit while other classes have work too
+     * @param reserve    slots the classes after this one leave free
+     * @param agingMillis offset added to the enqueue time of waiting calls when picking the next one
+     * @param maxWait    longest a call of this class waits for a permit
+     */
+    public record PriorityClass(String name, int share, int reserve, long agingMillis, long maxWait) {}
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long latencyThresholdMillis;
+    private final double backoffRatio;
+
+    private final ToIntFunction<String> weights;
+
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    private int queued;
+    private double limit;
+    private int inFlight;
+
+    /**
+     * Limiter with a single class
+     *
+     * @param weights scheduling weight per tenant, at least 1
+     */
+    public AdaptiveLimiter(String name, LimiterProperties.Bulkhead settings, long latencyThresholdMillis,
+                           double backoffRatio, ToIntFunction<String> weights) {
+        this(name, settings, List.of(new PriorityClass(name, 1, 0, 0, settings.getMaxWait())),
+                latencyThresholdMillis, backoffRatio, weights);
+    }
+
+    /**
+     * @param classes priority classes, highest priority first
+     * @param weights scheduling weight per tenant, at least 1
+     */
+    public AdaptiveLimiter(String name, LimiterProperties.Bulkhead settings, List<PriorityClass> classes,
+                           long latencyThresholdMillis, double backoffRatio, ToIntFunction<String> weights) {
+        this.name = name;
+        this.minLimit = settings.getMinLimit();
+        this.maxLimit = settings.getMaxLimit();
+        this.maxQueue = settings.getMaxQueue();
+        this.latencyThresholdMillis = latencyThresholdMillis;
+        this.backoffRatio = backoffRatio;
+        this.weights = weights;
+        this.limit = settings.getInitialLimit();
+        int reservedAbove = 0;
+        for (PriorityClass priorityClass : classes) {
+            lanes.put(priorityClass.name(), new Lane(priorityClass, reservedAbove));
+            reservedAbove += priorityClass.reserve();
+        }
+    }
+
+    /**
+     * Wait for a permit of the first (or only) class
+     */
+    public Mono<Permit> acquire(String tenant) {
+        return acquire(lanes.keySet().iterator().next(), tenant);
+    }
+
+    /**
+     * Wait for a permit; errors with {@link LimitExceededException} when the queue is full or maxWait passes
+     */
+    public Mono<Permit> acquire(String priorityClass, String tenant) {
+        Lane lane = lanes.get(priorityClass);
+        if (lane == null) {
+            return Mono.error(new IllegalArgumentException("Unknown priority class: " + priorityClass));
+        }
+        return Mono.<Permit>create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            List<Waiter> granted;
+            synchronized (this) {
+                if (queued == 0 && canStart(lane)) {
+                    lane.inFlight++;
+                    inFlight++;
+                    sink.success(new Permit(lane));
+                    return;
+                }
+                TenantQueue queue = lane.queues.computeIfAbsent(tenant, TenantQueue::new);
+                if (queue.waiters.size() >= maxQueue) {
+                    sink.error(new LimitExceededException("Graph " + name + " bulkhead is full for "
+                            + lane.settings.name() + " calls"));
+                    return;
+                }
+                if (queue.waiters.isEmpty()) {
+                    // A tenant becoming active starts at the current virtual time, idle time earns no credit
+                    queue.pass = Math.max(queue.pass, lane.virtualTime);
+                }
+                waiter.lane = lane;
+                waiter.queue = queue;
+                waiter.enqueuedAt = System.nanoTime();
+                queue.waiters.addLast(waiter);
+                lane.queued++;
+                queued++;
+                // The new waiter may outrank the queued calls of a class that is at its share
+                granted = dispatch();
+            }
+            sink.onCancel(() -> {
+                Permit permit;
+                synchronized (this) {
+                    if (waiter.permit == null && waiter.queue.waiters.remove(waiter)) {
+                        waiter.lane.queued--;
+                        queued--;
+                        removeIfEmpty(waiter.lane, waiter.queue);
+                    }
+                    permit = waiter.permit;
+                }
+                // Granted concurrently with the cancellation: nobody will use it
+                if (permit != null) {
+                    permit.cancel();
+                }
+            });
+            signal(granted);
+        }).timeout(Duration.ofMillis(lane.settings.maxWait()), Mono.error(() ->
+                new LimitExceededException("Timed out waiting for the Graph " + name + " bulkhead")));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public synchronized int getInFlight(String priorityClass) {
+        return lanes.get(priorityClass).inFlight;
+    }
+
+    public synchronized int getQueued(String priorityClass) {
+        return lanes.get(priorityClass).queued;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param counted false for cancelled calls, which free their slot without adjusting the limit
+     */
+    private void release(Lane lane, boolean counted, boolean overloaded, long latencyMillis) {
+        List<Waiter> granted;
+        synchronized (this) {
+            lane.inFlight--;
+            inFlight--;
+            if (counted && (overloaded || latencyMillis > latencyThresholdMillis)) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (counted) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            granted = dispatch();
+        }
+        signal(granted);
+    }
+
+    /**
+     * Hand out free slots to the waiters with the earliest aged enqueue time; caller holds the lock
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        while (queued > 0) {
+            Lane next = null;
+            long nextRank = Long.MAX_VALUE;
+            for (Lane lane : lanes.values()) {
+                if (lane.queued == 0 || !canStart(lane)) {
+                    continue;
+                }
+                long rank = head(lane).waiters.peekFirst().enqueuedAt + lane.agingNanos;
+                if (next == null || rank < nextRank) {
+                    next = lane;
+                    nextRank = rank;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            next.inFlight++;
+            inFlight++;
+            Waiter waiter = pollNext(next);
+            waiter.permit = new Permit(next);
+            granted.add(waiter);
+        }
+        return granted;
+    }
+
+    private static void signal(List<Waiter> granted) {
+        for (Waiter waiter : granted) {
+            waiter.sink.success(waiter.permit);
+        }
+    }
+
+    /**
+     * Whether a call of the class fits the limit, the higher classes' reserve and the class's share;
+     * caller holds the lock
+     */
+    private boolean canStart(Lane lane) {
+        int current = (int) limit;
+        if (inFlight >= current) {
+            return false;
+        }
+        if (inFlight >= Math.max(1, current - lane.reservedAbove)) {
+            return false;
+        }
+        int activeShares = 0;
+        for (Lane other : lanes.values()) {
+            if (other == lane || other.inFlight > 0 || other.queued > 0) {
+                activeShares += other.settings.share();
+            }
+        }
+        int cap = (int) Math.ceil((double) current * lane.settings.share() / Math.max(1, activeShares));
+        return lane.inFlight < Math.max(1, cap);
+    }
+
+    /**
+     * Tenant queue of the class with the lowest virtual pass; caller holds the lock
+     */
+    private static TenantQueue head(Lane lane) {
+        TenantQueue next = null;
+        for (TenantQueue queue : lane.queues.values()) {
+            if (next == null || queue.pass < next.pass) {
+                next = queue;
+            }
+        }
+        return next;
+    }
+
+    private Waiter pollNext(Lane lane) {
+        TenantQueue next = head(lane);
+        Waiter waiter = next.waiters.pollFirst();
+        lane.queued--;
+        queued--;
+        lane.virtualTime = next.pass;
+        next.pass += 1.0 / Math.max(1, weights.applyAsInt(next.tenant));
+        removeIfEmpty(lane, next);
+        return waiter;
+    }
+
+    private static void removeIfEmpty(Lane lane, TenantQueue queue) {
+        if (queue.waiters.isEmpty()) {
+            lane.queues.remove(queue.tenant);
+        }
+    }
+
+    private static class Lane {
+        private final PriorityClass settings;
+        private final int reservedAbove;
+        private final long agingNanos;
+        // In activation order, which breaks ties between equal passes
+        private final Map<String, TenantQueue> queues = new LinkedHashMap<>();
+        private double virtualTime;
+        private int queued;
+        private int inFlight;
+
+        Lane(PriorityClass settings, int reservedAbove) {
+            this.settings = settings;
+            this.reservedAbove = reservedAbove;
+            this.agingNanos = settings.agingMillis() * 1_000_000;
+        }
+    }
+
+    private static class TenantQueue {
+        private final String tenant;
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private double pass;
+
+        TenantQueue(String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    private static class Waiter {
+        private final MonoSink<Permit> sink;
+        private Lane lane;
+        private TenantQueue queue;
+        private long enqueuedAt;
+        private Permit permit;
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * One admitted call; must be completed exactly once
+     */
+    public class Permit {
+        private final Lane lane;
+        private final long startedAt = System.nanoTime();
+        private boolean released;
+
+        Permit(Lane lane) {
+            this.lane = lane;
+        }
+
+        /**
+         * @param overloaded true when Graph signalled throttling (429) or unavailability (503)
+         */
+        public void complete(boolean overloaded) {
+            if (markReleased()) {
+                release(lane, true, overloaded, (System.nanoTime() - startedAt) / 1_000_000);
+            }
+        }
+
+        /**
+         * Give the permit back without counting the call, e.g. when it was cancelled
+         */
+        public void cancel() {
+            if (markReleased()) {
+                release(lane, false, false, 0);
+            }
+        }
+
+        private synchronized boolean markReleased() {
+            if (released) {
+                return false;
+            }
+            released = true;
+            return true;
+        }
+    }
+
+    /**
+     * True when the exception or one of its causes is a {@link LimitExceededException}
+     */
+    public static boolean isLimitExceeded(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof LimitExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class LimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+}
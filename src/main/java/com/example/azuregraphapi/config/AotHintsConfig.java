@@ -0,0 +1,57 @@
+package com.example.azuregraphapi.config;
+
+import com.example.azuregraphapi.dto.ChangeSetDTO;
+import com.example.azuregraphapi.dto.DirectoryFilter;
+import com.example.azuregraphapi.dto.ExportJobDTO;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.SessionDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.example.azuregraphapi.dto.UserLookupDTO;
+import com.example.azuregraphapi.dto.UserPageDTO;
+import com.example.azuregraphapi.service.ChangeLogProperties;
+import com.example.azuregraphapi.service.CircuitBreakerProperties;
+import com.example.azuregraphapi.service.CrawlProperties;
+import com.example.azuregraphapi.service.ExportProperties;
+import com.example.azuregraphapi.service.FlightRecorderProperties;
+import com.example.azuregraphapi.service.GroupCountProperties;
+import com.example.azuregraphapi.service.HedgingProperties;
+import com.example.azuregraphapi.service.IdTokenProperties;
+import com.example.azuregraphapi.service.NotificationProperties;
+import com.example.azuregraphapi.service.ResponseCacheProperties;
+import com.example.azuregraphapi.service.SessionProperties;
+import com.example.azuregraphapi.service.SnapshotProperties;
+import com.example.azuregraphapi.service.SyncProperties;
+import com.example.azuregraphapi.service.WarmupProperties;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Reflection hints for the fast-start (AOT) and native builds.
+ * DTOs are serialized by Jackson outside of controller signatures too (response cache, exports,
+ * warm-up), and the properties classes are bound by the configuration binder, so AOT cannot infer
+ * all of them from the code.
+ */
+@Configuration
+@ImportRuntimeHints(AotHintsConfig.Hints.class)
+public class AotHintsConfig {
+
+    static class Hints implements RuntimeHintsRegistrar {
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                    UserDTO.class, GroupDTO.class, RoleDTO.class, UserPageDTO.class, UserLookupDTO.class,
+                    ChangeSetDTO.class, ExportJobDTO.class, SessionDTO.class, DirectoryFilter.class,
+                    AzureProperties.class, GraphProperties.class, LimiterProperties.class, DeadlineProperties.class,
+                    RateLimitProperties.class, TracingProperties.class, ExportProperties.class, SyncProperties.class,
+                    SnapshotProperties.class, WarmupProperties.class, CircuitBreakerProperties.class,
+                    NotificationProperties.class, ChangeLogProperties.class, ResponseCacheProperties.class,
+                    HedgingProperties.class, IdTokenProperties.class, SessionProperties.class,
+                    FlightRecorderProperties.class, GroupCountProperties.class, CrawlProperties.class);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Issues the XSRF-TOKEN cookie on every response. Spring Security only writes it once the token is
+ * read, which nothing in this API does, so browsers signed in with the session cookie would never
+ * get a token to echo in X-XSRF-TOKEN.
+ *
+ * Not a bean on purpose: as one it would also run in the servlet chain, outside the CSRF filter.
+ */
+public class CsrfCookieFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        CsrfToken csrfToken = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+        if (csrfToken != null) {
+            csrfToken.getToken();
+        }
+        filterChain.doFilter(request, response);
+    }
+}
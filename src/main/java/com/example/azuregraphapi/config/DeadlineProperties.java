@@ -0,0 +1,61 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-request deadlines, see {@link RequestDeadlineFilter} (prefix "graph.deadline")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.deadline")
+public class DeadlineProperties {
+    
+    private boolean enabled = true;
+    private String header = "X-Request-Timeout";
+    private long defaultTimeout = 10000;
+    private long maxTimeout = 60000;
+    private Map<String, Long> endpoints = new LinkedHashMap<>();
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public String getHeader() {
+        return header;
+    }
+    
+    public void setHeader(String header) {
+        this.header = header;
+    }
+    
+    public long getDefaultTimeout() {
+        return defaultTimeout;
+    }
+    
+    public void setDefaultTimeout(long defaultTimeout) {
+        this.defaultTimeout = defaultTimeout;
+    }
+    
+    public long getMaxTimeout() {
+        return maxTimeout;
+    }
+    
+    public void setMaxTimeout(long maxTimeout) {
+        this.maxTimeout = maxTimeout;
+    }
+    
+    public Map<String, Long> getEndpoints() {
+        return endpoints;
+    }
+    
+    public void setEndpoints(Map<String, Long> endpoints) {
+        this.endpoints = endpoints;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.azuregraphapi.config;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events of this application, shown under "Azure Graph API" in JDK Mission Control.
+ *
+ * Events are only written while a recording is running (see FlightRecorderService); otherwise
+ * shouldCommit() is false and emitting one costs about an allocation the JIT usually removes.
+ * Stack traces are off, the fields say where an event comes from.
+ */
+public final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    @Name("azuregraphapi.GraphCall")
+    @Label("Graph Call")
+    @Category({"Azure Graph API"})
+    @Description("Outbound HTTP call to Microsoft Graph or the token endpoint, until its body was read")
+    @StackTrace(false)
+    public static class GraphCall extends Event {
+        @Label("Operation")
+        @Description("GraphApiService operation the call belongs to")
+        public String operation;
+
+        @Label("Method")
+        public String method;
+
+        @Label("URI Template")
+        @Description("Request path with ids replaced by {id}, without query")
+        public String uriTemplate;
+
+        @Label("Priority Class")
+        public String priorityClass;
+
+        @Label("Status")
+        public int status;
+
+        @Label("Response Bytes")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("azuregraphapi.SessionLookup")
+    @Label("Session Lookup")
+    @Category({"Azure Graph API"})
+    @Description("Session resolved by SessionAuthenticationFilter for a request")
+    @StackTrace(false)
+    public static class SessionLookup extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("Outcome")
+        @Description("none (no session code sent), valid or invalid")
+        public String outcome;
+    }
+
+    @Name("azuregraphapi.CacheLookup")
+    @Label("Cache Lookup")
+    @Category({"Azure Graph API"})
+    @StackTrace(false)
+    public static class CacheLookup extends Event {
+        @Label("Cache")
+        public String cache;
+
+        @Label("Hit")
+        public boolean hit;
+    }
+
+    /**
+     * Record a lookup in one of the in-memory caches
+     */
+    public static void cacheLookup(String cache, boolean hit) {
+        CacheLookup event = new CacheLookup();
+        if (event.shouldCommit()) {
+            event.cache = cache;
+            event.hit = hit;
+            event.commit();
+        }
+    }
+}
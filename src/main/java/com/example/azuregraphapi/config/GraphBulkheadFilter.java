@@ -0,0 +1,102 @@
+package com.example.azuregraphapi.config;
+
+import com.example.azuregraphapi.dto.SessionDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.List;
+
+/**
+ * Admission control for outbound Graph calls: one adaptive limit shared by three priority classes.
+ *
+ * Calls are tagged with the {@link #ATTRIBUTE} request attribute: {@link #INTERACTIVE} for the
+ * signed-in user's own lookups on the login path, {@link #BACKGROUND} for sync, subscriptions and
+ * exports, and {@link #BULK} (the default) for everything else. Interactive calls go first and keep
+ * graph.limiter.interactive.reserve slots that the other classes never take, so throttling, which
+ * shrinks the shared limit, is absorbed by bulk and background work. Waiting bulk and background calls
+ * age and are not starved by a steady stream of interactive calls, see {@link AdaptiveLimiter}.
+ * The shared maximum limit should stay below graph.client.max-connections so interactive calls always
+ * find a connection. Within a class, waiting calls are scheduled fairly per tenant and weighted by
+ * graph.tenants.*.weight. The tenant is the one of the caller's session, carried in the Reactor context
+ * under {@link #TENANT} by {@link #forCaller(Mono)}; bearer token claims are not trusted for it.
+ */
+@Component
+public class GraphBulkheadFilter implements ExchangeFilterFunction {
+
+    public static final String ATTRIBUTE = "graph.bulkhead";
+    public static final String INTERACTIVE = "interactive";
+    public static final String BULK = "bulk";
+    public static final String BACKGROUND = "background";
+
+    /** Reactor context key holding the TenantRegistry key a call is scheduled under */
+    public static final String TENANT = "graph.bulkhead.tenant";
+
+    private final AdaptiveLimiter limiter;
+    private final String defaultTenant;
+
+    public GraphBulkheadFilter(LimiterProperties settings, TenantRegistry tenantRegistry,
+                               MeterRegistry meterRegistry) {
+        this.limiter = new AdaptiveLimiter("shared", settings.getShared(), List.of(
+                        priorityClass(INTERACTIVE, settings.getInteractive()),
+                        priorityClass(BULK, settings.getBulk()),
+                        priorityClass(BACKGROUND, settings.getBackground())),
+                settings.getLatencyThreshold(), settings.getBackoffRatio(), tenantRegistry::weightOf);
+        this.defaultTenant = tenantRegistry.getDefault().key();
+        registerGauges(meterRegistry, limiter);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> limiter.acquire(priorityClassOf(request),
+                        context.getOrDefault(TENANT, defaultTenant)))
+                .flatMap(permit -> next.exchange(request)
+                        .doOnNext(response -> permit.complete(response.statusCode().value() == 429
+                                || response.statusCode().value() == 503))
+                        .doOnError(e -> permit.complete(false))
+                        .doOnCancel(permit::cancel));
+    }
+
+    static String priorityClassOf(ClientRequest request) {
+        Object priorityClass = request.attribute(ATTRIBUTE).orElse(null);
+        return INTERACTIVE.equals(priorityClass) || BACKGROUND.equals(priorityClass) ? (String) priorityClass : BULK;
+    }
+
+    /**
+     * Schedule a call under the tenant of the current request's session, which SessionAuthenticationFilter
+     * looked up server-side; calls outside a request or without a session count for the default tenant
+     */
+    public static <T> Mono<T> forCaller(Mono<T> call) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object session = attributes != null ?
+                attributes.getAttribute(SessionAuthenticationFilter.SESSION_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) : null;
+        if (session instanceof SessionDTO sessionDTO && sessionDTO.getTenant() != null) {
+            return call.contextWrite(Context.of(TENANT, sessionDTO.getTenant()));
+        }
+        return call;
+    }
+
+    private static AdaptiveLimiter.PriorityClass priorityClass(String name, LimiterProperties.Priority settings) {
+        return new AdaptiveLimiter.PriorityClass(name, settings.getShare(), settings.getReserve(),
+                settings.getAging(), settings.getMaxWait());
+    }
+
+    private static void registerGauges(MeterRegistry meterRegistry, AdaptiveLimiter limiter) {
+        Gauge.builder("graph.bulkhead.limit", limiter, AdaptiveLimiter::getLimit)
+                .tag("bulkhead", limiter.getName()).register(meterRegistry);
+        for (String priorityClass : List.of(INTERACTIVE, BULK, BACKGROUND)) {
+            Gauge.builder("graph.bulkhead.in_flight", limiter, l -> l.getInFlight(priorityClass))
+                    .tag("bulkhead", priorityClass).register(meterRegistry);
+            Gauge.builder("graph.bulkhead.queued", limiter, l -> l.getQueued(priorityClass))
+                    .tag("bulkhead", priorityClass).register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.azuregraphapi.config;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationView;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Emits a {@link FlightEvents.GraphCall} JFR event per outbound call. Runs inside the bulkhead, so the
+ * duration covers the HTTP exchange and reading the body, not the wait for a permit. The operation
+ * is taken from the enclosing "graph.operation" observation of GraphApiService.
+ */
+@Component
+public class GraphCallRecorder implements ExchangeFilterFunction {
+
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+            "/([0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[^/]*@[^/]*)(?=/|$)");
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!new FlightEvents.GraphCall().isEnabled()) {
+            return next.exchange(request);
+        }
+        return Mono.deferContextual(context -> {
+            FlightEvents.GraphCall event = new FlightEvents.GraphCall();
+            event.operation = operationOf(context.getOrDefault(ObservationThreadLocalAccessor.KEY, null));
+            event.method = request.method().name();
+            event.uriTemplate = uriTemplate(request.url().getRawPath());
+            event.priorityClass = request.attribute(GraphBulkheadFilter.ATTRIBUTE).map(Object::toString).orElse("");
+            event.begin();
+            AtomicLong bytes = new AtomicLong();
+            AtomicBoolean committed = new AtomicBoolean();
+            return next.exchange(request)
+                    .map(response -> {
+                        event.status = response.statusCode().value();
+                        return response.mutate()
+                                .body(body -> body
+                                        .doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))
+                                        .doFinally(signal -> commit(event, bytes.get(), committed)))
+                                .build();
+                    })
+                    .doOnError(e -> commit(event, 0, committed))
+                    // Cancelled before a response, e.g. by a hedge or the request deadline
+                    .doOnCancel(() -> commit(event, bytes.get(), committed));
+        });
+    }
+
+    private static void commit(FlightEvents.GraphCall event, long bytes, AtomicBoolean committed) {
+        if (!committed.compareAndSet(false, true)) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Path with object ids and userPrincipalNames replaced by {id}, so calls group by endpoint
+     */
+    static String uriTemplate(String path) {
+        if (path == null) {
+            return "";
+        }
+        return ID_SEGMENT.matcher(path.startsWith("/v1.0/") ? path.substring(5) : path).replaceAll("/{id}");
+    }
+
+    private static String operationOf(Observation observation) {
+        ObservationView current = observation;
+        while (current != null) {
+            KeyValue operation = current.getContextView().getLowCardinalityKeyValue("graph.operation");
+            if (operation != null) {
+                return operation.getValue();
+            }
+            current = current.getContextView().getParentObservation();
+        }
+        return "";
+    }
+}
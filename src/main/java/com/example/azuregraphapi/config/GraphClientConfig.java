@@ -0,0 +1,63 @@
+package com.example.azuregraphapi.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Outbound HTTP clients for Microsoft Graph and the Azure AD token endpoints.
+ * Both share one connection pool so connections opened during warm-up are reused by requests.
+ */
+@Configuration
+public class GraphClientConfig {
+
+    public static final String GRAPH_BASE_URL = "https://graph.microsoft.com/v1.0";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider graphConnectionProvider(GraphProperties graphProperties) {
+        GraphProperties.Client client = graphProperties.getClient();
+        return ConnectionProvider.builder("graph")
+                .maxConnections(client.getMaxConnections())
+                .pendingAcquireTimeout(Duration.ofMillis(client.getPendingAcquireTimeout()))
+                .maxIdleTime(Duration.ofMillis(client.getMaxIdleTime()))
+                .evictInBackground(Duration.ofSeconds(30))
+                .build();
+    }
+
+    @Bean
+    public WebClient graphWebClient(WebClient.Builder builder, ConnectionProvider graphConnectionProvider,
+                                    GraphBulkheadFilter graphBulkheadFilter, GraphCallRecorder graphCallRecorder,
+                                    GraphProperties graphProperties) {
+        return builder.clone()
+                .baseUrl(GRAPH_BASE_URL)
+                .clientConnector(new ReactorClientHttpConnector(httpClient(graphConnectionProvider, graphProperties)))
+                .filter(graphBulkheadFilter)
+                .filter(graphCallRecorder)
+                .build();
+    }
+
+    @Bean
+    public WebClient loginWebClient(WebClient.Builder builder, ConnectionProvider graphConnectionProvider,
+                                    GraphCallRecorder graphCallRecorder, GraphProperties graphProperties) {
+        return builder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient(graphConnectionProvider, graphProperties)))
+                .filter(graphCallRecorder)
+                .build();
+    }
+
+    /**
+     * Connect and response timeouts keep a slow or unreachable Graph from holding request threads indefinitely
+     */
+    private static HttpClient httpClient(ConnectionProvider connectionProvider, GraphProperties graphProperties) {
+        GraphProperties.Client client = graphProperties.getClient();
+        return HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, client.getConnectTimeout())
+                .responseTimeout(Duration.ofMillis(client.getResponseTimeout()));
+    }
+}
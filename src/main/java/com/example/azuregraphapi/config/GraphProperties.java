@@ -0,0 +1,181 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings for Microsoft Graph access: tenants, HTTP client and membership reads (prefix "graph").
+ * Each feature built on it binds its own graph.* prefix, e.g. {@link LimiterProperties}.
+ */
+@Component
+@ConfigurationProperties(prefix = "graph")
+public class GraphProperties {
+    
+    private int membershipConcurrency = 8;
+    private int batchRetries = 2;
+    private long batchRetryDelay = 1000;
+    private String defaultTenant = "default";
+    private Map<String, Tenant> tenants = new LinkedHashMap<>();
+    private Client client = new Client();
+    
+    public int getMembershipConcurrency() {
+        return membershipConcurrency;
+    }
+    
+    public void setMembershipConcurrency(int membershipConcurrency) {
+        this.membershipConcurrency = membershipConcurrency;
+    }
+    
+    public int getBatchRetries() {
+        return batchRetries;
+    }
+    
+    public void setBatchRetries(int batchRetries) {
+        this.batchRetries = batchRetries;
+    }
+    
+    public long getBatchRetryDelay() {
+        return batchRetryDelay;
+    }
+    
+    public void setBatchRetryDelay(long batchRetryDelay) {
+        this.batchRetryDelay = batchRetryDelay;
+    }
+    
+    public String getDefaultTenant() {
+        return defaultTenant;
+    }
+    
+    public void setDefaultTenant(String defaultTenant) {
+        this.defaultTenant = defaultTenant;
+    }
+    
+    public Map<String, Tenant> getTenants() {
+        return tenants;
+    }
+    
+    public void setTenants(Map<String, Tenant> tenants) {
+        this.tenants = tenants;
+    }
+    
+    public Client getClient() {
+        return client;
+    }
+    
+    public void setClient(Client client) {
+        this.client = client;
+    }
+    
+    public static class Client {
+        private int maxConnections = 100;
+        private long pendingAcquireTimeout = 10000;
+        private long maxIdleTime = 60000;
+        private int connectTimeout = 5000;
+        private long responseTimeout = 10000;
+        
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+        
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+        
+        public long getPendingAcquireTimeout() {
+            return pendingAcquireTimeout;
+        }
+        
+        public void setPendingAcquireTimeout(long pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+        }
+        
+        public long getMaxIdleTime() {
+            return maxIdleTime;
+        }
+        
+        public void setMaxIdleTime(long maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+        
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+        
+        public void setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+        
+        public long getResponseTimeout() {
+            return responseTimeout;
+        }
+        
+        public void setResponseTimeout(long responseTimeout) {
+            this.responseTimeout = responseTimeout;
+        }
+    }
+    
+    /**
+     * App registration of one tenant served by this node. When no tenants are configured the
+     * spring.security.oauth2.client registration is used as the only tenant.
+     */
+    public static class Tenant {
+        private String tenantId;
+        private String clientId;
+        private String clientSecret;
+        private List<String> scope;
+        private String authorityHost = "https://login.microsoftonline.com";
+        private int weight = 1;
+        
+        public String getTenantId() {
+            return tenantId;
+        }
+        
+        public void setTenantId(String tenantId) {
+            this.tenantId = tenantId;
+        }
+        
+        public String getClientId() {
+            return clientId;
+        }
+        
+        public void setClientId(String clientId) {
+            this.clientId = clientId;
+        }
+        
+        public String getClientSecret() {
+            return clientSecret;
+        }
+        
+        public void setClientSecret(String clientSecret) {
+            this.clientSecret = clientSecret;
+        }
+        
+        public List<String> getScope() {
+            return scope;
+        }
+        
+        public void setScope(List<String> scope) {
+            this.scope = scope;
+        }
+        
+        public String getAuthorityHost() {
+            return authorityHost;
+        }
+        
+        public void setAuthorityHost(String authorityHost) {
+            this.authorityHost = authorityHost;
+        }
+        
+        public int getWeight() {
+            return weight;
+        }
+        
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+    }
+}
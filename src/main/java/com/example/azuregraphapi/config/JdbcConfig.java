@@ -0,0 +1,52 @@
+package com.example.azuregraphapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The database (spring.datasource), opened only when a feature keeps its state there: the jdbc
+ * session or change store, or the directory crawl. Spring Boot's own DataSource auto-configuration
+ * is excluded, the JdbcTemplate and transaction manager follow this DataSource when it exists.
+ */
+@Configuration
+@Conditional(JdbcConfig.DatabaseUsed.class)
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class JdbcConfig {
+
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+        if (isBlank(dataSourceProperties.getUsername()) || isBlank(dataSourceProperties.getPassword())) {
+            throw new IllegalStateException(
+                    "spring.datasource.username and spring.datasource.password must be configured");
+        }
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    static class DatabaseUsed extends AnyNestedCondition {
+
+        DatabaseUsed() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(prefix = "graph.session", name = "store", havingValue = "jdbc")
+        static class JdbcSessionStore {}
+
+        @ConditionalOnProperty(prefix = "graph.changes", name = "store", havingValue = "jdbc")
+        static class JdbcChangeStore {}
+
+        @ConditionalOnProperty(prefix = "graph.crawl", name = "enabled", havingValue = "true")
+        static class Crawl {}
+    }
+}
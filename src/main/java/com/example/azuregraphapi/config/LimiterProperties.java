@@ -0,0 +1,180 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shared adaptive limit and priority classes of outbound Graph calls (prefix "graph.limiter"),
+ * see {@link GraphBulkheadFilter}
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.limiter")
+public class LimiterProperties {
+    
+    private long latencyThreshold = 2000;
+    private double backoffRatio = 0.7;
+    private Bulkhead shared = new Bulkhead(20, 5, 60, 1000, 30000);
+    private Priority interactive = new Priority(4, 3, 0, 5000);
+    private Priority bulk = new Priority(3, 0, 1000, 30000);
+    private Priority background = new Priority(1, 0, 5000, 60000);
+    
+    public long getLatencyThreshold() {
+        return latencyThreshold;
+    }
+    
+    public void setLatencyThreshold(long latencyThreshold) {
+        this.latencyThreshold = latencyThreshold;
+    }
+    
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+    
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+    
+    public Bulkhead getShared() {
+        return shared;
+    }
+    
+    public void setShared(Bulkhead shared) {
+        this.shared = shared;
+    }
+    
+    public Priority getInteractive() {
+        return interactive;
+    }
+    
+    public void setInteractive(Priority interactive) {
+        this.interactive = interactive;
+    }
+    
+    public Priority getBulk() {
+        return bulk;
+    }
+    
+    public void setBulk(Priority bulk) {
+        this.bulk = bulk;
+    }
+    
+    public Priority getBackground() {
+        return background;
+    }
+    
+    public void setBackground(Priority background) {
+        this.background = background;
+    }
+    
+    /**
+     * Scheduling settings of one priority class of outbound calls, see {@link AdaptiveLimiter.PriorityClass}
+     */
+    public static class Priority {
+        private int share;
+        private int reserve;
+        private long aging;
+        private long maxWait;
+        
+        public Priority() {}
+        
+        public Priority(int share, int reserve, long aging, long maxWait) {
+            this.share = share;
+            this.reserve = reserve;
+            this.aging = aging;
+            this.maxWait = maxWait;
+        }
+        
+        public int getShare() {
+            return share;
+        }
+        
+        public void setShare(int share) {
+            this.share = share;
+        }
+        
+        public int getReserve() {
+            return reserve;
+        }
+        
+        public void setReserve(int reserve) {
+            this.reserve = reserve;
+        }
+        
+        public long getAging() {
+            return aging;
+        }
+        
+        public void setAging(long aging) {
+            this.aging = aging;
+        }
+        
+        public long getMaxWait() {
+            return maxWait;
+        }
+        
+        public void setMaxWait(long maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+    
+    /**
+     * Concurrency settings of one outbound bulkhead, see {@link AdaptiveLimiter}
+     */
+    public static class Bulkhead {
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+        private int maxQueue;
+        private long maxWait;
+        
+        public Bulkhead() {}
+        
+        public Bulkhead(int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWait) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.maxQueue = maxQueue;
+            this.maxWait = maxWait;
+        }
+        
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+        
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+        
+        public int getMinLimit() {
+            return minLimit;
+        }
+        
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+        
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+        
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+        
+        public int getMaxQueue() {
+            return maxQueue;
+        }
+        
+        public void setMaxQueue(int maxQueue) {
+            this.maxQueue = maxQueue;
+        }
+        
+        public long getMaxWait() {
+            return maxWait;
+        }
+        
+        public void setMaxWait(long maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+
+/**
+ * Identity of the caller for admin lists and ownership checks: the directory object id (oid), which
+ * unlike the sign-in name is never changed or reassigned.
+ */
+public final class Principals {
+
+    private Principals() {
+    }
+
+    /**
+     * Object id of the caller: the oid claim of an OAuth2 login, the session's user id otherwise
+     */
+    public static String idOf(Authentication authentication) {
+        if (authentication == null) {
+            return null;
+        }
+        if (authentication.getPrincipal() instanceof OAuth2AuthenticatedPrincipal principal
+                && principal.getAttribute("oid") != null) {
+            return principal.getAttribute("oid");
+        }
+        return authentication.getName();
+    }
+}
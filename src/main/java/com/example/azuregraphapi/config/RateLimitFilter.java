@@ -0,0 +1,68 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Rejects /api requests over the caller's rate limit with 429 and Retry-After before any Graph
+ * work starts. Runs in the security chain after session authentication, so signed-in callers are
+ * limited per user across all their sessions and anonymous ones (login) per client IP. Behind a
+ * proxy the IP comes from X-Forwarded-For, trusted only from server.tomcat.remoteip.internal-proxies.
+ * Change notifications from Graph are not limited; dropping them would lose changes.
+ *
+ * Not a bean on purpose: as one it would also run in the servlet chain, before authentication.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+    private final RateLimitProperties settings;
+
+    public RateLimitFilter(RateLimiter rateLimiter, RateLimitProperties rateLimitProperties) {
+        this.rateLimiter = rateLimiter;
+        this.settings = rateLimitProperties;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return !settings.isEnabled() || !uri.startsWith("/api/") || uri.startsWith("/api/notifications");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String client = authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken) ?
+                "user:" + authentication.getName() : "ip:" + request.getRemoteAddr();
+
+        RateLimiter.Decision decision = rateLimiter.tryAcquire(client, request.getRequestURI());
+        if (decision.allowed()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long retryAfter = Math.max(1, (decision.retryAfterMillis() + 999) / 1000);
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf(retryAfter));
+        response.setContentType("application/json");
+
+        String jsonResponse = "{"
+            + "\"error\": \"Too Many Requests\","
+            + "\"status\": 429,"
+            + "\"message\": \"Rate limit exceeded. Retry after " + retryAfter + " seconds.\","
+            + "\"path\": \"" + request.getRequestURI() + "\","
+            + "\"timestamp\": " + System.currentTimeMillis()
+            + "}";
+
+        response.getWriter().write(jsonResponse);
+    }
+}
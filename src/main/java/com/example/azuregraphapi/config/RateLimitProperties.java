@@ -0,0 +1,92 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Inbound rate limits per user and endpoint, see {@link RateLimiter} (prefix "graph.rate-limit")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.rate-limit")
+public class RateLimitProperties {
+    
+    private boolean enabled = true;
+    private Bucket defaults = new Bucket(20, 10);
+    private Map<String, Bucket> endpoints = new LinkedHashMap<>();
+    private int maxBuckets = 100000;
+    private long sweepInterval = 60000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public Bucket getDefaults() {
+        return defaults;
+    }
+    
+    public void setDefaults(Bucket defaults) {
+        this.defaults = defaults;
+    }
+    
+    public Map<String, Bucket> getEndpoints() {
+        return endpoints;
+    }
+    
+    public void setEndpoints(Map<String, Bucket> endpoints) {
+        this.endpoints = endpoints;
+    }
+    
+    public int getMaxBuckets() {
+        return maxBuckets;
+    }
+    
+    public void setMaxBuckets(int maxBuckets) {
+        this.maxBuckets = maxBuckets;
+    }
+    
+    public long getSweepInterval() {
+        return sweepInterval;
+    }
+    
+    public void setSweepInterval(long sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+    
+    /**
+     * Token bucket of the inbound rate limit, see {@link RateLimiter}
+     */
+    public static class Bucket {
+        private int capacity;
+        private double refillPerSecond;
+        
+        public Bucket() {}
+        
+        public Bucket(int capacity, double refillPerSecond) {
+            this.capacity = capacity;
+            this.refillPerSecond = refillPerSecond;
+        }
+        
+        public int getCapacity() {
+            return capacity;
+        }
+        
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+        
+        public double getRefillPerSecond() {
+            return refillPerSecond;
+        }
+        
+        public void setRefillPerSecond(double refillPerSecond) {
+            this.refillPerSecond = refillPerSecond;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.azuregraphapi.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inbound rate limit: one token bucket per client and endpoint, configured by graph.rate-limit.
+ * Endpoints without their own entry share the client's default bucket.
+ *
+ * Each bucket is a single AtomicLong holding its theoretical arrival time (GCRA): the instant at
+ * which the bucket is full again. Taking a token is one compare-and-set, so requests never lock,
+ * and the map itself is striped. A bucket whose instant has passed is full and carries no state,
+ * so the periodic sweep can drop idle buckets without changing anyone's limit. Once max-buckets
+ * exist, a new client first triggers that sweep; when every bucket is still in use, the 1% closest
+ * to full are evicted, so no client ever shares another's bucket.
+ */
+@Component
+public class RateLimiter {
+
+    /**
+     * @param retryAfterMillis time until the next token, 0 when the request is allowed
+     */
+    public record Decision(boolean allowed, long retryAfterMillis) {}
+
+    private static final Decision ALLOWED = new Decision(true, 0);
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final String DEFAULT_SCOPE = "*";
+
+    private final RateLimitProperties settings;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejected = new ConcurrentHashMap<>();
+
+    public RateLimiter(RateLimitProperties rateLimitProperties, MeterRegistry meterRegistry) {
+        this.settings = rateLimitProperties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("http.ratelimit.buckets", buckets, Map::size)
+                .description("Inbound rate limit buckets in memory").register(meterRegistry);
+    }
+
+    /**
+     * Take a token for a request
+     *
+     * @param client   caller identity, e.g. "user:alice@contoso.com" or "ip:10.0.0.1"
+     * @param endpoint request URI
+     */
+    public Decision tryAcquire(String client, String endpoint) {
+        return tryAcquire(client, endpoint, System.nanoTime());
+    }
+
+    Decision tryAcquire(String client, String endpoint, long now) {
+        RateLimitProperties.Bucket limit = settings.getEndpoints().get(endpoint);
+        String scope = limit != null ? endpoint : DEFAULT_SCOPE;
+        if (limit == null) {
+            limit = settings.getDefaults();
+        }
+
+        String key = scope + " " + client;
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= settings.getMaxBuckets()) {
+                makeRoom(now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(EMPTY));
+        }
+
+        long interval = (long) (1_000_000_000L / Math.max(1e-6, limit.getRefillPerSecond()));
+        long tolerance = interval * Math.max(1, limit.getCapacity());
+        while (true) {
+            long full = bucket.get();
+            long next = (full == EMPTY || full - now < 0 ? now : full) + interval;
+            if (next - now > tolerance) {
+                rejected.computeIfAbsent(scope, s -> Counter.builder("http.ratelimit.rejected").tag("endpoint", s)
+                        .description("Requests rejected by the inbound rate limit").register(meterRegistry)).increment();
+                return new Decision(false, (next - now - tolerance + 999_999) / 1_000_000);
+            }
+            if (bucket.compareAndSet(full, next)) {
+                return ALLOWED;
+            }
+        }
+    }
+
+    /**
+     * Drop full buckets. A request racing with the removal of its bucket may get one extra token.
+     */
+    @Scheduled(initialDelayString = "${graph.rate-limit.sweep-interval:60000}",
+            fixedDelayString = "${graph.rate-limit.sweep-interval:60000}")
+    public void evictIdle() {
+        evictIdle(System.nanoTime());
+    }
+
+    void evictIdle(long now) {
+        buckets.values().removeIf(bucket -> {
+            long full = bucket.get();
+            return full == EMPTY || full - now <= 0;
+        });
+    }
+
+    /**
+     * Drop full buckets, and if that frees nothing the ones closest to full, which lose the fewest tokens
+     */
+    private synchronized void makeRoom(long now) {
+        if (buckets.size() < settings.getMaxBuckets()) {
+            return;
+        }
+        evictIdle(now);
+        int excess = buckets.size() - settings.getMaxBuckets() + 1;
+        if (excess <= 0) {
+            return;
+        }
+        int count = Math.max(excess, settings.getMaxBuckets() / 100);
+        // Max-heap holding the count buckets that are full soonest; values are read once, they keep changing
+        record Candidate(String key, AtomicLong bucket, long fullIn) {}
+        PriorityQueue<Candidate> soonestFull = new PriorityQueue<>(count + 1,
+                Comparator.comparingLong(Candidate::fullIn).reversed());
+        for (Map.Entry<String, AtomicLong> entry : buckets.entrySet()) {
+            long full = entry.getValue().get();
+            soonestFull.add(new Candidate(entry.getKey(), entry.getValue(), full == EMPTY ? Long.MIN_VALUE : full - now));
+            if (soonestFull.size() > count) {
+                soonestFull.poll();
+            }
+        }
+        for (Candidate candidate : soonestFull) {
+            buckets.remove(candidate.key(), candidate.bucket());
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+}
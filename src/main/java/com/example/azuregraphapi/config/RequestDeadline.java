@@ -0,0 +1,76 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Deadline of the HTTP request being served, set by {@link RequestDeadlineFilter}.
+ *
+ * Graph calls made on a request thread wait through {@link #await(Mono)}, which cancels the call
+ * once the deadline passes; cancelling releases the connection and the bulkhead permit. The call is
+ * also scheduled under the caller's tenant, see {@link GraphBulkheadFilter#forCaller(Mono)}. Calls on
+ * other threads (exports, sync, warm-up) have no deadline.
+ */
+public final class RequestDeadline {
+
+    /** Request attribute holding the deadline in epoch millis */
+    public static final String ATTRIBUTE = "graph.request.deadline";
+
+    /**
+     * The request's time budget ran out before Graph answered
+     */
+    public static class DeadlineExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * Deadline of the current request in epoch millis, null outside a request or without a deadline
+     */
+    public static Long current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object deadline = attributes != null ?
+                attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) : null;
+        return deadline instanceof Long ? (Long) deadline : null;
+    }
+
+    /**
+     * Block for the result, at most until the current request's deadline
+     */
+    public static <T> T await(Mono<T> call) {
+        call = GraphBulkheadFilter.forCaller(call);
+        Long deadline = current();
+        if (deadline == null) {
+            return call.block();
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new DeadlineExceededException("Request deadline exceeded before calling Microsoft Graph");
+        }
+        return call
+                .timeout(Duration.ofMillis(remaining), Mono.error(() ->
+                        new DeadlineExceededException("Request deadline exceeded while waiting for Microsoft Graph")))
+                .block();
+    }
+
+    /**
+     * True when the exception or one of its causes is a {@link DeadlineExceededException}
+     */
+    public static boolean isExceeded(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeadlineExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Sets the deadline of every /api request: the client's time budget from the configured header
+ * (milliseconds), otherwise the endpoint's default, capped at graph.deadline.max-timeout
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    private final DeadlineProperties settings;
+
+    public RequestDeadlineFilter(DeadlineProperties deadlineProperties) {
+        this.settings = deadlineProperties;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !settings.isEnabled() || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        long timeout = settings.getEndpoints().getOrDefault(request.getRequestURI(), settings.getDefaultTimeout());
+        String requested = request.getHeader(settings.getHeader());
+        if (requested != null) {
+            try {
+                timeout = Long.parseLong(requested.trim());
+            } catch (NumberFormatException e) {
+                // Ignore malformed budgets and keep the endpoint default
+            }
+        }
+        timeout = Math.max(1, Math.min(timeout, settings.getMaxTimeout()));
+        request.setAttribute(RequestDeadline.ATTRIBUTE, System.currentTimeMillis() + timeout);
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.azuregraphapi.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response encodings offered next to JSON: Smile and CBOR, binary forms of the same Jackson data
+ * model, so the DTOs and their annotations apply unchanged. Internal services ask for them with an
+ * Accept header; browsers keep getting JSON.
+ *
+ * Registers streaming message converters for both formats and provides the mappers used by
+ * {@link com.example.azuregraphapi.service.SerializedResponseCache} for pre-serialized responses.
+ */
+@Component
+public class ResponseFormats implements WebMvcConfigurer {
+
+    public static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+    public static final MediaType CBOR = new MediaType("application", "cbor");
+
+    private final Map<MediaType, ObjectMapper> mappers = new LinkedHashMap<>();
+
+    public ResponseFormats(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder builder) {
+        mappers.put(MediaType.APPLICATION_JSON, objectMapper);
+        // Same modules and features as the JSON mapper, only the encoding differs
+        mappers.put(SMILE, builder.factory(new SmileFactory()).build());
+        mappers.put(CBOR, builder.factory(new CBORFactory()).build());
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new MappingJackson2SmileHttpMessageConverter(mappers.get(SMILE)));
+        converters.add(new MappingJackson2CborHttpMessageConverter(mappers.get(CBOR)));
+    }
+
+    /**
+     * The most preferred supported type of the request's Accept header, JSON when it names none
+     */
+    public MediaType negotiate(HttpServletRequest request) {
+        String accept = request.getHeader("Accept");
+        if (accept == null || accept.isBlank()) {
+            return MediaType.APPLICATION_JSON;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        // Highest quality wins; on a tie the type listed first, and wildcards resolve to JSON
+        MediaType best = MediaType.APPLICATION_JSON;
+        double bestQuality = 0;
+        for (MediaType candidate : accepted) {
+            for (MediaType supported : mappers.keySet()) {
+                if (candidate.includes(supported) && candidate.getQualityValue() > bestQuality) {
+                    best = supported;
+                    bestQuality = candidate.getQualityValue();
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    public ObjectMapper mapperFor(MediaType mediaType) {
+        return mappers.getOrDefault(mediaType, mappers.get(MediaType.APPLICATION_JSON));
+    }
+}
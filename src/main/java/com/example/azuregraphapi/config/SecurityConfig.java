@@ -1,13 +1,19 @@
 package com.example.azuregraphapi.config;
 
+import com.example.azuregraphapi.service.SessionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.csrf.CsrfFilter;
+import org.springframework.security.web.csrf.CsrfTokenRequestAttributeHandler;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.access.AccessDeniedHandler;
 import jakarta.servlet.http.HttpServletResponse;
@@ -21,15 +27,35 @@ public class SecurityConfig {
     @Autowired
     private SessionAuthenticationFilter sessionAuthenticationFilter;
 
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
                 .csrf(csrf -> csrf
-                        .ignoringRequestMatchers("/api/auth/login", "/api/auth/logout")
+                        // Double-submit cookie: browsers signed in with the session cookie echo XSRF-TOKEN
+                        // in X-XSRF-TOKEN; nothing is kept in an HttpSession
+                        .csrfTokenRepository(CookieCsrfTokenRepository.withHttpOnlyFalse())
+                        .csrfTokenRequestHandler(new CsrfTokenRequestAttributeHandler())
+                        .ignoringRequestMatchers("/api/auth/login", "/api/auth/logout", "/api/notifications/**")
+                        // A session code sent as header cannot be forged cross-site, unlike the cookie
+                        .ignoringRequestMatchers(request -> request.getHeader(SessionService.HEADER) != null)
                 )
+                .addFilterAfter(new CsrfCookieFilter(), CsrfFilter.class)
+                // Sessions live in the SessionService store, never in the servlet container
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .addFilterBefore(sessionAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+                // Limits apply per user, so they are checked once the caller is known
+                .addFilterAfter(new RateLimitFilter(rateLimiter, rateLimitProperties), SessionAuthenticationFilter.class)
                 .authorizeHttpRequests(authz -> authz
                         .requestMatchers("/api/auth/login", "/api/auth/logout").permitAll()
+                        .requestMatchers("/actuator/health/**").permitAll()
+                        // Graph posts change notifications without credentials; they carry our clientState instead
+                        .requestMatchers(HttpMethod.POST, "/api/notifications").permitAll()
                         .anyRequest().authenticated()
                 )
                 .exceptionHandling(exceptions -> exceptions
@@ -1,5 +1,7 @@
 package com.example.azuregraphapi.config;
 
+import com.example.azuregraphapi.dto.SessionDTO;
+import com.example.azuregraphapi.service.SessionService;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -10,13 +12,21 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
 import java.util.Collections;
 
 @Component
 public class SessionAuthenticationFilter extends OncePerRequestFilter {
 
+    /** Request attribute holding the caller's {@link SessionDTO} */
+    public static final String SESSION_ATTRIBUTE = "azure.session";
+
+    private final SessionService sessionService;
+
+    public SessionAuthenticationFilter(SessionService sessionService) {
+        this.sessionService = sessionService;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                   FilterChain filterChain) throws ServletException, IOException {
@@ -36,22 +46,27 @@ public class SessionAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
         
-        // Check for session-based authentication
-        HttpSession session = request.getSession(false);
+        // Check for session-based authentication: X-Session-Code header or session cookie
+        FlightEvents.SessionLookup event = new FlightEvents.SessionLookup();
+        event.begin();
+        String code = sessionService.codeOf(request);
+        SessionDTO session = sessionService.find(code);
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = request.getRequestURI();
+            event.outcome = code == null ? "none" : session != null ? "valid" : "invalid";
+            event.commit();
+        }
         if (session != null) {
-            Object authenticated = session.getAttribute("authenticated");
-            Object userId = session.getAttribute("azure_user_id");
-            Object accessToken = session.getAttribute("azure_access_token");
-            
-            if (Boolean.TRUE.equals(authenticated) && userId != null && accessToken != null) {
-                // Create authentication token
-                UsernamePasswordAuthenticationToken authToken = 
-                    new UsernamePasswordAuthenticationToken(userId, null, Collections.emptyList());
-                authToken.setDetails(session.getAttribute("azure_access_token"));
-                
-                // Set authentication in security context
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            }
+            request.setAttribute(SESSION_ATTRIBUTE, session);
+
+            // Create authentication token
+            UsernamePasswordAuthenticationToken authToken =
+                new UsernamePasswordAuthenticationToken(session.getUserId(), null, Collections.emptyList());
+            authToken.setDetails(session.getAccessToken());
+
+            // Set authentication in security context
+            SecurityContextHolder.getContext().setAuthentication(authToken);
         }
         
         filterChain.doFilter(request, response);
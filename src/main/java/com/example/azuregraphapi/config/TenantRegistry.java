@@ -0,0 +1,99 @@
+package com.example.azuregraphapi.config;
+
+import com.example.azuregraphapi.dto.SessionDTO;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tenant-keyed app registrations resolved from graph.tenants, falling back to the single
+ * spring.security.oauth2.client registration when none are configured.
+ */
+@Component
+public class TenantRegistry {
+
+    private final Map<String, Registration> registrations = new LinkedHashMap<>();
+    private final String defaultKey;
+
+    public TenantRegistry(AzureProperties azureProperties, GraphProperties graphProperties) {
+        if (graphProperties.getTenants().isEmpty()) {
+            AzureProperties.Registration.Azure registration = azureProperties.getRegistration().getAzure();
+            AzureProperties.Provider.Azure provider = azureProperties.getProvider().getAzure();
+            register(new Registration(graphProperties.getDefaultTenant(), tenantIdOf(provider.getTokenUri()),
+                    registration.getClientId(), registration.getClientSecret(), registration.getScope(),
+                    provider.getTokenUri(), provider.getJwkSetUri(), 1));
+            defaultKey = graphProperties.getDefaultTenant();
+        } else {
+            for (Map.Entry<String, GraphProperties.Tenant> entry : graphProperties.getTenants().entrySet()) {
+                GraphProperties.Tenant tenant = entry.getValue();
+                String authority = tenant.getAuthorityHost() + "/" + tenant.getTenantId();
+                List<String> scopes = tenant.getScope() != null ?
+                        tenant.getScope() : azureProperties.getRegistration().getAzure().getScope();
+                register(new Registration(entry.getKey(), tenant.getTenantId(), tenant.getClientId(),
+                        tenant.getClientSecret(), scopes, authority + "/oauth2/v2.0/token",
+                        authority + "/discovery/v2.0/keys", tenant.getWeight()));
+            }
+            defaultKey = graphProperties.getTenants().containsKey(graphProperties.getDefaultTenant()) ?
+                    graphProperties.getDefaultTenant() : graphProperties.getTenants().keySet().iterator().next();
+        }
+    }
+
+    public Registration getDefault() {
+        return registrations.get(defaultKey);
+    }
+
+    public Registration get(String key) {
+        Registration registration = registrations.get(key);
+        if (registration == null) {
+            throw new IllegalArgumentException("Unknown tenant: " + key);
+        }
+        return registration;
+    }
+
+    public Collection<Registration> getAll() {
+        return Collections.unmodifiableCollection(registrations.values());
+    }
+
+    /**
+     * Tenant of the caller: the tenant the session signed in with, otherwise the default tenant
+     */
+    public Registration resolve(HttpServletRequest request) {
+        Object session = request != null ? request.getAttribute(SessionAuthenticationFilter.SESSION_ATTRIBUTE) : null;
+        String key = session instanceof SessionDTO ? ((SessionDTO) session).getTenant() : null;
+        return key != null ? get(key) : getDefault();
+    }
+
+    public boolean isDefault(Registration registration) {
+        return defaultKey.equals(registration.key());
+    }
+
+    /**
+     * Scheduling weight of a tenant key, 1 for unknown keys
+     */
+    public int weightOf(String key) {
+        Registration registration = key != null ? registrations.get(key) : null;
+        return registration != null ? Math.max(1, registration.weight()) : 1;
+    }
+
+    private void register(Registration registration) {
+        registrations.put(registration.key(), registration);
+    }
+
+    private static String tenantIdOf(String tokenUri) {
+        if (tokenUri == null) {
+            return null;
+        }
+        String path = URI.create(tokenUri).getPath();
+        String[] segments = path.split("/");
+        return segments.length > 1 ? segments[1] : null;
+    }
+
+    public record Registration(String key, String tenantId, String clientId, String clientSecret,
+                               List<String> scopes, String tokenUri, String jwkSetUri, int weight) {}
+}
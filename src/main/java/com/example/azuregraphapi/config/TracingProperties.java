@@ -0,0 +1,22 @@
+package com.example.azuregraphapi.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Span export to a file, see {@link FileSpanExporter} (prefix "graph.tracing")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.tracing")
+public class TracingProperties {
+    
+    private String file;
+    
+    public String getFile() {
+        return file;
+    }
+    
+    public void setFile(String file) {
+        this.file = file;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.azuregraphapi.controller;
+
+import com.example.azuregraphapi.config.Principals;
+import com.example.azuregraphapi.dto.ExportJobDTO;
+import com.example.azuregraphapi.service.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/exports")
+public class ExportController {
+
+    @Autowired
+    private ExportService exportService;
+
+    /**
+     * Start a full-directory export (users with groups and roles) in the background
+     * Body: {"format": "ndjson" | "csv"}, defaults to ndjson
+     * Restricted to graph.export.admins, as the export reads the directory with the app's permissions
+     */
+    @PostMapping
+    public ResponseEntity<ExportJobDTO> startExport(Authentication authentication,
+                                                    @RequestBody(required = false) Map<String, String> body) {
+        String principal = Principals.idOf(authentication);
+        if (!exportService.isAdmin(principal)) {
+            return ResponseEntity.status(403).build();
+        }
+        try {
+            String format = body != null && body.get("format") != null ? body.get("format") : "ndjson";
+            ExportJobDTO job = exportService.startExport(format, principal);
+            return ResponseEntity.accepted().body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+
+    /**
+     * Get the status of an export job; other users' jobs are not found
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<ExportJobDTO> getExport(Authentication authentication, @PathVariable String id) {
+        ExportJobDTO job = exportService.getJob(id, Principals.idOf(authentication));
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * Download the gzip-compressed output of a completed export
+     * Uses Tomcat's sendfile support when available so the file is sent without copying it through the heap
+     */
+    @GetMapping("/{id}/download")
+    public void downloadExport(Authentication authentication, @PathVariable String id, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        Path file = exportService.getOutputFile(id, Principals.idOf(authentication));
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long length = file.toFile().length();
+        response.setContentType("application/gzip");
+        response.setContentLengthLong(length);
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + file.getFileName() + "\"");
+
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", file.toAbsolutePath().toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+            request.setAttribute("org.apache.tomcat.sendfile.end", length);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < length) {
+                position += channel.transferTo(position, length - position, out);
+            }
+        }
+    }
+}
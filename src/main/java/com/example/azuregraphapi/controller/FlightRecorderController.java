@@ -0,0 +1,104 @@
+package com.example.azuregraphapi.controller;
+
+import com.example.azuregraphapi.config.Principals;
+import com.example.azuregraphapi.service.FlightRecorderService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Control of JDK Flight Recorder recordings for users listed in graph.flight-recorder.admins.
+ * Downloads are .jfr files to open in JDK Mission Control.
+ */
+@RestController
+@RequestMapping("/api/admin/flight-recorder")
+public class FlightRecorderController {
+
+    @Autowired
+    private FlightRecorderService flightRecorderService;
+
+    @GetMapping
+    public ResponseEntity<?> status(Authentication authentication) {
+        if (!isAdmin(authentication)) {
+            return forbidden();
+        }
+        return ResponseEntity.ok(flightRecorderService.status());
+    }
+
+    /**
+     * Start an on-demand recording, e.g. settings=profile&duration=60000
+     */
+    @PostMapping("/start")
+    public ResponseEntity<?> start(Authentication authentication,
+                                   @RequestParam(required = false) String settings,
+                                   @RequestParam(required = false) Long duration) {
+        if (!isAdmin(authentication)) {
+            return forbidden();
+        }
+        try {
+            return ResponseEntity.ok(flightRecorderService.start(settings, duration));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Stop the on-demand recording and download it
+     */
+    @PostMapping("/stop")
+    public void stop(Authentication authentication, HttpServletResponse response) throws IOException {
+        if (!isAdmin(authentication)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        try {
+            send(flightRecorderService.stop(), response);
+        } catch (IllegalStateException e) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, e.getMessage());
+        }
+    }
+
+    /**
+     * Download what was recorded so far, from the on-demand recording if one runs, else the continuous one
+     */
+    @GetMapping("/dump")
+    public void dump(Authentication authentication, HttpServletResponse response) throws IOException {
+        if (!isAdmin(authentication)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        try {
+            send(flightRecorderService.dump(), response);
+        } catch (IllegalStateException e) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, e.getMessage());
+        }
+    }
+
+    private void send(Path file, HttpServletResponse response) throws IOException {
+        try {
+            response.setContentType("application/octet-stream");
+            response.setContentLengthLong(Files.size(file));
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + file.getFileName() + "\"");
+            Files.copy(file, response.getOutputStream());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private boolean isAdmin(Authentication authentication) {
+        return flightRecorderService.isAdmin(Principals.idOf(authentication));
+    }
+
+    private ResponseEntity<Map<String, Object>> forbidden() {
+        return ResponseEntity.status(403).body(Map.of("error", "Flight recordings are restricted to graph.flight-recorder.admins"));
+    }
+}
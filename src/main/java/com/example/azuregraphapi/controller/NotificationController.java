@@ -0,0 +1,156 @@
+package com.example.azuregraphapi.controller;
+
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.example.azuregraphapi.service.NotificationProcessor;
+import com.example.azuregraphapi.service.NotificationProperties;
+import com.example.azuregraphapi.service.SubscriptionManager;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/notifications")
+public class NotificationController {
+
+    @Autowired
+    private NotificationProcessor notificationProcessor;
+
+    @Autowired
+    private SubscriptionManager subscriptionManager;
+
+    @Autowired
+    private TenantRegistry tenantRegistry;
+
+    @Autowired
+    private NotificationProperties notificationProperties;
+
+    @Autowired
+    private ServerProperties serverProperties;
+
+    /**
+     * Endpoint validation by Graph when a subscription is created: echo the token as plain text
+     */
+    @PostMapping(params = "validationToken", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> validate(@RequestParam String validationToken) {
+        return ResponseEntity.ok(validationToken);
+    }
+
+    /**
+     * Receive change and lifecycle notifications from Graph
+     * Notifications are only queued here; Graph expects an answer within a few seconds.
+     * Returns 503 when the queue is full so Graph redelivers later.
+     */
+    @PostMapping
+    public ResponseEntity<?> receive(@RequestBody JsonNode body) {
+        if (body == null || !body.has("value")) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Expected a notification collection"));
+        }
+
+        String defaultTenantId = tenantRegistry.getDefault().tenantId();
+        int rejected = 0;
+        for (JsonNode notification : body.get("value")) {
+            if (!subscriptionManager.isValidClientState(textOrNull(notification, "clientState"))) {
+                rejected++;
+                continue;
+            }
+            String tenantId = textOrNull(notification, "tenantId");
+            if (tenantId != null && defaultTenantId != null && !tenantId.equalsIgnoreCase(defaultTenantId)) {
+                // The directory cache only holds the default tenant
+                continue;
+            }
+
+            NotificationProcessor.Change change = toChange(notification);
+            if (change == null) {
+                continue;
+            }
+            if (!notificationProcessor.offer(change)) {
+                return ResponseEntity.status(503).header("Retry-After", "30")
+                        .body(Map.of("error", "Notification queue is full"));
+            }
+        }
+
+        if (rejected > 0) {
+            System.out.println("Warning: Dropped " + rejected + " notifications with an unknown clientState");
+        }
+        return ResponseEntity.accepted().build();
+    }
+
+    /**
+     * Emit a Graph-shaped notification to this node's receiver, for testing without a public endpoint
+     * It is posted over loopback to the port the request came in on, never to the Host header.
+     * Only available with graph.notifications.stub-enabled=true
+     * Body: {"resource": "users" | "groups", "id": "...", "changeType": "updated" | "deleted"}
+     */
+    @PostMapping("/stub")
+    public ResponseEntity<?> emitStubNotification(HttpServletRequest request, @RequestBody Map<String, String> body) {
+        if (!notificationProperties.isStubEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        String resource = body.getOrDefault("resource", "users");
+        String id = body.get("id");
+        if (id == null || !(resource.equals("users") || resource.equals("groups"))) {
+            return ResponseEntity.badRequest().body(Map.of("error", "resource must be users or groups and id is required"));
+        }
+
+        String odataType = resource.equals("users") ? "#Microsoft.Graph.User" : "#Microsoft.Graph.Group";
+        String path = (resource.equals("users") ? "Users/" : "Groups/") + id;
+        Map<String, Object> notification = Map.of(
+                "subscriptionId", "stub-" + UUID.randomUUID(),
+                "clientState", subscriptionManager.getClientState(),
+                "changeType", body.getOrDefault("changeType", "updated"),
+                "resource", path,
+                "resourceData", Map.of("@odata.type", odataType, "@odata.id", path, "id", id));
+
+        boolean ssl = serverProperties.getSsl() != null && serverProperties.getSsl().isEnabled();
+        String contextPath = serverProperties.getServlet().getContextPath();
+        String receiverUrl = (ssl ? "https" : "http") + "://127.0.0.1:" + request.getLocalPort()
+                + (contextPath != null ? contextPath : "") + "/api/notifications";
+        Integer status = WebClient.create().post()
+                .uri(receiverUrl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("value", List.of(notification)))
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().value()))
+                .block();
+        return ResponseEntity.ok(Map.of("receiverStatus", status));
+    }
+
+    private NotificationProcessor.Change toChange(JsonNode notification) {
+        String lifecycleEvent = textOrNull(notification, "lifecycleEvent");
+        if (lifecycleEvent != null) {
+            if ("missed".equals(lifecycleEvent)) {
+                return new NotificationProcessor.Change(null, null, NotificationProcessor.CHANGE_MISSED);
+            }
+            subscriptionManager.onLifecycleEvent(textOrNull(notification, "subscriptionId"), lifecycleEvent);
+            return null;
+        }
+
+        JsonNode resourceData = notification.get("resourceData");
+        String resource = textOrNull(notification, "resource");
+        String odataType = resourceData != null ? textOrNull(resourceData, "@odata.type") : null;
+        String id = resourceData != null ? textOrNull(resourceData, "id") : null;
+        String typeHint = (odataType != null ? odataType : resource != null ? resource : "").toLowerCase();
+        if (id == null && resource != null && resource.contains("/")) {
+            id = resource.substring(resource.lastIndexOf('/') + 1);
+        }
+
+        String resourceType = typeHint.contains("user") ? NotificationProcessor.TYPE_USER :
+                typeHint.contains("group") ? NotificationProcessor.TYPE_GROUP : null;
+        if (resourceType == null || id == null) {
+            return null;
+        }
+        return new NotificationProcessor.Change(resourceType, id, textOrNull(notification, "changeType"));
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
+}
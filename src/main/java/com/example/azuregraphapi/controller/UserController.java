@@ -1,9 +1,26 @@
 package com.example.azuregraphapi.controller;
 
+import com.example.azuregraphapi.config.AdaptiveLimiter;
+import com.example.azuregraphapi.config.Principals;
+import com.example.azuregraphapi.config.RequestDeadline;
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.example.azuregraphapi.dto.ChangeSetDTO;
+import com.example.azuregraphapi.dto.DirectoryFilter;
 import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.SessionDTO;
 import com.example.azuregraphapi.dto.UserDTO;
+import com.example.azuregraphapi.dto.UserLookupDTO;
+import com.example.azuregraphapi.dto.UserPageDTO;
+import com.example.azuregraphapi.service.ChangeLog;
+import com.example.azuregraphapi.service.DirectoryCache;
 import com.example.azuregraphapi.service.GraphApiService;
+import com.example.azuregraphapi.service.GraphCircuitBreakers;
+import com.example.azuregraphapi.service.SerializedResponseCache;
+import com.example.azuregraphapi.service.SessionProperties;
+import com.example.azuregraphapi.service.SessionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
@@ -18,7 +35,6 @@ import java.util.List;
 import java.util.Map;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
 
 @RestController
@@ -31,31 +47,154 @@ public class UserController {
     @Autowired
     private OAuth2AuthorizedClientService authorizedClientService;
 
+    @Autowired
+    private TenantRegistry tenantRegistry;
+
+    @Autowired
+    private DirectoryCache directoryCache;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private SerializedResponseCache responseCache;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionProperties sessionProperties;
+
     /**
      * Endpoint 1: Get current authenticated user's details including roles and groups
      */
     @GetMapping("/user/profile")
-    public ResponseEntity<UserDTO> getCurrentUserProfile(Authentication authentication, HttpServletRequest request) {
+    public ResponseEntity<?> getCurrentUserProfile(Authentication authentication, HttpServletRequest request) {
         try {
             UserDTO user = graphApiService.getCurrentUser(authentication, request);
-            return ResponseEntity.ok(user);
+            return ok(request).body(user);
+        } catch (GraphCircuitBreakers.GraphUnavailableException e) {
+            return graphUnavailable(e);
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(null);
+            if (RequestDeadline.isExceeded(e)) {
+                return deadlineExceeded();
+            }
+            if (AdaptiveLimiter.isLimitExceeded(e)) {
+                return busy();
+            }
+            return serverError("Failed to get user profile", e);
         }
     }
 
 
 
     /**
-     * Get all users (requires Directory.Read.All permission)
+     * Get users one page at a time (requires Directory.Read.All permission)
+     * The cursor for the next page is returned in the X-Next-Cursor header; it is absent on the last page.
+     * Group and role memberships are only loaded when requested, e.g. expand=groups,roles
+     * department, accountEnabled, userType, namePrefix and search are filtered by Graph; the number
+     * of matching users is then returned in the X-Total-Count header of the first page.
      */
     @GetMapping("/users")
-    public ResponseEntity<List<UserDTO>> getAllUsers(Authentication authentication, HttpServletRequest request) {
+    public ResponseEntity<?> getAllUsers(Authentication authentication, HttpServletRequest request,
+                                         @RequestParam(required = false) Integer pageSize,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) List<String> fields,
+                                         @RequestParam(required = false) List<String> expand,
+                                         DirectoryFilter filter) {
+        try {
+            SerializedResponseCache.Entry cached = responseCache.get(request);
+            if (cached != null) {
+                return serialized(request, cached);
+            }
+            UserPageDTO page = graphApiService.getUsersPage(authentication, request, pageSize, cursor, fields, expand, filter);
+            Map<String, String> headers = new HashMap<>();
+            if (page.getNextCursor() != null) {
+                headers.put("X-Next-Cursor", page.getNextCursor());
+            }
+            if (page.getTotalCount() != null) {
+                headers.put("X-Total-Count", String.valueOf(page.getTotalCount()));
+            }
+            // Neither a stale page nor one missing memberships is kept for other requests
+            if (isStale(request) || page.getMembershipsMissing() != null) {
+                ResponseEntity.BodyBuilder response = ok(request);
+                headers.forEach(response::header);
+                return response.body(page.getUsers());
+            }
+            return serialized(request, responseCache.put(request, page.getUsers(), headers));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (GraphCircuitBreakers.GraphUnavailableException e) {
+            return graphUnavailable(e);
+        } catch (Exception e) {
+            if (RequestDeadline.isExceeded(e)) {
+                return deadlineExceeded();
+            }
+            if (AdaptiveLimiter.isLimitExceeded(e)) {
+                return busy();
+            }
+            return serverError("Failed to get users", e);
+        }
+    }
+
+    /**
+     * Resolve a list of user ids and/or userPrincipalNames (up to 500) in one call
+     * Body: JSON array of keys. Users are returned in input order; keys without a match are listed
+     * in notFound. Memberships are included when requested, e.g. expand=groups,roles
+     */
+    @PostMapping("/users/lookup")
+    public ResponseEntity<?> lookupUsers(Authentication authentication, HttpServletRequest request,
+                                         @RequestBody List<String> keys,
+                                         @RequestParam(required = false) List<String> expand) {
         try {
-            List<UserDTO> users = graphApiService.getAllUsers(authentication, request);
-            return ResponseEntity.ok(users);
+            UserLookupDTO result = graphApiService.lookupUsers(authentication, request, keys, expand);
+            return ok(request).body(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (GraphCircuitBreakers.GraphUnavailableException e) {
+            return graphUnavailable(e);
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(null);
+            if (RequestDeadline.isExceeded(e)) {
+                return deadlineExceeded();
+            }
+            if (AdaptiveLimiter.isLimitExceeded(e)) {
+                return busy();
+            }
+            return serverError("Failed to look up users", e);
+        }
+    }
+
+    /**
+     * Get the users, groups and directory roles changed since a token from an earlier call
+     * Without "since" only the current token is returned; take it before a full read of /api/users.
+     * Users are returned with their current groups and roles. Follow nextToken while hasMore is true.
+     * 410 Gone means the token is too old (or from before a restart) and a full read is needed.
+     * Changes come from the directory cache, so like its other readers the caller must be of the
+     * default tenant with a directory read scope; 403 otherwise.
+     */
+    @GetMapping("/users/changes")
+    public ResponseEntity<?> getUserChanges(Authentication authentication, HttpServletRequest request,
+                                            @RequestParam(required = false) String since,
+                                            @RequestParam(required = false) Integer limit) {
+        if (!graphApiService.canUseCache(authentication, request)) {
+            return ResponseEntity.status(403).body(Map.of("error",
+                    "Changes require a default tenant sign-in with a directory read scope"));
+        }
+        if (!directoryCache.isLoaded()) {
+            return ResponseEntity.status(503).header("Retry-After", "30")
+                    .body(Map.of("error", "Directory cache is still loading"));
+        }
+        try {
+            if (since == null || since.isBlank()) {
+                ChangeSetDTO changes = new ChangeSetDTO();
+                changes.setNextToken(changeLog.currentToken());
+                return ResponseEntity.ok(changes);
+            }
+            return ResponseEntity.ok(changeLog.getChangesSince(since, limit));
+        } catch (ChangeLog.TokenExpiredException e) {
+            return ResponseEntity.status(410).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
@@ -80,7 +219,7 @@ public class UserController {
 
             return ResponseEntity.ok(tokenInfo);
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Failed to get token: " + e.getMessage()));
+            return serverError("Failed to get token", e);
         }
     }
 
@@ -92,12 +231,11 @@ public class UserController {
     public ResponseEntity<Map<String, Object>> getSessionCode(Authentication authentication,
                                                               HttpServletRequest request) {
         try {
-            // Get session ID
-            String sessionId = request.getSession().getId();
-
             // Get user info
             OAuth2AuthenticationToken oauthToken = (OAuth2AuthenticationToken) authentication;
-            String userId = oauthToken.getName();
+            // Identify the user by object id, the sign-in name is only for display
+            String userId = Principals.idOf(oauthToken);
+            String userPrincipalName = oauthToken.getPrincipal().getAttribute("preferred_username");
 
             // Get access token info
             OAuth2AuthorizedClient client = authorizedClientService.loadAuthorizedClient(
@@ -105,9 +243,16 @@ public class UserController {
                     oauthToken.getName()
             );
 
+            // Create a session in the session store for the OAuth2 access token
+            long expiresAt = client.getAccessToken().getExpiresAt() != null ?
+                    client.getAccessToken().getExpiresAt().toEpochMilli() : System.currentTimeMillis() + 3600_000;
+            String sessionId = sessionService.create(new SessionDTO(userId, userPrincipalName, null, tenantRegistry.getDefault().key(),
+                    client.getAccessToken().getTokenValue(), System.currentTimeMillis(), expiresAt));
+
             Map<String, Object> sessionInfo = new HashMap<>();
             sessionInfo.put("session_code", sessionId);
             sessionInfo.put("user_id", userId);
+            sessionInfo.put("user_principal_name", userPrincipalName);
             sessionInfo.put("authenticated", true);
             sessionInfo.put("expires_at", client.getAccessToken().getExpiresAt());
             sessionInfo.put("login_time", System.currentTimeMillis());
@@ -115,7 +260,7 @@ public class UserController {
 
             return ResponseEntity.ok(sessionInfo);
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of("error", "Failed to get session code: " + e.getMessage()));
+            return serverError("Failed to get session code", e);
         }
     }
 
@@ -140,17 +285,29 @@ public class UserController {
                 return ResponseEntity.status(400).body(errorResponse);
             }
 
+            // Optional tenant key for multi-tenant deployments, the default tenant otherwise
+            TenantRegistry.Registration tenant;
+            try {
+                tenant = credentials.get("tenant") != null ?
+                        tenantRegistry.get(credentials.get("tenant")) : tenantRegistry.getDefault();
+            } catch (IllegalArgumentException e) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("authenticated", false);
+                errorResponse.put("error", e.getMessage());
+                return ResponseEntity.status(400).body(errorResponse);
+            }
+
             // Authenticate with Azure AD using username/password
-            Map<String, Object> authResult = graphApiService.authenticateWithCredentials(username, password);
+            Map<String, Object> authResult = graphApiService.authenticateWithCredentials(username, password, tenant);
 
             if ((Boolean) authResult.get("authenticated")) {
-                // Create session
-                String sessionId = request.getSession().getId();
-
-                // Store authentication info in session
-                request.getSession().setAttribute("azure_access_token", authResult.get("access_token"));
-                request.getSession().setAttribute("azure_user_id", authResult.get("user_id"));
-                request.getSession().setAttribute("authenticated", true);
+                // Store authentication info in the session store, valid as long as the access token
+                long expiresAt = ((java.time.Instant) authResult.get("expires_at")).toEpochMilli();
+                SessionDTO session = new SessionDTO((String) authResult.get("user_id"),
+                        (String) authResult.get("user_principal_name"), (String) authResult.get("display_name"), tenant.key(),
+                        (String) authResult.get("access_token"), System.currentTimeMillis(), expiresAt);
+                String sessionCode = sessionService.create(session);
+                response.addHeader(HttpHeaders.SET_COOKIE, sessionService.cookie(sessionCode, expiresAt).toString());
 
                 // Create a Spring Security authentication token
                 UsernamePasswordAuthenticationToken authToken =
@@ -161,11 +318,14 @@ public class UserController {
 
                 Map<String, Object> result = new HashMap<>();
                 result.put("authenticated", true);
-                result.put("session_code", sessionId);
+                result.put("session_code", sessionCode);
                 result.put("user_id", authResult.get("user_id"));
+                result.put("user_principal_name", authResult.get("user_principal_name"));
+                result.put("tenant", tenant.key());
                 result.put("expires_at", authResult.get("expires_at"));
                 result.put("login_time", System.currentTimeMillis());
-                result.put("message", "Use Cookie: JSESSIONID=" + sessionId + " header in subsequent API calls");
+                result.put("message", "Use this session_code as 'X-Session-Code' header (or the "
+                        + sessionProperties.getCookieName() + " cookie) in subsequent API calls");
 
                 response.setContentType("application/json");
                 return ResponseEntity.ok(result);
@@ -177,9 +337,16 @@ public class UserController {
             }
 
         } catch (Exception e) {
+            if (RequestDeadline.isExceeded(e)) {
+                return deadlineExceeded();
+            }
+            if (AdaptiveLimiter.isLimitExceeded(e)) {
+                return busy();
+            }
+            logError("Authentication failed", e);
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("authenticated", false);
-            errorResponse.put("error", "Authentication failed: " + e.getMessage());
+            errorResponse.put("error", "Authentication failed");
 
             response.setContentType("application/json");
             return ResponseEntity.status(500).body(errorResponse);
@@ -193,18 +360,15 @@ public class UserController {
     public ResponseEntity<Map<String, Object>> logout(HttpServletRequest request, HttpServletResponse response) {
         try {
             // Get current session
-            HttpSession session = request.getSession(false);
+            String sessionCode = sessionService.codeOf(request);
+            SessionDTO session = sessionService.find(sessionCode);
 
             Map<String, Object> result = new HashMap<>();
 
             if (session != null) {
-                // Clear session attributes
-                session.removeAttribute("azure_access_token");
-                session.removeAttribute("azure_user_id");
-                session.removeAttribute("authenticated");
-
-                // Invalidate session
-                session.invalidate();
+                // Remove the session from the store on all nodes and clear the cookie
+                sessionService.delete(sessionCode);
+                response.addHeader(HttpHeaders.SET_COOKIE, sessionService.cookie(null, 0).toString());
 
                 result.put("success", true);
                 result.put("message", "Successfully logged out");
@@ -222,9 +386,10 @@ public class UserController {
             return ResponseEntity.ok(result);
 
         } catch (Exception e) {
+            logError("Logout failed", e);
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("success", false);
-            errorResponse.put("error", "Logout failed: " + e.getMessage());
+            errorResponse.put("error", "Logout failed");
 
             response.setContentType("application/json");
             return ResponseEntity.status(500).body(errorResponse);
@@ -232,24 +397,148 @@ public class UserController {
     }
     @GetMapping("/roles")
     @ResponseBody
-    public ResponseEntity<List<String>> getAllCustomRoles(Authentication authentication, HttpServletRequest request) {
+    public ResponseEntity<?> getAllCustomRoles(Authentication authentication, HttpServletRequest request) {
         try {
+            SerializedResponseCache.Entry cached = responseCache.get(request);
+            if (cached != null) {
+                return serialized(request, cached);
+            }
             List<String> roles = graphApiService.getAllCustomRoles(authentication, request);
-            return ResponseEntity.ok(roles);
+            if (isStale(request)) {
+                return ok(request).body(roles);
+            }
+            return serialized(request, responseCache.put(request, roles, Map.of()));
+        } catch (GraphCircuitBreakers.GraphUnavailableException e) {
+            return graphUnavailable(e);
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(null);
+            if (RequestDeadline.isExceeded(e)) {
+                return deadlineExceeded();
+            }
+            if (AdaptiveLimiter.isLimitExceeded(e)) {
+                return busy();
+            }
+            return serverError("Failed to get roles", e);
         }
     }
 
-    // All Security Groups API (returns JSON)
+    // All Security Groups API (returns JSON), optionally filtered by namePrefix and search
+    // withCounts=true adds memberCount to each group
     @GetMapping("/groups")
     @ResponseBody
-    public ResponseEntity<List<GroupDTO>> getAllSecurityGroups(Authentication authentication, HttpServletRequest request) {
+    public ResponseEntity<?> getAllSecurityGroups(Authentication authentication, HttpServletRequest request,
+                                                  DirectoryFilter filter,
+                                                  @RequestParam(defaultValue = "false") boolean withCounts) {
         try {
-            List<GroupDTO> groups = graphApiService.getAllSecurityGroups(authentication, request);
-            return ResponseEntity.ok(groups);
+            SerializedResponseCache.Entry cached = responseCache.get(request);
+            if (cached != null) {
+                return serialized(request, cached);
+            }
+            List<GroupDTO> groups = graphApiService.getAllSecurityGroups(authentication, request, filter);
+            if (withCounts) {
+                groups = graphApiService.withGroupCounts(authentication, request, groups);
+            }
+            if (isStale(request)) {
+                return ok(request).body(groups);
+            }
+            return serialized(request, responseCache.put(request, groups, Map.of()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (GraphCircuitBreakers.GraphUnavailableException e) {
+            return graphUnavailable(e);
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(null);
+            if (RequestDeadline.isExceeded(e)) {
+                return deadlineExceeded();
+            }
+            if (AdaptiveLimiter.isLimitExceeded(e)) {
+                return busy();
+            }
+            return serverError("Failed to get groups", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 200 response builder that flags results served from the last-known-good fallback
+     */
+    private ResponseEntity.BodyBuilder ok(HttpServletRequest request) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        Object staleSince = request.getAttribute(GraphCircuitBreakers.STALE_SINCE_ATTRIBUTE);
+        if (staleSince != null) {
+            response.header("X-Data-Stale", "true");
+            response.header("Age", String.valueOf((System.currentTimeMillis() - (Long) staleSince) / 1000));
+        }
+        return response;
+    }
+
+    private boolean isStale(HttpServletRequest request) {
+        return request.getAttribute(GraphCircuitBreakers.STALE_SINCE_ATTRIBUTE) != null;
+    }
+
+    /**
+     * Write a serialized response as is: 304 when the client has it, gzip bytes when accepted.
+     * The body is already in the negotiated format (JSON, Smile or CBOR).
+     */
+    private ResponseEntity<?> serialized(HttpServletRequest request, SerializedResponseCache.Entry entry) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        boolean notModified = entry.matches(request.getHeader("If-None-Match"));
+        ResponseEntity.BodyBuilder response = notModified ? ResponseEntity.status(304) : ResponseEntity.ok();
+        // Clients may keep the response but must revalidate it; replaces Spring Security's no-store
+        response.eTag(gzip ? entry.gzipEtag() : entry.etag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .header("Vary", "Accept, Accept-Encoding");
+        entry.headers().forEach(response::header);
+        if (notModified) {
+            return response.build();
+        }
+        response.contentType(entry.contentType());
+        if (gzip) {
+            return response.header("Content-Encoding", "gzip").body(entry.gzip());
+        }
+        return response.body(entry.body());
+    }
+
+    private ResponseEntity<Map<String, Object>> deadlineExceeded() {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", "Request deadline exceeded");
+        errorResponse.put("status", 504);
+        errorResponse.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.status(504).body(errorResponse);
+    }
+
+    /**
+     * 503 when too many Graph calls are already waiting on this node; not a Graph outage
+     */
+    private ResponseEntity<Map<String, Object>> busy() {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", "Too many Microsoft Graph calls in progress, retry shortly");
+        errorResponse.put("status", 503);
+        errorResponse.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.status(503).header("Retry-After", "1").body(errorResponse);
+    }
+
+    /**
+     * 503 telling the client when the circuit lets calls through again, or Graph's own Retry-After
+     */
+    private ResponseEntity<Map<String, Object>> graphUnavailable(GraphCircuitBreakers.GraphUnavailableException e) {
+        System.out.println("Warning: " + e.getMessage());
+        long retryAfter = Math.max(1, (e.getRetryAfterMillis() + 999) / 1000);
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", "Microsoft Graph is unavailable, retry after " + retryAfter + " seconds");
+        errorResponse.put("status", 503);
+        errorResponse.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.status(503).header("Retry-After", String.valueOf(retryAfter)).body(errorResponse);
+    }
+
+    /**
+     * 500 with a generic message; the exception, which may carry Graph or token details, is only logged
+     */
+    private ResponseEntity<Map<String, Object>> serverError(String error, Exception e) {
+        logError(error, e);
+        return ResponseEntity.status(500).body(Map.of("error", error));
+    }
+
+    private static void logError(String error, Exception e) {
+        System.out.println("Error: " + error + " - " + e);
+        e.printStackTrace(System.out);
+    }
+}
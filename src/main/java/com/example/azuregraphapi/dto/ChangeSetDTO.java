@@ -0,0 +1,43 @@
+package com.example.azuregraphapi.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChangeSetDTO {
+    private List<UserDTO> users = new ArrayList<>();
+    private List<String> deletedUserIds = new ArrayList<>();
+    private List<GroupDTO> groups = new ArrayList<>();
+    private List<String> deletedGroupIds = new ArrayList<>();
+    private List<RoleDTO> roles = new ArrayList<>();
+    private List<String> deletedRoleIds = new ArrayList<>();
+    private String nextToken;
+    private boolean hasMore;
+
+    // Constructors
+    public ChangeSetDTO() {}
+
+    // Getters and Setters
+    public List<UserDTO> getUsers() { return users; }
+    public void setUsers(List<UserDTO> users) { this.users = users; }
+
+    public List<String> getDeletedUserIds() { return deletedUserIds; }
+    public void setDeletedUserIds(List<String> deletedUserIds) { this.deletedUserIds = deletedUserIds; }
+
+    public List<GroupDTO> getGroups() { return groups; }
+    public void setGroups(List<GroupDTO> groups) { this.groups = groups; }
+
+    public List<String> getDeletedGroupIds() { return deletedGroupIds; }
+    public void setDeletedGroupIds(List<String> deletedGroupIds) { this.deletedGroupIds = deletedGroupIds; }
+
+    public List<RoleDTO> getRoles() { return roles; }
+    public void setRoles(List<RoleDTO> roles) { this.roles = roles; }
+
+    public List<String> getDeletedRoleIds() { return deletedRoleIds; }
+    public void setDeletedRoleIds(List<String> deletedRoleIds) { this.deletedRoleIds = deletedRoleIds; }
+
+    public String getNextToken() { return nextToken; }
+    public void setNextToken(String nextToken) { this.nextToken = nextToken; }
+
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+}
@@ -0,0 +1,40 @@
+package com.example.azuregraphapi.dto;
+
+/**
+ * Query parameters of /api/users and /api/groups that are pushed down to Graph as $filter / $search
+ */
+public class DirectoryFilter {
+    private String department;
+    private Boolean accountEnabled;
+    private String userType;
+    private String namePrefix;
+    private String search;
+
+    // Constructors
+    public DirectoryFilter() {}
+
+    public boolean isEmpty() {
+        return department == null && accountEnabled == null && userType == null
+                && namePrefix == null && search == null;
+    }
+
+    public boolean hasUserOnlyCriteria() {
+        return department != null || accountEnabled != null || userType != null;
+    }
+
+    // Getters and Setters
+    public String getDepartment() { return department; }
+    public void setDepartment(String department) { this.department = department; }
+
+    public Boolean getAccountEnabled() { return accountEnabled; }
+    public void setAccountEnabled(Boolean accountEnabled) { this.accountEnabled = accountEnabled; }
+
+    public String getUserType() { return userType; }
+    public void setUserType(String userType) { this.userType = userType; }
+
+    public String getNamePrefix() { return namePrefix; }
+    public void setNamePrefix(String namePrefix) { this.namePrefix = namePrefix; }
+
+    public String getSearch() { return search; }
+    public void setSearch(String search) { this.search = search; }
+}
@@ -0,0 +1,61 @@
+package com.example.azuregraphapi.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+public class ExportJobDTO {
+    private String id;
+    private String format;
+    private String status;
+    private long usersExported;
+    private long createdAt;
+    private Long completedAt;
+    private String error;
+
+    // Checkpoint state, persisted next to the output file but not exposed through the API
+    @JsonIgnore
+    private String cursor;
+    @JsonIgnore
+    private long bytesWritten;
+    // Object id of the user who started the export, the only one who may see it
+    @JsonIgnore
+    private String owner;
+
+    // Constructors
+    public ExportJobDTO() {}
+
+    public ExportJobDTO(String id, String format) {
+        this.id = id;
+        this.format = format;
+    }
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public long getUsersExported() { return usersExported; }
+    public void setUsersExported(long usersExported) { this.usersExported = usersExported; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public Long getCompletedAt() { return completedAt; }
+    public void setCompletedAt(Long completedAt) { this.completedAt = completedAt; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+
+    public long getBytesWritten() { return bytesWritten; }
+    public void setBytesWritten(long bytesWritten) { this.bytesWritten = bytesWritten; }
+
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+}
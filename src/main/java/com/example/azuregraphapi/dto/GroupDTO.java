@@ -1,10 +1,15 @@
 package com.example.azuregraphapi.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class GroupDTO {
     private String id;
     private String displayName;
     private String description;
     private String groupType;
+    // Only filled in for /api/groups?withCounts=true
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long memberCount;
 
     // Constructors
     public GroupDTO() {}
@@ -27,4 +32,7 @@ public class GroupDTO {
 
     public String getGroupType() { return groupType; }
     public void setGroupType(String groupType) { this.groupType = groupType; }
-}
\ No newline at end of file
+
+    public Long getMemberCount() { return memberCount; }
+    public void setMemberCount(Long memberCount) { this.memberCount = memberCount; }
+}
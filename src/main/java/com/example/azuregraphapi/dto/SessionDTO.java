@@ -0,0 +1,56 @@
+package com.example.azuregraphapi.dto;
+
+/**
+ * A signed-in session as kept in the session store, see SessionService.
+ * userId is the user's object id (oid) and identifies the caller; the user principal name is
+ * only kept for display, since it can be renamed or reassigned.
+ */
+public class SessionDTO {
+    private String userId;
+    private String userPrincipalName;
+    private String displayName;
+    private String tenant;
+    private String accessToken;
+    private long createdAt;
+    private long expiresAt;
+
+    // Constructors
+    public SessionDTO() {}
+
+    public SessionDTO(String userId, String userPrincipalName, String displayName, String tenant,
+                      String accessToken, long createdAt, long expiresAt) {
+        this.userId = userId;
+        this.userPrincipalName = userPrincipalName;
+        this.displayName = displayName;
+        this.tenant = tenant;
+        this.accessToken = accessToken;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    // Getters and Setters
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getUserPrincipalName() { return userPrincipalName; }
+    public void setUserPrincipalName(String userPrincipalName) { this.userPrincipalName = userPrincipalName; }
+
+    public String getDisplayName() { return displayName; }
+    public void setDisplayName(String displayName) { this.displayName = displayName; }
+
+    public String getTenant() { return tenant; }
+    public void setTenant(String tenant) { this.tenant = tenant; }
+
+    public String getAccessToken() { return accessToken; }
+    public void setAccessToken(String accessToken) { this.accessToken = accessToken; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public long getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(long expiresAt) { this.expiresAt = expiresAt; }
+}
@@ -0,0 +1,24 @@
+package com.example.azuregraphapi.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserLookupDTO {
+    private List<UserDTO> users = new ArrayList<>();
+    private List<String> notFound = new ArrayList<>();
+
+    // Constructors
+    public UserLookupDTO() {}
+
+    public UserLookupDTO(List<UserDTO> users, List<String> notFound) {
+        this.users = users;
+        this.notFound = notFound;
+    }
+
+    // Getters and Setters
+    public List<UserDTO> getUsers() { return users; }
+    public void setUsers(List<UserDTO> users) { this.users = users; }
+
+    public List<String> getNotFound() { return notFound; }
+    public void setNotFound(List<String> notFound) { this.notFound = notFound; }
+}
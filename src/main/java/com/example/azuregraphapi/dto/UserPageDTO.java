@@ -0,0 +1,32 @@
+package com.example.azuregraphapi.dto;
+
+import java.util.List;
+
+public class UserPageDTO {
+    private List<UserDTO> users;
+    private String nextCursor;
+    private Long totalCount;
+    // Ids of users on this page whose expanded groups and roles could not be read and are left empty
+    private List<String> membershipsMissing;
+
+    // Constructors
+    public UserPageDTO() {}
+
+    public UserPageDTO(List<UserDTO> users, String nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters and Setters
+    public List<UserDTO> getUsers() { return users; }
+    public void setUsers(List<UserDTO> users) { this.users = users; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+    public Long getTotalCount() { return totalCount; }
+    public void setTotalCount(Long totalCount) { this.totalCount = totalCount; }
+
+    public List<String> getMembershipsMissing() { return membershipsMissing; }
+    public void setMembershipsMissing(List<String> membershipsMissing) { this.membershipsMissing = membershipsMissing; }
+}
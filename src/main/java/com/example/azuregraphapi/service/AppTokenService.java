@@ -0,0 +1,85 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * App-only (client credentials) access tokens for Graph work that runs without a signed-in user,
+ * such as background exports. Tokens are cached per tenant until shortly before they expire.
+ * Requires application permissions (User.Read.All, GroupMember.Read.All) granted to the registration.
+ */
+@Service
+public class AppTokenService {
+
+    private static final String GRAPH_DEFAULT_SCOPE = "https://graph.microsoft.com/.default";
+    private static final long EXPIRY_MARGIN_SECONDS = 300;
+
+    private final TenantRegistry tenantRegistry;
+    private final WebClient webClient;
+    private final Map<String, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    public AppTokenService(TenantRegistry tenantRegistry, WebClient loginWebClient) {
+        this.tenantRegistry = tenantRegistry;
+        this.webClient = loginWebClient;
+    }
+
+    /**
+     * App-only token of the default tenant
+     */
+    public String getAccessToken() {
+        return getAccessToken(tenantRegistry.getDefault());
+    }
+
+    public String getAccessToken(TenantRegistry.Registration tenant) {
+        CachedToken cached = tokens.get(tenant.key());
+        if (cached != null && Instant.now().isBefore(cached.expiresAt().minusSeconds(EXPIRY_MARGIN_SECONDS))) {
+            return cached.accessToken();
+        }
+        synchronized (locks.computeIfAbsent(tenant.key(), key -> new Object())) {
+            cached = tokens.get(tenant.key());
+            if (cached != null && Instant.now().isBefore(cached.expiresAt().minusSeconds(EXPIRY_MARGIN_SECONDS))) {
+                return cached.accessToken();
+            }
+            cached = requestToken(tenant);
+            tokens.put(tenant.key(), cached);
+            return cached.accessToken();
+        }
+    }
+
+    private CachedToken requestToken(TenantRegistry.Registration tenant) {
+        if (tenant.clientSecret() == null || tenant.clientSecret().isBlank()) {
+            throw new IllegalStateException("No client secret configured for app-only access to tenant " + tenant.key());
+        }
+
+        String requestBody = "grant_type=client_credentials" +
+                "&client_id=" + URLEncoder.encode(tenant.clientId(), StandardCharsets.UTF_8) +
+                "&client_secret=" + URLEncoder.encode(tenant.clientSecret(), StandardCharsets.UTF_8) +
+                "&scope=" + URLEncoder.encode(GRAPH_DEFAULT_SCOPE, StandardCharsets.UTF_8);
+
+        JsonNode tokenResponse = webClient.post()
+                .uri(tenant.tokenUri())
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .block();
+
+        if (tokenResponse == null || !tokenResponse.has("access_token")) {
+            throw new IllegalStateException("Token endpoint returned no app-only access token");
+        }
+
+        long expiresIn = tokenResponse.has("expires_in") ? tokenResponse.get("expires_in").asLong() : 3600;
+        return new CachedToken(tokenResponse.get("access_token").asText(), Instant.now().plusSeconds(expiresIn));
+    }
+
+    private record CachedToken(String accessToken, Instant expiresAt) {}
+}
@@ -0,0 +1,166 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.ChangeSetDTO;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Ordered log of the users, groups and directory roles changed in {@link DirectoryCache}, serving
+ * /api/users/changes. Fed by {@link DirectorySyncService} and {@link NotificationProcessor} once the
+ * cache is loaded, so the initial load is not logged.
+ *
+ * Only the latest change per object is kept, and at most graph.changes.max-entries in total, in the
+ * configured {@link ChangeStore}. With the memory store tokens are bound to the process that issued
+ * them; the jdbc store shares the log, so tokens are valid on every node. Tokens older than the oldest
+ * retained change are rejected so the consumer knows to start over with a full read.
+ */
+@Component
+public class ChangeLog {
+
+    public static final String USER = "user";
+    public static final String GROUP = "group";
+    public static final String ROLE = "role";
+
+    /**
+     * The token is from another change log or older than the retained changes
+     */
+    public static class TokenExpiredException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public TokenExpiredException(String message) {
+            super(message);
+        }
+    }
+
+    private final DirectoryCache directoryCache;
+    private final ChangeStore changeStore;
+    private final ChangeLogProperties settings;
+
+    public ChangeLog(DirectoryCache directoryCache, ChangeStore changeStore, ChangeLogProperties changeLogProperties) {
+        this.directoryCache = directoryCache;
+        this.changeStore = changeStore;
+        this.settings = changeLogProperties;
+    }
+
+    /**
+     * Record that an object changed or was deleted; ignored while the cache is still loading
+     */
+    public void record(String type, String id) {
+        if (!directoryCache.isLoaded()) {
+            return;
+        }
+        changeStore.append(type, id);
+    }
+
+    /**
+     * Record the former members of a removed group or role that are users, whose memberships changed
+     */
+    public void recordMembers(Collection<String> memberIds) {
+        for (String memberId : memberIds) {
+            if (directoryCache.getUser(memberId) != null) {
+                record(USER, memberId);
+            }
+        }
+    }
+
+    /**
+     * Token for "now", to be taken before a full read that later changes are applied on top of
+     */
+    public String currentToken() {
+        return encodeToken(changeStore.lastSequence());
+    }
+
+    /**
+     * Objects changed after the token, in their current state
+     *
+     * @param limit maximum number of changed objects, the page size when null
+     * @throws TokenExpiredException when changes after the token are no longer retained
+     * @throws IllegalArgumentException when the token is malformed
+     */
+    public ChangeSetDTO getChangesSince(String token, Integer limit) {
+        long since = decodeToken(token);
+        int max = limit != null && limit > 0 ? Math.min(limit, settings.getPageSize()) : settings.getPageSize();
+
+        if (since > changeStore.lastSequence()) {
+            throw new IllegalArgumentException("Invalid change token");
+        }
+        List<ChangeStore.Change> entries = changeStore.changesAfter(since, max + 1);
+        // Checked after reading, the floor is raised before changes are dropped
+        if (since < changeStore.floor()) {
+            throw new TokenExpiredException("Changes since this token are no longer retained");
+        }
+        boolean hasMore = entries.size() > max;
+        if (hasMore) {
+            entries = entries.subList(0, max);
+        }
+        long last = entries.isEmpty() ? since : entries.get(entries.size() - 1).sequence();
+
+        // Objects are read in their current state, so an object changed twice is only returned once
+        ChangeSetDTO changes = new ChangeSetDTO();
+        for (ChangeStore.Change entry : entries) {
+            switch (entry.type()) {
+                case USER -> {
+                    UserDTO user = directoryCache.getUserWithMemberships(entry.id());
+                    if (user != null) {
+                        changes.getUsers().add(user);
+                    } else {
+                        changes.getDeletedUserIds().add(entry.id());
+                    }
+                }
+                case GROUP -> {
+                    GroupDTO group = directoryCache.getGroup(entry.id());
+                    if (group != null) {
+                        changes.getGroups().add(group);
+                    } else {
+                        changes.getDeletedGroupIds().add(entry.id());
+                    }
+                }
+                case ROLE -> {
+                    RoleDTO role = directoryCache.getRole(entry.id());
+                    if (role != null) {
+                        changes.getRoles().add(role);
+                    } else {
+                        changes.getDeletedRoleIds().add(entry.id());
+                    }
+                }
+                default -> { }
+            }
+        }
+        changes.setNextToken(encodeToken(last));
+        changes.setHasMore(hasMore);
+        return changes;
+    }
+
+    private String encodeToken(long position) {
+        String raw = changeStore.epoch() + ":" + position;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long decodeToken(String token) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid change token");
+        }
+        int separator = raw.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid change token");
+        }
+        try {
+            if (Long.parseLong(raw.substring(0, separator)) != changeStore.epoch()) {
+                throw new TokenExpiredException("Change token was issued by another change log");
+            }
+            return Long.parseLong(raw.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid change token");
+        }
+    }
+}
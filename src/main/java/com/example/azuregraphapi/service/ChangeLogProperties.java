@@ -0,0 +1,49 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Change log behind /api/users/changes, see {@link ChangeLog} (prefix "graph.changes")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.changes")
+public class ChangeLogProperties {
+    
+    private String store = "memory";
+    private int maxEntries = 100000;
+    private int pageSize = 1000;
+    private long trimInterval = 60000;
+    
+    public String getStore() {
+        return store;
+    }
+    
+    public void setStore(String store) {
+        this.store = store;
+    }
+    
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+    
+    public int getPageSize() {
+        return pageSize;
+    }
+    
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+    
+    public long getTrimInterval() {
+        return trimInterval;
+    }
+    
+    public void setTrimInterval(long trimInterval) {
+        this.trimInterval = trimInterval;
+    }
+}
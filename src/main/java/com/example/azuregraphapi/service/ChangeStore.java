@@ -0,0 +1,37 @@
+package com.example.azuregraphapi.service;
+
+import java.util.List;
+
+/**
+ * Backend holding the latest change per directory object for {@link ChangeLog}, and dropping the
+ * oldest beyond graph.changes.max-entries. Selected with graph.changes.store: "memory" or "jdbc".
+ */
+public interface ChangeStore {
+
+    record Change(long sequence, String type, String id) {}
+
+    /**
+     * Identifies this log; tokens issued under another epoch are rejected
+     */
+    long epoch();
+
+    /**
+     * Make this the latest change of the object, after all changes appended before
+     */
+    void append(String type, String id);
+
+    /**
+     * Sequence of the latest change, the floor when there is none
+     */
+    long lastSequence();
+
+    /**
+     * Highest sequence that was dropped from the log
+     */
+    long floor();
+
+    /**
+     * Up to limit changes after the sequence, oldest first
+     */
+    List<Change> changesAfter(long sequence, int limit);
+}
@@ -0,0 +1,67 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-operation circuit breakers, see {@link GraphCircuitBreakers} (prefix "graph.circuit-breaker")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.circuit-breaker")
+public class CircuitBreakerProperties {
+    
+    private int failureRateThreshold = 50;
+    private int windowSize = 20;
+    private int minimumCalls = 10;
+    private long openDuration = 30000;
+    private int halfOpenProbes = 3;
+    private int fallbackMaxEntries = 10000;
+    
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+    
+    public void setFailureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+    
+    public int getWindowSize() {
+        return windowSize;
+    }
+    
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+    
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+    
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+    
+    public long getOpenDuration() {
+        return openDuration;
+    }
+    
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+    
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+    
+    public void setHalfOpenProbes(int halfOpenProbes) {
+        this.halfOpenProbes = halfOpenProbes;
+    }
+    
+    public int getFallbackMaxEntries() {
+        return fallbackMaxEntries;
+    }
+    
+    public void setFallbackMaxEntries(int fallbackMaxEntries) {
+        this.fallbackMaxEntries = fallbackMaxEntries;
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.azuregraphapi.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lease tables coordinating a directory crawl across nodes, in the application DataSource that
+ * all nodes share (see {@link JdbcSessionStore}).
+ *
+ * A round is opened by whichever node inserts its row first. That node lists the directory and
+ * publishes the user ids split into shards by hash. Every node then claims shards one at a time
+ * under a lease of graph.crawl.lease-duration ms, renews it while working, and stores the shard's
+ * result in the table for all nodes to merge. A shard whose lease runs out (node stopped) or whose
+ * owner gave it up (Graph errors) goes back to the pool, until it has been tried max-attempts times;
+ * a round with a shard that ran out of attempts ends FAILED instead of DONE. The listing of a round
+ * is handed over the same way, without a limit. Leases are taken with conditional updates, so no
+ * database locks are held while Graph is called.
+ *
+ * Queries are plain SQL, but the tables are created with H2 types (BLOB, CLOB) and CREATE TABLE IF
+ * NOT EXISTS, so only H2 is supported as is. For another database create both tables beforehand
+ * with its binary and large text types (e.g. BYTEA and TEXT on PostgreSQL).
+ */
+@Component
+@ConditionalOnProperty(prefix = "graph.crawl", name = "enabled", havingValue = "true")
+public class CrawlLeases {
+
+    public static final String LISTING = "LISTING";
+    public static final String CRAWLING = "CRAWLING";
+    public static final String DONE = "DONE";
+    public static final String PENDING = "PENDING";
+    public static final String RUNNING = "RUNNING";
+    public static final String FAILED = "FAILED";
+
+    public record Round(long id, String state, int shards, long startedAt, long finishedAt) {}
+
+    public record Shard(long roundId, int shard, List<String> userIds) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CrawlProperties settings;
+    private final String nodeId;
+
+    public CrawlLeases(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                       CrawlProperties crawlProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.settings = crawlProperties;
+        this.nodeId = settings.getNodeId() != null && !settings.getNodeId().isBlank() ?
+                settings.getNodeId() : defaultNodeId();
+    }
+
+    @PostConstruct
+    public void createTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS graph_crawl_rounds ("
+                + "round_id BIGINT PRIMARY KEY, "
+                + "state VARCHAR(16) NOT NULL, "
+                + "owner VARCHAR(128), "
+                + "lease_until BIGINT NOT NULL, "
+                + "attempts INT NOT NULL, "
+                + "shards INT NOT NULL, "
+                + "directory BLOB, "
+                + "started_at BIGINT NOT NULL, "
+                + "finished_at BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS graph_crawl_shards ("
+                + "round_id BIGINT NOT NULL, "
+                + "shard INT NOT NULL, "
+                + "state VARCHAR(16) NOT NULL, "
+                + "owner VARCHAR(128), "
+                + "lease_until BIGINT NOT NULL, "
+                + "attempts INT NOT NULL, "
+                + "user_ids CLOB NOT NULL, "
+                + "result BLOB, "
+                + "PRIMARY KEY (round_id, shard))");
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Most recent round, null before the first one
+     */
+    public Round latestRound() {
+        return round("SELECT MAX(round_id) FROM graph_crawl_rounds");
+    }
+
+    /**
+     * Most recent round in the given state, null when there is none
+     */
+    public Round latestRound(String state) {
+        return round("SELECT MAX(round_id) FROM graph_crawl_rounds WHERE state = ?", state);
+    }
+
+    private Round round(String maxIdQuery, Object... args) {
+        List<Round> rounds = jdbcTemplate.query("SELECT round_id, state, shards, started_at, finished_at "
+                        + "FROM graph_crawl_rounds WHERE round_id = (" + maxIdQuery + ")",
+                (resultSet, rowNum) -> new Round(resultSet.getLong(1), resultSet.getString(2), resultSet.getInt(3),
+                        resultSet.getLong(4), resultSet.getLong(5)), args);
+        return rounds.isEmpty() ? null : rounds.get(0);
+    }
+
+    /**
+     * Open round roundId with this node holding the listing lease
+     *
+     * @return false when another node opened it first
+     */
+    public boolean openRound(long roundId, long now) {
+        try {
+            jdbcTemplate.update("INSERT INTO graph_crawl_rounds (round_id, state, owner, lease_until, attempts, "
+                            + "shards, started_at, finished_at) VALUES (?, ?, ?, ?, 1, ?, ?, 0)",
+                    roundId, LISTING, nodeId, now + settings.getLeaseDuration(), settings.getShards(), now);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Take over the listing of a round whose lister stopped renewing its lease or gave up on an
+     * error. Listing is retried this way until it succeeds, since without it no node can load.
+     */
+    public boolean claimListing(long roundId, long now) {
+        return jdbcTemplate.update("UPDATE graph_crawl_rounds SET owner = ?, lease_until = ?, attempts = attempts + 1 "
+                        + "WHERE round_id = ? AND state = ? AND lease_until < ?",
+                nodeId, now + settings.getLeaseDuration(), roundId, LISTING, now) == 1;
+    }
+
+    /**
+     * Extend this node's listing lease
+     *
+     * @return false when the lease was lost to another node
+     */
+    public boolean renewListing(long roundId, long now) {
+        return jdbcTemplate.update("UPDATE graph_crawl_rounds SET lease_until = ? "
+                        + "WHERE round_id = ? AND state = ? AND owner = ?",
+                now + settings.getLeaseDuration(), roundId, LISTING, nodeId) == 1;
+    }
+
+    /**
+     * Store the listing result and make the shards available, if this node still holds the listing lease
+     *
+     * @param userIds   user ids of each shard, indexed by shard number
+     * @param directory groups and roles all nodes apply before the shard results
+     */
+    public boolean publish(long roundId, List<List<String>> userIds, byte[] directory) {
+        Boolean published = transactionTemplate.execute(status -> {
+            int updated = jdbcTemplate.update("UPDATE graph_crawl_rounds SET state = ?, owner = NULL, directory = ? "
+                    + "WHERE round_id = ? AND state = ? AND owner = ?", CRAWLING, directory, roundId, LISTING, nodeId);
+            if (updated != 1) {
+                return false;
+            }
+            List<Object[]> rows = new ArrayList<>();
+            for (int shard = 0; shard < userIds.size(); shard++) {
+                rows.add(new Object[]{roundId, shard, PENDING, String.join(",", userIds.get(shard))});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO graph_crawl_shards (round_id, shard, state, lease_until, attempts, "
+                    + "user_ids) VALUES (?, ?, ?, 0, 0, ?)", rows);
+            return true;
+        });
+        return Boolean.TRUE.equals(published);
+    }
+
+    public byte[] directory(long roundId) {
+        List<byte[]> rows = jdbcTemplate.query("SELECT directory FROM graph_crawl_rounds WHERE round_id = ?",
+                (resultSet, rowNum) -> resultSet.getBytes(1), roundId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Lease the next shard that is pending or whose owner's lease ran out, null when there is none.
+     * Shards that ran out of attempts are marked failed on the way.
+     */
+    public Shard claimShard(long roundId, long now) {
+        jdbcTemplate.update("UPDATE graph_crawl_shards SET state = ?, owner = NULL "
+                        + "WHERE round_id = ? AND state = ? AND lease_until < ? AND attempts >= ?",
+                FAILED, roundId, RUNNING, now, settings.getMaxAttempts());
+        List<Integer> candidates = jdbcTemplate.queryForList("SELECT shard FROM graph_crawl_shards "
+                        + "WHERE round_id = ? AND (state = ? OR (state = ? AND lease_until < ?)) ORDER BY attempts, shard",
+                Integer.class, roundId, PENDING, RUNNING, now);
+        for (int shard : candidates) {
+            int claimed = jdbcTemplate.update("UPDATE graph_crawl_shards SET state = ?, owner = ?, lease_until = ?, "
+                            + "attempts = attempts + 1 WHERE round_id = ? AND shard = ? "
+                            + "AND (state = ? OR (state = ? AND lease_until < ?))",
+                    RUNNING, nodeId, now + settings.getLeaseDuration(), roundId, shard, PENDING, RUNNING, now);
+            if (claimed == 1) {
+                String userIds = jdbcTemplate.queryForObject("SELECT user_ids FROM graph_crawl_shards "
+                        + "WHERE round_id = ? AND shard = ?", String.class, roundId, shard);
+                return new Shard(roundId, shard, userIds == null || userIds.isEmpty() ?
+                        List.of() : Arrays.asList(userIds.split(",")));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extend this node's lease on a shard
+     *
+     * @return false when the lease was lost to another node
+     */
+    public boolean renewShard(long roundId, int shard, long now) {
+        return jdbcTemplate.update("UPDATE graph_crawl_shards SET lease_until = ? "
+                        + "WHERE round_id = ? AND shard = ? AND state = ? AND owner = ?",
+                now + settings.getLeaseDuration(), roundId, shard, RUNNING, nodeId) == 1;
+    }
+
+    /**
+     * Store the result of a shard this node holds the lease on
+     */
+    public boolean completeShard(long roundId, int shard, byte[] result) {
+        return jdbcTemplate.update("UPDATE graph_crawl_shards SET state = ?, owner = NULL, result = ? "
+                        + "WHERE round_id = ? AND shard = ? AND state = ? AND owner = ?",
+                DONE, result, roundId, shard, RUNNING, nodeId) == 1;
+    }
+
+    /**
+     * Give up a shard after an error, for any node to retry; failed once it ran out of attempts
+     */
+    public void releaseShard(long roundId, int shard) {
+        jdbcTemplate.update("UPDATE graph_crawl_shards SET state = CASE WHEN attempts >= ? THEN ? ELSE ? END, "
+                        + "owner = NULL, lease_until = 0 WHERE round_id = ? AND shard = ? AND state = ? AND owner = ?",
+                settings.getMaxAttempts(), FAILED, PENDING, roundId, shard, RUNNING, nodeId);
+    }
+
+    /**
+     * Numbers of the shards of a round that have a result
+     */
+    public List<Integer> doneShards(long roundId) {
+        return jdbcTemplate.queryForList("SELECT shard FROM graph_crawl_shards WHERE round_id = ? AND state = ? "
+                + "ORDER BY shard", Integer.class, roundId, DONE);
+    }
+
+    public byte[] result(long roundId, int shard) {
+        List<byte[]> rows = jdbcTemplate.query("SELECT result FROM graph_crawl_shards WHERE round_id = ? AND shard = ?",
+                (resultSet, rowNum) -> resultSet.getBytes(1), roundId, shard);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Close the round once no shard is pending or running: DONE when every shard has a result,
+     * FAILED when one ran out of attempts. Rounds older than a DONE round are deleted.
+     *
+     * @return the state this call closed the round with, null when it is still open or another
+     *         node closed it
+     */
+    public String finishRound(long roundId, long now) {
+        int finished = jdbcTemplate.update("UPDATE graph_crawl_rounds SET state = CASE WHEN EXISTS "
+                        + "(SELECT 1 FROM graph_crawl_shards WHERE round_id = ? AND state = ?) THEN ? ELSE ? END, "
+                        + "finished_at = ? WHERE round_id = ? AND state = ? AND NOT EXISTS "
+                        + "(SELECT 1 FROM graph_crawl_shards WHERE round_id = ? AND state IN (?, ?))",
+                roundId, FAILED, FAILED, DONE, now, roundId, CRAWLING, roundId, PENDING, RUNNING);
+        if (finished != 1) {
+            return null;
+        }
+        String state = jdbcTemplate.queryForObject("SELECT state FROM graph_crawl_rounds WHERE round_id = ?",
+                String.class, roundId);
+        if (DONE.equals(state)) {
+            jdbcTemplate.update("DELETE FROM graph_crawl_shards WHERE round_id < ?", roundId);
+            jdbcTemplate.update("DELETE FROM graph_crawl_rounds WHERE round_id < ?", roundId);
+        }
+        return state;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        return host + ":" + ProcessHandle.current().pid();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Directory crawl shared across nodes, see {@link DirectoryCrawlService} (prefix "graph.crawl")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.crawl")
+public class CrawlProperties {
+    
+    private boolean enabled = false;
+    private String nodeId;
+    private int shards = 32;
+    private long interval = 3600000;
+    private long retryDelay = 300000;
+    private long pollInterval = 2000;
+    private long leaseDuration = 60000;
+    private int maxAttempts = 3;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+    
+    public int getShards() {
+        return shards;
+    }
+    
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+    
+    public long getInterval() {
+        return interval;
+    }
+    
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+    
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+    
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+    
+    public long getPollInterval() {
+        return pollInterval;
+    }
+    
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+    
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+    
+    public void setLeaseDuration(long leaseDuration) {
+        this.leaseDuration = leaseDuration;
+    }
+    
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+}
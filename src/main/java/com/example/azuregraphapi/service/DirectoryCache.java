@@ -0,0 +1,411 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.FlightEvents;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the directory: users, groups, directory roles, their memberships and the
+ * Graph delta links used to keep them current. Filled from the on-disk snapshot at startup and
+ * kept up to date by {@link DirectorySyncService}.
+ *
+ * Stored DTOs never carry memberships; those are kept as id sets in both directions so that
+ * a user's groups and roles can be resolved without calling Graph. They are handed out to readers
+ * as they are and never modified: a change puts a new instance, see {@link #copyOf(UserDTO)}.
+ *
+ * The cache is filled with the app's own permissions, so it only answers callers whose delegated
+ * token may read the directory as well (see GraphApiService); everyone else goes to Graph.
+ */
+@Component
+public class DirectoryCache {
+
+    private final Map<String, UserDTO> users = new ConcurrentHashMap<>();
+    private final Map<String, String> userIdsByPrincipalName = new ConcurrentHashMap<>();
+    private final Map<String, GroupDTO> groups = new ConcurrentHashMap<>();
+    private final Set<String> securityGroupIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, RoleDTO> roles = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> groupMembers = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> userGroups = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> roleMembers = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> userRoles = new ConcurrentHashMap<>();
+
+    private volatile String usersDeltaLink;
+    private volatile String groupsDeltaLink;
+    private volatile String rolesDeltaLink;
+
+    private volatile boolean loaded;
+    private volatile boolean groupsLoaded;
+    private volatile boolean rolesLoaded;
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * True once a snapshot was loaded or a full sync completed, i.e. the cache can answer reads
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void markLoaded() {
+        loaded = true;
+        version.incrementAndGet();
+    }
+
+    /**
+     * True once security groups can be listed from the cache, which warm-up allows before the full load
+     */
+    public boolean isGroupsLoaded() {
+        return loaded || groupsLoaded;
+    }
+
+    public void markGroupsLoaded() {
+        groupsLoaded = true;
+        version.incrementAndGet();
+    }
+
+    /**
+     * True once directory roles can be listed from the cache, which warm-up allows before the full load
+     */
+    public boolean isRolesLoaded() {
+        return loaded || rolesLoaded;
+    }
+
+    public void markRolesLoaded() {
+        rolesLoaded = true;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Counter incremented on every change, used to detect whether derived data is outdated
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    // Users
+
+    public UserDTO getUser(String id) {
+        UserDTO user = users.get(id);
+        FlightEvents.cacheLookup("directory.user", user != null);
+        return user;
+    }
+
+    /**
+     * User by userPrincipalName, compared case-insensitively like Graph does
+     */
+    public UserDTO getUserByPrincipalName(String userPrincipalName) {
+        String id = userIdsByPrincipalName.get(userPrincipalName.toLowerCase(Locale.ROOT));
+        UserDTO user = id != null ? users.get(id) : null;
+        FlightEvents.cacheLookup("directory.user", user != null);
+        return user;
+    }
+
+    /**
+     * Copy of a cached user with its groups and roles filled in, null when the cache does not know the user
+     */
+    public UserDTO getUserWithMemberships(String id) {
+        UserDTO cached = users.get(id);
+        if (cached == null) {
+            return null;
+        }
+        UserDTO user = copyOf(cached);
+        user.setGroups(getUserGroups(id));
+        user.setRoles(getUserRoles(id));
+        return user;
+    }
+
+    /**
+     * Copy of a cached user to change and put back in its place
+     */
+    public static UserDTO copyOf(UserDTO cached) {
+        UserDTO user = new UserDTO(cached.getId(), cached.getDisplayName(), cached.getUserPrincipalName(), cached.getMail());
+        user.setJobTitle(cached.getJobTitle());
+        user.setDepartment(cached.getDepartment());
+        user.setAccountEnabled(cached.getAccountEnabled());
+        user.setCreatedDateTime(cached.getCreatedDateTime());
+        user.setLastSignInDateTime(cached.getLastSignInDateTime());
+        user.setUserType(cached.getUserType());
+        return user;
+    }
+
+    public Collection<UserDTO> getUsers() {
+        return Collections.unmodifiableCollection(users.values());
+    }
+
+    public void putUser(UserDTO user) {
+        UserDTO previous = users.put(user.getId(), user);
+        if (previous != null && previous.getUserPrincipalName() != null) {
+            userIdsByPrincipalName.remove(previous.getUserPrincipalName().toLowerCase(Locale.ROOT), user.getId());
+        }
+        if (user.getUserPrincipalName() != null) {
+            userIdsByPrincipalName.put(user.getUserPrincipalName().toLowerCase(Locale.ROOT), user.getId());
+        }
+        version.incrementAndGet();
+    }
+
+    public void removeUser(String id) {
+        UserDTO previous = users.remove(id);
+        if (previous != null && previous.getUserPrincipalName() != null) {
+            userIdsByPrincipalName.remove(previous.getUserPrincipalName().toLowerCase(Locale.ROOT), id);
+        }
+        for (String groupId : membershipsOf(userGroups, id)) {
+            removeMember(groupMembers, userGroups, groupId, id);
+        }
+        for (String roleId : membershipsOf(userRoles, id)) {
+            removeMember(roleMembers, userRoles, roleId, id);
+        }
+        version.incrementAndGet();
+    }
+
+    // Groups
+
+    public GroupDTO getGroup(String id) {
+        return groups.get(id);
+    }
+
+    /**
+     * Copy of a cached group to change and put back in its place
+     */
+    public static GroupDTO copyOf(GroupDTO cached) {
+        GroupDTO group = new GroupDTO(cached.getId(), cached.getDisplayName(), cached.getDescription());
+        group.setGroupType(cached.getGroupType());
+        return group;
+    }
+
+    public Collection<GroupDTO> getGroups() {
+        return Collections.unmodifiableCollection(groups.values());
+    }
+
+    public boolean isSecurityGroup(String id) {
+        return securityGroupIds.contains(id);
+    }
+
+    public void putGroup(GroupDTO group, boolean securityEnabled) {
+        groups.put(group.getId(), group);
+        if (securityEnabled) {
+            securityGroupIds.add(group.getId());
+        } else {
+            securityGroupIds.remove(group.getId());
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return the former members, whose memberships changed
+     */
+    public Set<String> removeGroup(String id) {
+        groups.remove(id);
+        securityGroupIds.remove(id);
+        Set<String> members = membershipsOf(groupMembers, id);
+        for (String userId : members) {
+            removeMember(groupMembers, userGroups, id, userId);
+        }
+        version.incrementAndGet();
+        return members;
+    }
+
+    /**
+     * Security groups ordered by display name, as returned by /api/groups
+     */
+    public List<GroupDTO> getSecurityGroups() {
+        List<GroupDTO> result = new ArrayList<>();
+        for (String id : securityGroupIds) {
+            GroupDTO group = groups.get(id);
+            if (group != null) {
+                result.add(group);
+            }
+        }
+        result.sort(Comparator.comparing(GroupDTO::getDisplayName, Comparator.nullsLast(String::compareToIgnoreCase)));
+        return result;
+    }
+
+    public Set<String> getGroupMembers(String groupId) {
+        return membershipsOf(groupMembers, groupId);
+    }
+
+    public void addGroupMember(String groupId, String userId) {
+        addMember(groupMembers, userGroups, groupId, userId);
+    }
+
+    public void removeGroupMember(String groupId, String userId) {
+        removeMember(groupMembers, userGroups, groupId, userId);
+    }
+
+    // Directory roles
+
+    public RoleDTO getRole(String id) {
+        return roles.get(id);
+    }
+
+    /**
+     * Copy of a cached role to change and put back in its place
+     */
+    public static RoleDTO copyOf(RoleDTO cached) {
+        return new RoleDTO(cached.getId(), cached.getDisplayName(), cached.getDescription());
+    }
+
+    public Collection<RoleDTO> getRoles() {
+        return Collections.unmodifiableCollection(roles.values());
+    }
+
+    public void putRole(RoleDTO role) {
+        roles.put(role.getId(), role);
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return the former members, whose memberships changed
+     */
+    public Set<String> removeRole(String id) {
+        roles.remove(id);
+        Set<String> members = membershipsOf(roleMembers, id);
+        for (String userId : members) {
+            removeMember(roleMembers, userRoles, id, userId);
+        }
+        version.incrementAndGet();
+        return members;
+    }
+
+    /**
+     * Directory role names ordered alphabetically, as returned by /api/roles
+     */
+    public List<String> getRoleNames() {
+        List<String> names = new ArrayList<>();
+        for (RoleDTO role : roles.values()) {
+            names.add(role.getDisplayName() != null ? role.getDisplayName() : "Unknown Role");
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    public Set<String> getRoleMembers(String roleId) {
+        return membershipsOf(roleMembers, roleId);
+    }
+
+    public void addRoleMember(String roleId, String userId) {
+        addMember(roleMembers, userRoles, roleId, userId);
+    }
+
+    public void removeRoleMember(String roleId, String userId) {
+        removeMember(roleMembers, userRoles, roleId, userId);
+    }
+
+    // Memberships of one user
+
+    /**
+     * Groups the user is a direct member of, null when the cache does not know the user
+     */
+    public List<GroupDTO> getUserGroups(String userId) {
+        if (!loaded || !users.containsKey(userId)) {
+            FlightEvents.cacheLookup("directory.memberships", false);
+            return null;
+        }
+        FlightEvents.cacheLookup("directory.memberships", true);
+        List<GroupDTO> result = new ArrayList<>();
+        for (String groupId : membershipsOf(userGroups, userId)) {
+            GroupDTO group = groups.get(groupId);
+            if (group != null) {
+                result.add(group);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Names of the directory roles assigned to the user, null when the cache does not know the user
+     */
+    public List<String> getUserRoles(String userId) {
+        if (!loaded || !users.containsKey(userId)) {
+            FlightEvents.cacheLookup("directory.memberships", false);
+            return null;
+        }
+        FlightEvents.cacheLookup("directory.memberships", true);
+        List<String> result = new ArrayList<>();
+        for (String roleId : membershipsOf(userRoles, userId)) {
+            RoleDTO role = roles.get(roleId);
+            if (role != null) {
+                result.add(role.getDisplayName() != null ? role.getDisplayName() : "Unknown Role");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replace the direct group and role memberships of a user, e.g. with those read by a crawl
+     *
+     * @return true when any membership was added or removed
+     */
+    public boolean setUserMemberships(String userId, Set<String> groupIds, Set<String> roleIds) {
+        boolean changed = replaceMemberships(groupMembers, userGroups, userId, groupIds);
+        return replaceMemberships(roleMembers, userRoles, userId, roleIds) || changed;
+    }
+
+    // Delta links
+
+    public String getUsersDeltaLink() { return usersDeltaLink; }
+    public void setUsersDeltaLink(String usersDeltaLink) { this.usersDeltaLink = usersDeltaLink; }
+
+    public String getGroupsDeltaLink() { return groupsDeltaLink; }
+    public void setGroupsDeltaLink(String groupsDeltaLink) { this.groupsDeltaLink = groupsDeltaLink; }
+
+    public String getRolesDeltaLink() { return rolesDeltaLink; }
+    public void setRolesDeltaLink(String rolesDeltaLink) { this.rolesDeltaLink = rolesDeltaLink; }
+
+    private static Set<String> membershipsOf(Map<String, Set<String>> index, String key) {
+        Set<String> values = index.get(key);
+        return values != null ? new HashSet<>(values) : Collections.emptySet();
+    }
+
+    private void addMember(Map<String, Set<String>> members, Map<String, Set<String>> reverse,
+                           String containerId, String memberId) {
+        members.computeIfAbsent(containerId, k -> ConcurrentHashMap.newKeySet()).add(memberId);
+        reverse.computeIfAbsent(memberId, k -> ConcurrentHashMap.newKeySet()).add(containerId);
+        version.incrementAndGet();
+    }
+
+    private void removeMember(Map<String, Set<String>> members, Map<String, Set<String>> reverse,
+                              String containerId, String memberId) {
+        Set<String> containerMembers = members.get(containerId);
+        if (containerMembers != null) {
+            containerMembers.remove(memberId);
+        }
+        Set<String> memberOf = reverse.get(memberId);
+        if (memberOf != null) {
+            memberOf.remove(containerId);
+        }
+        version.incrementAndGet();
+    }
+
+    private boolean replaceMemberships(Map<String, Set<String>> members, Map<String, Set<String>> reverse,
+                                       String memberId, Set<String> containerIds) {
+        Set<String> current = membershipsOf(reverse, memberId);
+        boolean changed = false;
+        for (String containerId : current) {
+            if (!containerIds.contains(containerId)) {
+                removeMember(members, reverse, containerId, memberId);
+                changed = true;
+            }
+        }
+        for (String containerId : containerIds) {
+            if (!current.contains(containerId)) {
+                addMember(members, reverse, containerId, memberId);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
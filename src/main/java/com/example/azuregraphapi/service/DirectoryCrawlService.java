@@ -0,0 +1,446 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.RequestDeadline;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Full crawl of users and their memberships, split across all nodes sharing the crawl tables of
+ * {@link CrawlLeases}.
+ *
+ * Every graph.crawl.interval ms one node takes the current delta links, then lists user ids, groups
+ * and directory roles, which takes a page per 999 objects, and publishes the user ids in
+ * graph.crawl.shards shards by hash of the id. All nodes then take shards in turn and read each user
+ * and its memberOf through $batch requests, so the crawl finishes faster and spreads its Graph
+ * traffic with every node added. Each node merges the results of all shards into its own
+ * {@link DirectoryCache}; a node started later merges the last finished round from the tables
+ * without calling Graph.
+ *
+ * Only a DONE round, one where every shard has a result, completes the cache: users, groups and
+ * roles it did not list are removed, and delta sync restarts from the links taken before the
+ * listing to replay what changed while the round ran. A FAILED round is retried with a new round
+ * after graph.crawl.retry-delay ms and never marks the cache loaded.
+ */
+@Service
+@ConditionalOnProperty(prefix = "graph.crawl", name = "enabled", havingValue = "true")
+public class DirectoryCrawlService {
+
+    static final String USER_SELECT = "id,displayName,userPrincipalName,mail,jobTitle,department,"
+            + "accountEnabled,createdDateTime,userType";
+
+    /** Users read between two renewals of the shard lease, two sub-requests each */
+    private static final int USERS_PER_STEP = 100;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final GraphMapper<UserDTO> USER = GraphMappers.user(Set.of(USER_SELECT.split(",")));
+
+    private final CrawlLeases leases;
+    private final GraphApiService graphApiService;
+    private final GraphQueryEngine queries;
+    private final AppTokenService appTokenService;
+    private final DirectoryCache directoryCache;
+    private final ChangeLog changeLog;
+    private final ObjectProvider<DirectorySyncService> directorySyncService;
+    private final CrawlProperties settings;
+
+    private long mergedRound = -1;
+    private long completedRound = -1;
+    private JsonNode mergedDirectory;
+    private final Set<Integer> mergedShards = new HashSet<>();
+    /** Ids of the users, groups and roles the merged round read */
+    private final Set<String> mergedUsers = new HashSet<>();
+    private final Set<String> mergedGroups = new HashSet<>();
+    private final Set<String> mergedRoles = new HashSet<>();
+    private long baselineRound = -1;
+    /** Ids of the objects cached before the listing of baselineRound started */
+    private final Set<String> cachedBeforeListing = new HashSet<>();
+
+    public DirectoryCrawlService(CrawlLeases leases, GraphApiService graphApiService, GraphQueryEngine queries,
+                                 AppTokenService appTokenService, DirectoryCache directoryCache,
+                                 ChangeLog changeLog, ObjectProvider<DirectorySyncService> directorySyncService,
+                                 CrawlProperties crawlProperties) {
+        this.leases = leases;
+        this.graphApiService = graphApiService;
+        this.queries = queries;
+        this.appTokenService = appTokenService;
+        this.directoryCache = directoryCache;
+        this.changeLog = changeLog;
+        this.directorySyncService = directorySyncService;
+        this.settings = crawlProperties;
+    }
+
+    @Scheduled(initialDelayString = "${graph.crawl.poll-interval:2000}", fixedDelayString = "${graph.crawl.poll-interval:2000}")
+    public void scheduledPoll() {
+        try {
+            poll();
+        } catch (Exception e) {
+            System.out.println("Warning: Directory crawl failed - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open or list a round when due, then crawl shards until none is left and merge the results
+     */
+    public synchronized void poll() {
+        long now = System.currentTimeMillis();
+        CrawlLeases.Round round = leases.latestRound();
+        if (round == null || isDue(round, now)) {
+            long next = round != null ? round.id() + 1 : 1;
+            if (leases.openRound(next, now)) {
+                takeBaseline(next);
+                list(next);
+            }
+            return;
+        }
+        if (CrawlLeases.LISTING.equals(round.state())) {
+            takeBaseline(round.id());
+            if (leases.claimListing(round.id(), now)) {
+                list(round.id());
+            }
+            return;
+        }
+        if (CrawlLeases.FAILED.equals(round.state())) {
+            // A node that already completed the last DONE round keeps its cache, which delta sync
+            // has moved on since; merging that round again would roll it back
+            CrawlLeases.Round done = leases.latestRound(CrawlLeases.DONE);
+            if (done != null && done.id() != completedRound) {
+                merge(done);
+            }
+            return;
+        }
+
+        merge(round);
+        if (CrawlLeases.CRAWLING.equals(round.state())) {
+            CrawlLeases.Shard shard;
+            while ((shard = leases.claimShard(round.id(), System.currentTimeMillis())) != null && crawl(shard)) {
+                merge(round);
+            }
+            String finished = leases.finishRound(round.id(), System.currentTimeMillis());
+            if (finished != null) {
+                merge(round);
+                System.out.println("Directory crawl round " + round.id() + " ended " + finished + " in "
+                        + (System.currentTimeMillis() - round.startedAt()) + " ms");
+            }
+        }
+    }
+
+    private boolean isDue(CrawlLeases.Round round, long now) {
+        if (CrawlLeases.DONE.equals(round.state())) {
+            return now - round.finishedAt() >= settings.getInterval();
+        }
+        return CrawlLeases.FAILED.equals(round.state()) && now - round.finishedAt() >= settings.getRetryDelay();
+    }
+
+    /**
+     * Remember the objects cached before the round's listing started; only those may be removed when
+     * the round completes. Objects added later by delta sync or notifications can be missing from
+     * the listing without having been deleted. A node that never saw the round listing takes it
+     * when it starts merging, the closest it knows.
+     */
+    private void takeBaseline(long roundId) {
+        if (baselineRound == roundId) {
+            return;
+        }
+        cachedBeforeListing.clear();
+        directoryCache.getUsers().forEach(user -> cachedBeforeListing.add(user.getId()));
+        directoryCache.getGroups().forEach(group -> cachedBeforeListing.add(group.getId()));
+        directoryCache.getRoles().forEach(role -> cachedBeforeListing.add(role.getId()));
+        baselineRound = roundId;
+    }
+
+    static int shardOf(String userId, int shards) {
+        return Math.floorMod(userId.hashCode(), shards);
+    }
+
+    private void list(long roundId) {
+        long started = System.currentTimeMillis();
+        String accessToken = appTokenService.getAccessToken();
+        // Taken first, so delta sync after this round replays everything changed while it ran
+        ObjectNode directory = MAPPER.createObjectNode();
+        directory.put("usersDeltaLink", latestDeltaLink(accessToken, DirectorySyncService.USERS_DELTA));
+        directory.put("groupsDeltaLink", latestDeltaLink(accessToken, DirectorySyncService.GROUPS_DELTA));
+        directory.put("rolesDeltaLink", latestDeltaLink(accessToken, DirectorySyncService.ROLES_DELTA));
+
+        List<JsonNode> users = listAll(accessToken, roundId, "/users?$select=id&$top=999");
+        directory.putArray("groups").addAll(listAll(accessToken, roundId,
+                "/groups?$select=id,displayName,description,groupTypes,securityEnabled&$top=999"));
+        directory.putArray("roles").addAll(listAll(accessToken, roundId,
+                "/directoryRoles?$select=id,displayName,description"));
+
+        List<List<String>> userIds = new ArrayList<>();
+        for (int i = 0; i < settings.getShards(); i++) {
+            userIds.add(new ArrayList<>());
+        }
+        for (JsonNode user : users) {
+            String id = user.get("id").asText();
+            userIds.get(shardOf(id, settings.getShards())).add(id);
+        }
+        try {
+            if (leases.publish(roundId, userIds, MAPPER.writeValueAsBytes(directory))) {
+                System.out.println("Directory crawl round " + roundId + " listed " + users.size() + " users in "
+                        + settings.getShards() + " shards in " + (System.currentTimeMillis() - started) + " ms");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode crawl listing: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Delta link of a delta query for the current state, without reading the directory
+     */
+    private String latestDeltaLink(String accessToken, String deltaQuery) {
+        String next = deltaQuery + "&$deltatoken=latest";
+        while (true) {
+            JsonNode page = graphApiService.fetchJson(accessToken, next);
+            if (page != null && page.hasNonNull("@odata.deltaLink")) {
+                return page.get("@odata.deltaLink").asText();
+            }
+            if (page == null || !page.hasNonNull("@odata.nextLink")) {
+                throw new IllegalStateException("Delta response without nextLink or deltaLink");
+            }
+            next = page.get("@odata.nextLink").asText();
+        }
+    }
+
+    /**
+     * All items of a collection, renewing the listing lease after every page
+     */
+    private List<JsonNode> listAll(String accessToken, long roundId, String uri) {
+        List<JsonNode> items = new ArrayList<>();
+        String next = uri;
+        while (next != null) {
+            JsonNode page = graphApiService.fetchJson(accessToken, next);
+            if (!leases.renewListing(roundId, System.currentTimeMillis())) {
+                throw new IllegalStateException("Listing lease of round " + roundId + " lost");
+            }
+            page.path("value").forEach(items::add);
+            next = page.hasNonNull("@odata.nextLink") ? page.get("@odata.nextLink").asText() : null;
+        }
+        return items;
+    }
+
+    /**
+     * Read the users of a shard and store the result
+     *
+     * @return false when the shard failed and was given back
+     */
+    private boolean crawl(CrawlLeases.Shard shard) {
+        long started = System.currentTimeMillis();
+        try {
+            String accessToken = appTokenService.getAccessToken();
+            ArrayNode result = MAPPER.createArrayNode();
+            for (int offset = 0; offset < shard.userIds().size(); offset += USERS_PER_STEP) {
+                List<String> ids = shard.userIds().subList(offset, Math.min(shard.userIds().size(), offset + USERS_PER_STEP));
+                List<String> urls = new ArrayList<>();
+                for (String id : ids) {
+                    urls.add("/users/" + id + "?$select=" + USER_SELECT);
+                    urls.add("/users/" + id + "/memberOf?$select=id&$top=999");
+                }
+                List<JsonNode> responses = RequestDeadline.await(queries.batch(accessToken, urls));
+                for (int i = 0; i < ids.size(); i++) {
+                    JsonNode user = responses.get(2 * i);
+                    JsonNode memberOf = responses.get(2 * i + 1);
+                    if (user == null || memberOf == null) {
+                        // Failed parts are read once more on their own, telling a deleted user from an error
+                        try {
+                            user = graphApiService.fetchJson(accessToken, urls.get(2 * i));
+                            memberOf = graphApiService.fetchJson(accessToken, urls.get(2 * i + 1));
+                        } catch (WebClientResponseException.NotFound e) {
+                            continue;
+                        }
+                    }
+                    result.add(crawledUser(accessToken, user, memberOf));
+                }
+                if (!leases.renewShard(shard.roundId(), shard.shard(), System.currentTimeMillis())) {
+                    System.out.println("Warning: Lease on crawl shard " + shard.shard() + " lost");
+                    return true;
+                }
+            }
+            if (leases.completeShard(shard.roundId(), shard.shard(), MAPPER.writeValueAsBytes(result))) {
+                System.out.println("Directory crawl round " + shard.roundId() + " shard " + shard.shard() + ": "
+                        + shard.userIds().size() + " users in " + (System.currentTimeMillis() - started) + " ms");
+            }
+            return true;
+        } catch (Exception e) {
+            System.out.println("Warning: Crawl shard " + shard.shard() + " failed, releasing it - " + e.getMessage());
+            leases.releaseShard(shard.roundId(), shard.shard());
+            return false;
+        }
+    }
+
+    /**
+     * A user with the ids of its groups and directory roles, following memberOf pages if there are more
+     */
+    private ObjectNode crawledUser(String accessToken, JsonNode user, JsonNode memberOf) {
+        ObjectNode crawled = MAPPER.createObjectNode();
+        crawled.set("user", user);
+        ArrayNode groups = crawled.putArray("groups");
+        ArrayNode roles = crawled.putArray("roles");
+        JsonNode page = memberOf;
+        while (true) {
+            for (JsonNode node : page.path("value")) {
+                String type = node.path("@odata.type").asText();
+                if ("#microsoft.graph.group".equals(type)) {
+                    groups.add(node.get("id").asText());
+                } else if ("#microsoft.graph.directoryRole".equals(type)) {
+                    roles.add(node.get("id").asText());
+                }
+            }
+            if (!page.hasNonNull("@odata.nextLink")) {
+                return crawled;
+            }
+            page = graphApiService.fetchJson(accessToken, page.get("@odata.nextLink").asText());
+        }
+    }
+
+    /**
+     * Apply the listing and every shard result of a round not applied yet; once the round is DONE
+     * it completes the cache
+     */
+    private void merge(CrawlLeases.Round round) {
+        if (round.id() != mergedRound) {
+            byte[] directory = leases.directory(round.id());
+            if (directory == null) {
+                return;
+            }
+            takeBaseline(round.id());
+            mergedDirectory = read(directory);
+            mergedShards.clear();
+            mergedUsers.clear();
+            mergedGroups.clear();
+            mergedRoles.clear();
+            applyDirectory(mergedDirectory);
+            mergedRound = round.id();
+        }
+        for (int shard : leases.doneShards(round.id())) {
+            if (!mergedShards.contains(shard)) {
+                applyShard(read(leases.result(round.id(), shard)));
+                mergedShards.add(shard);
+            }
+        }
+        if (completedRound != round.id() && CrawlLeases.DONE.equals(stateOf(round))) {
+            complete(round);
+        }
+    }
+
+    private String stateOf(CrawlLeases.Round round) {
+        if (CrawlLeases.DONE.equals(round.state())) {
+            return round.state();
+        }
+        CrawlLeases.Round current = leases.latestRound();
+        return current != null && current.id() == round.id() ? current.state() : null;
+    }
+
+    /**
+     * Remove what was cached before the listing but not found by the round, restart delta sync from
+     * before its listing and mark the cache loaded
+     */
+    private void complete(CrawlLeases.Round round) {
+        int removed = 0;
+        for (UserDTO user : new ArrayList<>(directoryCache.getUsers())) {
+            if (!mergedUsers.contains(user.getId()) && cachedBeforeListing.contains(user.getId())) {
+                directoryCache.removeUser(user.getId());
+                changeLog.record(ChangeLog.USER, user.getId());
+                removed++;
+            }
+        }
+        for (GroupDTO group : new ArrayList<>(directoryCache.getGroups())) {
+            if (!mergedGroups.contains(group.getId()) && cachedBeforeListing.contains(group.getId())) {
+                changeLog.recordMembers(directoryCache.removeGroup(group.getId()));
+                changeLog.record(ChangeLog.GROUP, group.getId());
+                removed++;
+            }
+        }
+        for (RoleDTO role : new ArrayList<>(directoryCache.getRoles())) {
+            if (!mergedRoles.contains(role.getId()) && cachedBeforeListing.contains(role.getId())) {
+                changeLog.recordMembers(directoryCache.removeRole(role.getId()));
+                changeLog.record(ChangeLog.ROLE, role.getId());
+                removed++;
+            }
+        }
+        if (mergedDirectory.hasNonNull("usersDeltaLink")) {
+            directorySyncService.ifAvailable(sync -> sync.restartFrom(mergedDirectory.get("usersDeltaLink").asText(),
+                    mergedDirectory.get("groupsDeltaLink").asText(), mergedDirectory.get("rolesDeltaLink").asText()));
+        }
+        completedRound = round.id();
+        if (!directoryCache.isLoaded()) {
+            directoryCache.markGroupsLoaded();
+            directoryCache.markRolesLoaded();
+            directoryCache.markLoaded();
+            System.out.println("Directory cache loaded from crawl round " + round.id() + ": "
+                    + directoryCache.getUsers().size() + " users");
+        } else if (removed > 0) {
+            System.out.println("Directory crawl round " + round.id() + " removed " + removed
+                    + " objects no longer in the directory");
+        }
+    }
+
+    private void applyDirectory(JsonNode directory) {
+        for (JsonNode node : directory.path("groups")) {
+            GroupDTO group = GraphMappers.GROUP.map(node);
+            mergedGroups.add(group.getId());
+            boolean known = directoryCache.getGroup(group.getId()) != null;
+            directoryCache.putGroup(group, node.path("securityEnabled").asBoolean());
+            if (!known) {
+                changeLog.record(ChangeLog.GROUP, group.getId());
+            }
+        }
+        for (JsonNode node : directory.path("roles")) {
+            RoleDTO role = GraphMappers.ROLE.map(node);
+            mergedRoles.add(role.getId());
+            boolean known = directoryCache.getRole(role.getId()) != null;
+            directoryCache.putRole(role);
+            if (!known) {
+                changeLog.record(ChangeLog.ROLE, role.getId());
+            }
+        }
+    }
+
+    /**
+     * Users are replaced by the crawled copy; only new users and changed memberships are logged,
+     * attribute changes reach the change log through delta sync
+     */
+    private void applyShard(JsonNode result) {
+        for (JsonNode crawled : result) {
+            UserDTO user = USER.map(crawled.get("user"));
+            mergedUsers.add(user.getId());
+            boolean known = directoryCache.getUser(user.getId()) != null;
+            directoryCache.putUser(user);
+            boolean changed = directoryCache.setUserMemberships(user.getId(),
+                    ids(crawled.path("groups")), ids(crawled.path("roles")));
+            if (!known || changed) {
+                changeLog.record(ChangeLog.USER, user.getId());
+            }
+        }
+    }
+
+    private static Set<String> ids(JsonNode array) {
+        Set<String> ids = new HashSet<>();
+        array.forEach(id -> ids.add(id.asText()));
+        return ids;
+    }
+
+    private static JsonNode read(byte[] json) {
+        try {
+            return MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid crawl result: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persists {@link DirectoryCache} to a compact binary file and restores it on startup, so a fresh
+ * node serves users, groups and roles immediately and only catches up through delta sync.
+ *
+ * Layout: magic, write time, the three delta links, then the user, group and role tables.
+ * Strings are length-prefixed UTF-8 with a varint length (0 = null); group and role members
+ * are stored as varint references into the user table instead of repeating the user ids.
+ * The file is written to a temporary file and atomically moved into place. On startup it is mapped
+ * read-only and decoded into {@link DirectoryCache} in one pass: the mapping only saves copying the
+ * file through read buffers, the cache itself is rebuilt on the heap and the file is not used after.
+ */
+@Component
+public class DirectorySnapshotStore {
+
+    private static final int MAGIC = 0x47445331; // "GDS1"
+
+    private final DirectoryCache directoryCache;
+    private final SnapshotProperties settings;
+    private volatile long writtenVersion = -1;
+
+    public DirectorySnapshotStore(DirectoryCache directoryCache, SnapshotProperties snapshotProperties) {
+        this.directoryCache = directoryCache;
+        this.settings = snapshotProperties;
+    }
+
+    @PostConstruct
+    public void load() {
+        Path path = snapshotPath();
+        if (!settings.isEnabled() || !Files.exists(path)) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            read(buffer);
+            directoryCache.markLoaded();
+            writtenVersion = directoryCache.getVersion();
+            System.out.println("Directory snapshot loaded: " + directoryCache.getUsers().size() + " users, "
+                    + directoryCache.getGroups().size() + " groups in " + (System.currentTimeMillis() - started) + " ms");
+        } catch (Exception e) {
+            // A damaged snapshot only costs a full delta sync
+            System.out.println("Warning: Could not load directory snapshot - " + e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${graph.snapshot.write-interval:300000}",
+            fixedDelayString = "${graph.snapshot.write-interval:300000}")
+    public void scheduledWrite() {
+        try {
+            write();
+        } catch (Exception e) {
+            System.out.println("Warning: Could not write directory snapshot - " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() {
+        scheduledWrite();
+    }
+
+    /**
+     * Write the cache to disk if it changed since the last snapshot
+     */
+    public synchronized void write() throws IOException {
+        long version = directoryCache.getVersion();
+        if (!settings.isEnabled() || !directoryCache.isLoaded() || version == writtenVersion) {
+            return;
+        }
+
+        Path path = snapshotPath().toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            write(out);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writtenVersion = version;
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(System.currentTimeMillis());
+        writeString(out, directoryCache.getUsersDeltaLink());
+        writeString(out, directoryCache.getGroupsDeltaLink());
+        writeString(out, directoryCache.getRolesDeltaLink());
+
+        List<UserDTO> users = new ArrayList<>(directoryCache.getUsers());
+        Map<String, Integer> userIndex = new HashMap<>();
+        writeVarInt(out, users.size());
+        for (UserDTO user : users) {
+            userIndex.put(user.getId(), userIndex.size());
+            writeString(out, user.getId());
+            writeString(out, user.getDisplayName());
+            writeString(out, user.getUserPrincipalName());
+            writeString(out, user.getMail());
+            writeString(out, user.getJobTitle());
+            writeString(out, user.getDepartment());
+            out.writeByte(user.getAccountEnabled() == null ? 0 : user.getAccountEnabled() ? 2 : 1);
+            writeString(out, user.getCreatedDateTime());
+            writeString(out, user.getLastSignInDateTime());
+            writeString(out, user.getUserType());
+        }
+
+        List<GroupDTO> groups = new ArrayList<>(directoryCache.getGroups());
+        writeVarInt(out, groups.size());
+        for (GroupDTO group : groups) {
+            writeString(out, group.getId());
+            writeString(out, group.getDisplayName());
+            writeString(out, group.getDescription());
+            writeString(out, group.getGroupType());
+            out.writeBoolean(directoryCache.isSecurityGroup(group.getId()));
+            writeMembers(out, directoryCache.getGroupMembers(group.getId()), userIndex);
+        }
+
+        List<RoleDTO> roles = new ArrayList<>(directoryCache.getRoles());
+        writeVarInt(out, roles.size());
+        for (RoleDTO role : roles) {
+            writeString(out, role.getId());
+            writeString(out, role.getDisplayName());
+            writeString(out, role.getDescription());
+            writeMembers(out, directoryCache.getRoleMembers(role.getId()), userIndex);
+        }
+    }
+
+    private void read(ByteBuffer in) {
+        if (in.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a directory snapshot");
+        }
+        in.getLong();
+        directoryCache.setUsersDeltaLink(readString(in));
+        directoryCache.setGroupsDeltaLink(readString(in));
+        directoryCache.setRolesDeltaLink(readString(in));
+
+        int userCount = readVarInt(in);
+        List<String> userIds = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            UserDTO user = new UserDTO();
+            user.setId(readString(in));
+            user.setDisplayName(readString(in));
+            user.setUserPrincipalName(readString(in));
+            user.setMail(readString(in));
+            user.setJobTitle(readString(in));
+            user.setDepartment(readString(in));
+            byte accountEnabled = in.get();
+            user.setAccountEnabled(accountEnabled == 0 ? null : accountEnabled == 2);
+            user.setCreatedDateTime(readString(in));
+            user.setLastSignInDateTime(readString(in));
+            user.setUserType(readString(in));
+            userIds.add(user.getId());
+            directoryCache.putUser(user);
+        }
+
+        int groupCount = readVarInt(in);
+        for (int i = 0; i < groupCount; i++) {
+            GroupDTO group = new GroupDTO(readString(in), readString(in), readString(in));
+            group.setGroupType(readString(in));
+            directoryCache.putGroup(group, in.get() != 0);
+            for (String memberId : readMembers(in, userIds)) {
+                directoryCache.addGroupMember(group.getId(), memberId);
+            }
+        }
+
+        int roleCount = readVarInt(in);
+        for (int i = 0; i < roleCount; i++) {
+            RoleDTO role = new RoleDTO(readString(in), readString(in), readString(in));
+            directoryCache.putRole(role);
+            for (String memberId : readMembers(in, userIds)) {
+                directoryCache.addRoleMember(role.getId(), memberId);
+            }
+        }
+    }
+
+    /**
+     * Members are written as (user index + 1), or 0 followed by the id for non-user members
+     */
+    private static void writeMembers(DataOutputStream out, Set<String> members, Map<String, Integer> userIndex)
+            throws IOException {
+        writeVarInt(out, members.size());
+        for (String memberId : members) {
+            Integer index = userIndex.get(memberId);
+            if (index != null) {
+                writeVarInt(out, index + 1);
+            } else {
+                writeVarInt(out, 0);
+                writeString(out, memberId);
+            }
+        }
+    }
+
+    private static List<String> readMembers(ByteBuffer in, List<String> userIds) {
+        int count = readVarInt(in);
+        List<String> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int ref = readVarInt(in);
+            members.add(ref > 0 ? userIds.get(ref - 1) : readString(in));
+        }
+        return members;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private Path snapshotPath() {
+        return Paths.get(settings.getPath());
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Keeps {@link DirectoryCache} current through Graph delta queries on users, groups and directory roles.
+ *
+ * Without delta links (first start without a snapshot) the delta queries return the full
+ * directory; afterwards, including after a snapshot was loaded, they only return what changed.
+ * Runs with the app-only credential, see {@link AppTokenService}.
+ *
+ * With graph.crawl.enabled the full load is left to {@link DirectoryCrawlService}: sync waits until
+ * the crawl has loaded the cache and then continues from the delta links the crawl took before it
+ * listed the directory, so changes made while the crawl ran are replayed instead of lost.
+ *
+ * When Graph no longer knows a delta link (410 Gone, syncStateNotFound or resyncRequired) the
+ * objects of that type are read again with a full delta query, and cached ones it did not return
+ * are removed. The old link is kept until that read is done, so a failed resync is retried.
+ */
+@Service
+@ConditionalOnProperty(prefix = "graph.sync", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class DirectorySyncService {
+
+    static final String USERS_DELTA = "/users/delta?$select=id,displayName,userPrincipalName,mail,"
+            + "jobTitle,department,accountEnabled,createdDateTime,userType";
+    static final String GROUPS_DELTA = "/groups/delta?$select=id,displayName,description,groupTypes,"
+            + "securityEnabled,members";
+    static final String ROLES_DELTA = "/directoryRoles/delta?$select=id,displayName,description,members";
+
+    private final GraphApiService graphApiService;
+    private final AppTokenService appTokenService;
+    private final DirectoryCache directoryCache;
+    private final ChangeLog changeLog;
+    private final boolean crawled;
+
+    public DirectorySyncService(GraphApiService graphApiService, AppTokenService appTokenService,
+                                DirectoryCache directoryCache, ChangeLog changeLog, CrawlProperties crawlProperties) {
+        this.graphApiService = graphApiService;
+        this.appTokenService = appTokenService;
+        this.directoryCache = directoryCache;
+        this.changeLog = changeLog;
+        this.crawled = crawlProperties.isEnabled();
+    }
+
+    @Scheduled(initialDelayString = "${graph.sync.initial-delay:0}", fixedDelayString = "${graph.sync.interval:60000}")
+    public void scheduledSync() {
+        try {
+            sync();
+        } catch (Exception e) {
+            System.out.println("Warning: Directory delta sync failed - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply all pending changes from Graph to the directory cache
+     */
+    public synchronized void sync() {
+        if (crawled && !directoryCache.isLoaded()) {
+            return;
+        }
+        String fromNow = crawled ? "&$deltatoken=latest" : "";
+        String accessToken = appTokenService.getAccessToken();
+        long started = System.currentTimeMillis();
+
+        directoryCache.setUsersDeltaLink(directoryCache.getUsersDeltaLink() != null ?
+                walkOrResync(accessToken, ChangeLog.USER, directoryCache.getUsersDeltaLink()) :
+                walk(accessToken, USERS_DELTA + fromNow, this::applyUser));
+        directoryCache.setGroupsDeltaLink(directoryCache.getGroupsDeltaLink() != null ?
+                walkOrResync(accessToken, ChangeLog.GROUP, directoryCache.getGroupsDeltaLink()) :
+                walk(accessToken, GROUPS_DELTA + fromNow, this::applyGroup));
+        directoryCache.setRolesDeltaLink(directoryCache.getRolesDeltaLink() != null ?
+                walkOrResync(accessToken, ChangeLog.ROLE, directoryCache.getRolesDeltaLink()) :
+                walk(accessToken, ROLES_DELTA + fromNow, this::applyRole));
+
+        if (!directoryCache.isLoaded()) {
+            directoryCache.markLoaded();
+            System.out.println("Directory cache loaded in " + (System.currentTimeMillis() - started) + " ms");
+        }
+    }
+
+    /**
+     * Continue from the given delta links on the next sync, replaying the changes made since they
+     * were taken. Waits for a running sync, so it cannot store links from before the restart.
+     */
+    public synchronized void restartFrom(String usersDeltaLink, String groupsDeltaLink, String rolesDeltaLink) {
+        directoryCache.setUsersDeltaLink(usersDeltaLink);
+        directoryCache.setGroupsDeltaLink(groupsDeltaLink);
+        directoryCache.setRolesDeltaLink(rolesDeltaLink);
+    }
+
+    /**
+     * Continue from a stored delta link, or read all objects of the type again when Graph has
+     * dropped its sync state
+     */
+    private String walkOrResync(String accessToken, String type, String deltaLink) {
+        try {
+            return walk(accessToken, deltaLink, applier(type));
+        } catch (RuntimeException e) {
+            if (!isSyncStateLost(e)) {
+                throw e;
+            }
+            System.out.println("Warning: Graph dropped the " + type + " delta state, reading all " + type
+                    + "s again - " + e.getMessage());
+            return resync(accessToken, type);
+        }
+    }
+
+    /**
+     * Full delta read of one object type that replaces the cached objects of that type and, for
+     * groups and roles, their members
+     */
+    private String resync(String accessToken, String type) {
+        Set<String> seen = new HashSet<>();
+        // A group or role may be returned on several pages, each with part of its members
+        Map<String, Set<String>> members = new HashMap<>();
+        Consumer<JsonNode> apply = applier(type);
+        String deltaLink = walk(accessToken, fullQuery(type), node -> {
+            apply.accept(node);
+            if (node.has("@removed")) {
+                return;
+            }
+            String id = node.get("id").asText();
+            seen.add(id);
+            Set<String> current = members.computeIfAbsent(id, key -> new HashSet<>());
+            if (node.has("members@delta")) {
+                for (JsonNode member : node.get("members@delta")) {
+                    if (member.has("@removed")) {
+                        current.remove(member.get("id").asText());
+                    } else {
+                        current.add(member.get("id").asText());
+                    }
+                }
+            }
+        });
+
+        int removed = 0;
+        if (ChangeLog.USER.equals(type)) {
+            for (UserDTO user : new ArrayList<>(directoryCache.getUsers())) {
+                if (!seen.contains(user.getId())) {
+                    directoryCache.removeUser(user.getId());
+                    changeLog.record(ChangeLog.USER, user.getId());
+                    removed++;
+                }
+            }
+        } else if (ChangeLog.GROUP.equals(type)) {
+            for (GroupDTO group : new ArrayList<>(directoryCache.getGroups())) {
+                if (!seen.contains(group.getId())) {
+                    changeLog.recordMembers(directoryCache.removeGroup(group.getId()));
+                    changeLog.record(ChangeLog.GROUP, group.getId());
+                    removed++;
+                    continue;
+                }
+                for (String memberId : new ArrayList<>(directoryCache.getGroupMembers(group.getId()))) {
+                    if (!members.get(group.getId()).contains(memberId)) {
+                        directoryCache.removeGroupMember(group.getId(), memberId);
+                        recordMembershipChange(memberId);
+                    }
+                }
+            }
+        } else {
+            for (RoleDTO role : new ArrayList<>(directoryCache.getRoles())) {
+                if (!seen.contains(role.getId())) {
+                    changeLog.recordMembers(directoryCache.removeRole(role.getId()));
+                    changeLog.record(ChangeLog.ROLE, role.getId());
+                    removed++;
+                    continue;
+                }
+                for (String memberId : new ArrayList<>(directoryCache.getRoleMembers(role.getId()))) {
+                    if (!members.get(role.getId()).contains(memberId)) {
+                        directoryCache.removeRoleMember(role.getId(), memberId);
+                        recordMembershipChange(memberId);
+                    }
+                }
+            }
+        }
+        System.out.println("Resynced " + seen.size() + " " + type + "s, removed " + removed);
+        return deltaLink;
+    }
+
+    /**
+     * 410 Gone: the delta token expired or Graph asks for a full resync
+     */
+    private static boolean isSyncStateLost(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientResponseException responseException) {
+                return responseException.getStatusCode().value() == 410;
+            }
+        }
+        return false;
+    }
+
+    private Consumer<JsonNode> applier(String type) {
+        if (ChangeLog.USER.equals(type)) {
+            return this::applyUser;
+        }
+        return ChangeLog.GROUP.equals(type) ? this::applyGroup : this::applyRole;
+    }
+
+    private static String fullQuery(String type) {
+        if (ChangeLog.USER.equals(type)) {
+            return USERS_DELTA;
+        }
+        return ChangeLog.GROUP.equals(type) ? GROUPS_DELTA : ROLES_DELTA;
+    }
+
+    /**
+     * Follow nextLinks of a delta query until its deltaLink, applying every returned object
+     *
+     * @return the deltaLink to start the next round from
+     */
+    private String walk(String accessToken, String uri, Consumer<JsonNode> apply) {
+        String next = uri;
+        while (true) {
+            JsonNode page = graphApiService.fetchJson(accessToken, next);
+            if (page == null) {
+                throw new IllegalStateException("Empty delta response for " + next);
+            }
+            if (page.has("value")) {
+                for (JsonNode node : page.get("value")) {
+                    apply.accept(node);
+                }
+            }
+            if (page.hasNonNull("@odata.nextLink")) {
+                next = page.get("@odata.nextLink").asText();
+            } else if (page.hasNonNull("@odata.deltaLink")) {
+                return page.get("@odata.deltaLink").asText();
+            } else {
+                throw new IllegalStateException("Delta response without nextLink or deltaLink");
+            }
+        }
+    }
+
+    /**
+     * Delta responses for updated objects only carry the changed properties, so they are merged
+     * into a copy of the cached object, which then replaces it; readers may still hold the old one
+     */
+    void applyUser(JsonNode node) {
+        String id = node.get("id").asText();
+        if (node.has("@removed")) {
+            directoryCache.removeUser(id);
+            changeLog.record(ChangeLog.USER, id);
+            return;
+        }
+        UserDTO existing = directoryCache.getUser(id);
+        UserDTO user = existing != null ? DirectoryCache.copyOf(existing) : new UserDTO();
+        user.setId(id);
+        if (node.has("displayName")) user.setDisplayName(GraphMappers.textOrNull(node, "displayName"));
+        if (node.has("userPrincipalName")) user.setUserPrincipalName(GraphMappers.textOrNull(node, "userPrincipalName"));
+        if (node.has("mail")) user.setMail(GraphMappers.textOrNull(node, "mail"));
+        if (node.has("jobTitle")) user.setJobTitle(GraphMappers.textOrNull(node, "jobTitle"));
+        if (node.has("department")) user.setDepartment(GraphMappers.textOrNull(node, "department"));
+        if (node.has("accountEnabled")) user.setAccountEnabled(node.get("accountEnabled").asBoolean(true));
+        if (node.has("createdDateTime")) user.setCreatedDateTime(GraphMappers.textOrNull(node, "createdDateTime"));
+        if (node.has("userType")) user.setUserType(GraphMappers.textOrNull(node, "userType"));
+        directoryCache.putUser(user);
+        changeLog.record(ChangeLog.USER, id);
+    }
+
+    void applyGroup(JsonNode node) {
+        String id = node.get("id").asText();
+        if (node.has("@removed")) {
+            changeLog.recordMembers(directoryCache.removeGroup(id));
+            changeLog.record(ChangeLog.GROUP, id);
+            return;
+        }
+        GroupDTO existing = directoryCache.getGroup(id);
+        GroupDTO group = existing != null ? DirectoryCache.copyOf(existing) : new GroupDTO();
+        group.setId(id);
+        if (node.has("displayName")) group.setDisplayName(GraphMappers.textOrNull(node, "displayName"));
+        if (node.has("description")) group.setDescription(GraphMappers.textOrNull(node, "description"));
+        if (node.has("groupTypes") || group.getGroupType() == null) group.setGroupType(GraphMappers.groupType(node));
+        boolean securityEnabled = node.has("securityEnabled") ?
+                node.get("securityEnabled").asBoolean() : directoryCache.isSecurityGroup(id);
+        directoryCache.putGroup(group, securityEnabled);
+        changeLog.record(ChangeLog.GROUP, id);
+
+        if (node.has("members@delta")) {
+            for (JsonNode member : node.get("members@delta")) {
+                String memberId = member.get("id").asText();
+                if (member.has("@removed")) {
+                    directoryCache.removeGroupMember(id, memberId);
+                } else {
+                    directoryCache.addGroupMember(id, memberId);
+                }
+                recordMembershipChange(memberId);
+            }
+        }
+    }
+
+    void applyRole(JsonNode node) {
+        String id = node.get("id").asText();
+        if (node.has("@removed")) {
+            changeLog.recordMembers(directoryCache.removeRole(id));
+            changeLog.record(ChangeLog.ROLE, id);
+            return;
+        }
+        RoleDTO existing = directoryCache.getRole(id);
+        RoleDTO role = existing != null ? DirectoryCache.copyOf(existing) : new RoleDTO();
+        role.setId(id);
+        if (node.has("displayName")) role.setDisplayName(GraphMappers.textOrNull(node, "displayName"));
+        if (node.has("description")) role.setDescription(GraphMappers.textOrNull(node, "description"));
+        directoryCache.putRole(role);
+        changeLog.record(ChangeLog.ROLE, id);
+
+        if (node.has("members@delta")) {
+            for (JsonNode member : node.get("members@delta")) {
+                String memberId = member.get("id").asText();
+                if (member.has("@removed")) {
+                    directoryCache.removeRoleMember(id, memberId);
+                } else {
+                    directoryCache.addRoleMember(id, memberId);
+                }
+                recordMembershipChange(memberId);
+            }
+        }
+    }
+
+    /**
+     * A membership change is reported as a change of the member, so consumers see the user's new
+     * groups and roles; members that are not users (nested groups, devices) are not reported
+     */
+    private void recordMembershipChange(String memberId) {
+        if (directoryCache.getUser(memberId) != null) {
+            changeLog.record(ChangeLog.USER, memberId);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background directory exports, see {@link ExportService} (prefix "graph.export")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.export")
+public class ExportProperties {
+    
+    private String directory = "exports";
+    private int maxConcurrentJobs = 2;
+    private int pageSize = 999;
+    // Reads of a page whose memberships are incomplete before the job fails
+    private int pageAttempts = 3;
+    private long pageRetryDelay = 5000;
+    private List<String> admins = new ArrayList<>();
+    
+    public String getDirectory() {
+        return directory;
+    }
+    
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+    
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+    
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+    
+    public int getPageSize() {
+        return pageSize;
+    }
+    
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+    
+    public int getPageAttempts() {
+        return pageAttempts;
+    }
+    
+    public void setPageAttempts(int pageAttempts) {
+        this.pageAttempts = pageAttempts;
+    }
+    
+    public long getPageRetryDelay() {
+        return pageRetryDelay;
+    }
+    
+    public void setPageRetryDelay(long pageRetryDelay) {
+        this.pageRetryDelay = pageRetryDelay;
+    }
+    
+    public List<String> getAdmins() {
+        return admins;
+    }
+    
+    public void setAdmins(List<String> admins) {
+        this.admins = admins;
+    }
+}
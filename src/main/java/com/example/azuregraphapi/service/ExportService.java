@@ -0,0 +1,354 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.ExportJobDTO;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.example.azuregraphapi.dto.UserPageDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Background full-directory exports (users with groups and roles) to gzip-compressed NDJSON or CSV files.
+ *
+ * Every Graph page is appended to the output as its own gzip member and followed by a checkpoint
+ * holding the nextLink cursor and the output length. A job interrupted by a crash is resumed on
+ * startup by truncating the output to the last checkpoint and continuing from its cursor. A page
+ * whose memberships could not all be read is not written: it is read again from the same cursor,
+ * and the job fails once graph.export.page-attempts reads were incomplete.
+ * Exports run with the app-only credential so they can be resumed without the user's session. Since
+ * that reads the whole directory, only users listed in graph.export.admins may start one, and a job
+ * is only visible to the user who started it.
+ */
+@Service
+public class ExportService {
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private static final List<String> EXPAND_ALL = List.of("groups", "roles");
+    private static final String CSV_HEADER = "id,displayName,userPrincipalName,mail,jobTitle,department,"
+            + "accountEnabled,createdDateTime,lastSignInDateTime,userType,groups,roles\n";
+
+    private final GraphApiService graphApiService;
+    private final AppTokenService appTokenService;
+    private final ExportProperties settings;
+    private final ObjectMapper objectMapper;
+    private final Map<String, ExportJobDTO> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public ExportService(GraphApiService graphApiService, AppTokenService appTokenService,
+                         ExportProperties exportProperties, ObjectMapper objectMapper) {
+        this.graphApiService = graphApiService;
+        this.appTokenService = appTokenService;
+        this.settings = exportProperties;
+        this.objectMapper = objectMapper;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(settings.getMaxConcurrentJobs(), runnable -> {
+            Thread thread = new Thread(runnable, "graph-export-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Whether the user (object id) may start exports
+     */
+    public boolean isAdmin(String principal) {
+        if (principal == null) {
+            return false;
+        }
+        for (String admin : settings.getAdmins()) {
+            if (admin.equalsIgnoreCase(principal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create and queue a new export job
+     *
+     * @param format "ndjson" or "csv"
+     * @param owner  object id of the user starting it
+     */
+    public ExportJobDTO startExport(String format, String owner) {
+        if (!"ndjson".equals(format) && !"csv".equals(format)) {
+            throw new IllegalArgumentException("Unsupported export format: " + format);
+        }
+        ExportJobDTO job = new ExportJobDTO(UUID.randomUUID().toString(), format);
+        job.setOwner(owner);
+        job.setStatus(STATUS_QUEUED);
+        job.setCreatedAt(System.currentTimeMillis());
+        jobs.put(job.getId(), job);
+        saveCheckpoint(job);
+        executor.submit(() -> run(job));
+        return job;
+    }
+
+    /**
+     * A job started by the given user, null if it is unknown or someone else's
+     */
+    public ExportJobDTO getJob(String id, String owner) {
+        ExportJobDTO job = jobs.get(id);
+        return job != null && job.getOwner() != null && job.getOwner().equalsIgnoreCase(owner) ? job : null;
+    }
+
+    /**
+     * Output file of a completed job of the given user, null if the job is unknown, someone else's or
+     * not completed yet
+     */
+    public Path getOutputFile(String id, String owner) {
+        ExportJobDTO job = getJob(id, owner);
+        if (job == null || !STATUS_COMPLETED.equals(job.getStatus())) {
+            return null;
+        }
+        return outputFile(job);
+    }
+
+    /**
+     * Resume jobs that were queued or running when the previous process stopped
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        Path directory = exportDirectory();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> checkpoints = Files.newDirectoryStream(directory, "*.checkpoint")) {
+            for (Path checkpoint : checkpoints) {
+                ExportJobDTO job = loadCheckpoint(checkpoint);
+                jobs.put(job.getId(), job);
+                if (STATUS_QUEUED.equals(job.getStatus()) || STATUS_RUNNING.equals(job.getStatus())) {
+                    System.out.println("Resuming export " + job.getId() + " after " + job.getUsersExported() + " users");
+                    executor.submit(() -> run(job));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Warning: Could not scan export checkpoints - " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(ExportJobDTO job) {
+        job.setStatus(STATUS_RUNNING);
+        saveCheckpoint(job);
+
+        try (FileChannel channel = FileChannel.open(outputFile(job),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Drop anything written after the last checkpoint, it is re-fetched below
+            channel.truncate(job.getBytesWritten());
+            channel.position(job.getBytesWritten());
+
+            do {
+                UserPageDTO page = readPage(job);
+
+                channel.write(ByteBuffer.wrap(encodePage(job, page.getUsers())));
+                channel.force(false);
+
+                job.setBytesWritten(channel.position());
+                job.setCursor(page.getNextCursor());
+                job.setUsersExported(job.getUsersExported() + page.getUsers().size());
+                if (page.getNextCursor() == null) {
+                    job.setStatus(STATUS_COMPLETED);
+                    job.setCompletedAt(System.currentTimeMillis());
+                }
+                saveCheckpoint(job);
+            } while (job.getCursor() != null && !Thread.currentThread().isInterrupted());
+
+            System.out.println("Export " + job.getId() + " finished with " + job.getUsersExported() + " users");
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Shutting down: leave the job RUNNING so it is resumed on the next start
+                return;
+            }
+            System.out.println("Export " + job.getId() + " failed - " + e.getMessage());
+            job.setStatus(STATUS_FAILED);
+            job.setError(e.getMessage());
+            saveCheckpoint(job);
+        }
+    }
+
+    /**
+     * The page at the job's cursor with the memberships of all its users
+     */
+    private UserPageDTO readPage(ExportJobDTO job) {
+        for (int attempt = 1; ; attempt++) {
+            UserPageDTO page = graphApiService.getUsersPage(appTokenService.getAccessToken(),
+                    settings.getPageSize(), job.getCursor(), null, EXPAND_ALL, null);
+            if (page.getMembershipsMissing() == null) {
+                return page;
+            }
+            String error = "Memberships of " + page.getMembershipsMissing().size() + " users could not be read";
+            if (attempt >= settings.getPageAttempts()) {
+                throw new IllegalStateException(error + ": " + String.join(", ", page.getMembershipsMissing()));
+            }
+            System.out.println("Warning: " + error + ", reading export " + job.getId() + " page again");
+            try {
+                Thread.sleep(settings.getPageRetryDelay());
+            } catch (InterruptedException e) {
+                // Keep the flag so run() leaves the job to be resumed
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", e);
+            }
+        }
+    }
+
+    /**
+     * Encode one page as a self-contained gzip member
+     */
+    private byte[] encodePage(ExportJobDTO job, List<UserDTO> users) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(buffer)) {
+            if ("csv".equals(job.getFormat())) {
+                if (job.getBytesWritten() == 0) {
+                    gzip.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+                }
+                for (UserDTO user : users) {
+                    gzip.write(toCsvRow(user).getBytes(StandardCharsets.UTF_8));
+                }
+            } else {
+                for (UserDTO user : users) {
+                    gzip.write(objectMapper.writeValueAsBytes(user));
+                    gzip.write('\n');
+                }
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    private String toCsvRow(UserDTO user) {
+        List<String> groupNames = new ArrayList<>();
+        if (user.getGroups() != null) {
+            for (GroupDTO group : user.getGroups()) {
+                groupNames.add(group.getDisplayName());
+            }
+        }
+        List<String> columns = new ArrayList<>();
+        columns.add(user.getId());
+        columns.add(user.getDisplayName());
+        columns.add(user.getUserPrincipalName());
+        columns.add(user.getMail());
+        columns.add(user.getJobTitle());
+        columns.add(user.getDepartment());
+        columns.add(user.getAccountEnabled() != null ? user.getAccountEnabled().toString() : null);
+        columns.add(user.getCreatedDateTime());
+        columns.add(user.getLastSignInDateTime());
+        columns.add(user.getUserType());
+        columns.add(String.join(";", groupNames));
+        columns.add(user.getRoles() != null ? String.join(";", user.getRoles()) : null);
+
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                row.append(',');
+            }
+            row.append(csvValue(columns.get(i)));
+        }
+        return row.append('\n').toString();
+    }
+
+    private static String csvValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private Path exportDirectory() {
+        return Paths.get(settings.getDirectory());
+    }
+
+    private Path outputFile(ExportJobDTO job) {
+        return exportDirectory().resolve(job.getId() + "." + job.getFormat() + ".gz");
+    }
+
+    private synchronized void saveCheckpoint(ExportJobDTO job) {
+        Properties properties = new Properties();
+        properties.setProperty("id", job.getId());
+        properties.setProperty("format", job.getFormat());
+        properties.setProperty("status", job.getStatus());
+        properties.setProperty("usersExported", String.valueOf(job.getUsersExported()));
+        properties.setProperty("createdAt", String.valueOf(job.getCreatedAt()));
+        properties.setProperty("bytesWritten", String.valueOf(job.getBytesWritten()));
+        if (job.getOwner() != null) {
+            properties.setProperty("owner", job.getOwner());
+        }
+        if (job.getCursor() != null) {
+            properties.setProperty("cursor", job.getCursor());
+        }
+        if (job.getCompletedAt() != null) {
+            properties.setProperty("completedAt", String.valueOf(job.getCompletedAt()));
+        }
+        if (job.getError() != null) {
+            properties.setProperty("error", job.getError());
+        }
+
+        try {
+            Path directory = exportDirectory();
+            Files.createDirectories(directory);
+            Path temp = directory.resolve(job.getId() + ".checkpoint.tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            Files.move(temp, directory.resolve(job.getId() + ".checkpoint"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write export checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    private ExportJobDTO loadCheckpoint(Path checkpoint) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            properties.load(in);
+        }
+        ExportJobDTO job = new ExportJobDTO(properties.getProperty("id"), properties.getProperty("format"));
+        job.setStatus(properties.getProperty("status"));
+        job.setUsersExported(Long.parseLong(properties.getProperty("usersExported", "0")));
+        job.setCreatedAt(Long.parseLong(properties.getProperty("createdAt", "0")));
+        job.setBytesWritten(Long.parseLong(properties.getProperty("bytesWritten", "0")));
+        job.setOwner(properties.getProperty("owner"));
+        job.setCursor(properties.getProperty("cursor"));
+        job.setError(properties.getProperty("error"));
+        if (properties.getProperty("completedAt") != null) {
+            job.setCompletedAt(Long.parseLong(properties.getProperty("completedAt")));
+        }
+        return job;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JDK Flight Recorder recordings, see {@link FlightRecorderService} (prefix "graph.flight-recorder")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.flight-recorder")
+public class FlightRecorderProperties {
+    
+    private boolean continuous = true;
+    private String settings = "default";
+    private long maxAge = 3600000;
+    private long maxSize = 104857600;
+    private List<String> admins = new ArrayList<>();
+    
+    public boolean isContinuous() {
+        return continuous;
+    }
+    
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+    }
+    
+    public String getSettings() {
+        return settings;
+    }
+    
+    public void setSettings(String settings) {
+        this.settings = settings;
+    }
+    
+    public long getMaxAge() {
+        return maxAge;
+    }
+    
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+    
+    public long getMaxSize() {
+        return maxSize;
+    }
+    
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    public List<String> getAdmins() {
+        return admins;
+    }
+    
+    public void setAdmins(List<String> admins) {
+        this.admins = admins;
+    }
+}
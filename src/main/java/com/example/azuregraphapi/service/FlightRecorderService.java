@@ -0,0 +1,183 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.FlightEvents;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * JDK Flight Recorder recordings with the application's {@link FlightEvents}.
+ *
+ * A continuous recording with the low-overhead "default" settings runs from startup, kept on disk for
+ * max-age or up to max-size, so a dump shows the last hour of hot paths, allocations and latency outliers.
+ * One on-demand recording (e.g. with "profile" settings) can be started and stopped next to it.
+ * Environment variables, system properties and the JVM command line, where secrets are usually
+ * passed, are left out of every recording. Recordings still show request paths and timings, so only
+ * graph.flight-recorder.admins may control or download them.
+ */
+@Service
+public class FlightRecorderService {
+
+    private final FlightRecorderProperties settings;
+    private Recording continuous;
+    private Recording onDemand;
+
+    public FlightRecorderService(FlightRecorderProperties flightRecorderProperties) {
+        this.settings = flightRecorderProperties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void startContinuous() {
+        if (!settings.isContinuous()) {
+            return;
+        }
+        try {
+            continuous = newRecording("graph-continuous", settings.getSettings());
+            continuous.setMaxAge(Duration.ofMillis(settings.getMaxAge()));
+            continuous.setMaxSize(settings.getMaxSize());
+            continuous.setToDisk(true);
+            continuous.start();
+            System.out.println("Started continuous flight recording with " + settings.getSettings() + " settings");
+        } catch (Exception e) {
+            System.out.println("Warning: Could not start the continuous flight recording - " + e.getMessage());
+            continuous = null;
+        }
+    }
+
+    public boolean isAdmin(String principal) {
+        if (principal == null) {
+            return false;
+        }
+        for (String admin : settings.getAdmins()) {
+            if (admin.equalsIgnoreCase(principal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start the on-demand recording
+     *
+     * @param configuration JFR settings name, "default" or "profile"
+     * @param duration      stop automatically after this many ms, null to run until stopped
+     * @throws IllegalStateException when it is already running
+     */
+    public synchronized Map<String, Object> start(String configuration, Long duration) {
+        if (onDemand != null && onDemand.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("An on-demand recording is already running");
+        }
+        closeOnDemand();
+        try {
+            onDemand = newRecording("graph-on-demand", configuration != null ? configuration : "profile");
+        } catch (IOException | ParseException e) {
+            throw new IllegalArgumentException("Unknown recording settings: " + configuration);
+        }
+        onDemand.setToDisk(true);
+        if (duration != null) {
+            onDemand.setDuration(Duration.ofMillis(duration));
+        }
+        onDemand.start();
+        return describe(onDemand);
+    }
+
+    /**
+     * Stop the on-demand recording and write it to a temporary file, which the caller deletes
+     *
+     * @throws IllegalStateException when no on-demand recording exists
+     */
+    public synchronized Path stop() throws IOException {
+        if (onDemand == null) {
+            throw new IllegalStateException("No on-demand recording was started");
+        }
+        if (onDemand.getState() == RecordingState.RUNNING) {
+            onDemand.stop();
+        }
+        Path file = dumpTo(onDemand);
+        closeOnDemand();
+        return file;
+    }
+
+    /**
+     * Write what was recorded so far to a temporary file, which the caller deletes: the running
+     * on-demand recording if there is one, else the continuous recording
+     *
+     * @throws IllegalStateException when nothing is recording
+     */
+    public synchronized Path dump() throws IOException {
+        Recording source = onDemand != null && onDemand.getState() == RecordingState.RUNNING ? onDemand
+                : continuous != null && continuous.getState() == RecordingState.RUNNING ? continuous : null;
+        if (source == null) {
+            throw new IllegalStateException("No flight recording is running");
+        }
+        return dumpTo(source);
+    }
+
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("continuous", continuous != null ? describe(continuous) : null);
+        status.put("onDemand", onDemand != null ? describe(onDemand) : null);
+        return status;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        closeOnDemand();
+        if (continuous != null) {
+            continuous.close();
+            continuous = null;
+        }
+    }
+
+    private static Recording newRecording(String name, String configuration) throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration(configuration));
+        recording.setName(name);
+        recording.disable("jdk.InitialEnvironmentVariable");
+        recording.disable("jdk.InitialSystemProperty");
+        recording.disable("jdk.JVMInformation");
+        recording.enable(FlightEvents.GraphCall.class);
+        recording.enable(FlightEvents.SessionLookup.class);
+        recording.enable(FlightEvents.CacheLookup.class);
+        return recording;
+    }
+
+    private static Path dumpTo(Recording recording) throws IOException {
+        Path file = Files.createTempFile(recording.getName() + "-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private void closeOnDemand() {
+        if (onDemand != null) {
+            onDemand.close();
+            onDemand = null;
+        }
+    }
+
+    private static Map<String, Object> describe(Recording recording) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("name", recording.getName());
+        description.put("state", recording.getState().name().toLowerCase(Locale.ROOT));
+        description.put("startTime", recording.getStartTime());
+        description.put("size", recording.getSize());
+        return description;
+    }
+}
@@ -2,37 +2,115 @@ package com.example.azuregraphapi.service;
 
 import com.example.azuregraphapi.dto.RoleDTO;
 import com.example.azuregraphapi.dto.UserDTO;
+import com.example.azuregraphapi.dto.DirectoryFilter;
 import com.example.azuregraphapi.dto.GroupDTO;
-import com.example.azuregraphapi.config.AzureProperties;
+import com.example.azuregraphapi.dto.SessionDTO;
+import com.example.azuregraphapi.dto.UserLookupDTO;
+import com.example.azuregraphapi.dto.UserPageDTO;
+import com.example.azuregraphapi.config.GraphBulkheadFilter;
+import com.example.azuregraphapi.config.GraphClientConfig;
+import com.example.azuregraphapi.config.GraphProperties;
+import com.example.azuregraphapi.config.Principals;
+import com.example.azuregraphapi.config.RequestDeadline;
+import com.example.azuregraphapi.config.SessionAuthenticationFilter;
+import com.example.azuregraphapi.config.TenantRegistry;
 import com.fasterxml.jackson.databind.JsonNode;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.common.KeyValues;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import jakarta.servlet.http.HttpServletRequest;
 
+/**
+ * Reads users, groups and directory roles for the API endpoints. Graph reads are described as
+ * {@link GraphQuery} objects and run by {@link GraphQueryEngine}; mapping lives in {@link GraphMappers}.
+ * Each public operation and the access token lookup run as a "graph.operation" observation, which
+ * becomes the parent span of the outbound Graph calls it makes.
+ */
 @Service
 public class GraphApiService {
 
+    private static final String GRAPH_BASE_URL = GraphClientConfig.GRAPH_BASE_URL;
+
+    private static final Set<String> USER_FIELDS = GraphMappers.USER_FIELDS;
+
+    /** Profile fields needed to open a session when the ID token cannot be used */
+    private static final List<String> SIGN_IN_FIELDS = List.of("id", "displayName", "userPrincipalName", "mail");
+
+    private static final String MEMBER_OF_QUERY = "/memberOf?$select=" + String.join(",", GraphMappers.MEMBER_OF_FIELDS);
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 999;
+
+    /** Keys accepted by one /users/lookup call */
+    public static final int MAX_LOOKUP_KEYS = 500;
+    /** Graph allows at most 15 values in an "in" filter */
+    private static final int LOOKUP_FILTER_CHUNK = 15;
+    private static final Pattern OBJECT_ID = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    /** Delegated scopes that let a caller read users, groups, roles and memberships from Graph itself */
+    private static final Set<String> DIRECTORY_READ_SCOPES = Set.of(
+            "Directory.Read.All", "Directory.ReadWrite.All", "Directory.AccessAsUser.All");
+    private static final String GRAPH_SCOPE_PREFIX = "https://graph.microsoft.com/";
+    private static final ObjectMapper CLAIMS_READER = new ObjectMapper();
+
     private final OAuth2AuthorizedClientService authorizedClientService;
     private final WebClient webClient;
-    private final AzureProperties azureProperties;
-
-    public GraphApiService(OAuth2AuthorizedClientService authorizedClientService, AzureProperties azureProperties) {
+    private final WebClient loginWebClient;
+    private final GraphQueryEngine queries;
+    private final GraphProperties graphProperties;
+    private final DirectoryCache directoryCache;
+    private final GraphCircuitBreakers circuitBreakers;
+    private final TenantRegistry tenantRegistry;
+    private final GraphHedger hedger;
+    private final IdTokenVerifier idTokenVerifier;
+    private final ObservationRegistry observationRegistry;
+    private final GroupCountService groupCounts;
+
+    public GraphApiService(OAuth2AuthorizedClientService authorizedClientService, GraphProperties graphProperties,
+                           DirectoryCache directoryCache, GraphCircuitBreakers circuitBreakers,
+                           TenantRegistry tenantRegistry, GraphHedger hedger, IdTokenVerifier idTokenVerifier,
+                           ObservationRegistry observationRegistry, GroupCountService groupCounts,
+                           GraphQueryEngine queries, WebClient graphWebClient, WebClient loginWebClient) {
         this.authorizedClientService = authorizedClientService;
-        this.azureProperties = azureProperties;
-        this.webClient = WebClient.builder()
-                .baseUrl("https://graph.microsoft.com/v1.0")
-                .build();
+        this.graphProperties = graphProperties;
+        this.directoryCache = directoryCache;
+        this.circuitBreakers = circuitBreakers;
+        this.tenantRegistry = tenantRegistry;
+        this.hedger = hedger;
+        this.idTokenVerifier = idTokenVerifier;
+        this.observationRegistry = observationRegistry;
+        this.groupCounts = groupCounts;
+        this.queries = queries;
+        this.webClient = graphWebClient;
+        this.loginWebClient = loginWebClient;
     }
 
     private String getAccessToken(Authentication authentication) {
@@ -51,61 +129,129 @@ public class GraphApiService {
     }
 
     private String getAccessTokenFromSession(HttpServletRequest request) {
-        // Get access token from session (stored during login)
-        Object token = request.getSession().getAttribute("azure_access_token");
-        if (token != null) {
-            return token.toString();
+        // Get access token from the session resolved by SessionAuthenticationFilter (stored during login)
+        Object session = request.getAttribute(SessionAuthenticationFilter.SESSION_ATTRIBUTE);
+        if (session instanceof SessionDTO) {
+            return ((SessionDTO) session).getAccessToken();
         }
         throw new RuntimeException("No access token found in session");
     }
 
-    public UserDTO getCurrentUser(Authentication authentication, HttpServletRequest request) {
-        try {
-            String accessToken;
+    private String resolveAccessToken(Authentication authentication, HttpServletRequest request) {
+        return observe("token", KeyValues.empty(), () -> {
             if (authentication != null && authentication instanceof OAuth2AuthenticationToken) {
-                accessToken = getAccessToken(authentication);
-            } else {
-                // Use session-based token
-                accessToken = getAccessTokenFromSession(request);
+                return getAccessToken(authentication);
             }
+            // Use session-based token
+            return getAccessTokenFromSession(request);
+        });
+    }
 
-            // Get user profile with all fields
-            Mono<JsonNode> userMono = webClient.get()
-                    .uri("/me?$select=id,displayName,userPrincipalName,mail,jobTitle,department,accountEnabled,createdDateTime,lastSignInDateTime,userType,assignedLicenses")
-                    .header("Authorization", "Bearer " + accessToken)
-                    .retrieve()
-                    .bodyToMono(JsonNode.class);
+    /**
+     * Run an operation as a "graph.operation" observation tagged with its name
+     *
+     * @param attributes high-cardinality span attributes, e.g. the user id
+     */
+    private <T> T observe(String operation, KeyValues attributes, Supplier<T> call) {
+        return Observation.createNotStarted("graph.operation", observationRegistry)
+                .contextualName("graph " + operation)
+                .lowCardinalityKeyValue("graph.operation", operation)
+                .highCardinalityKeyValues(attributes)
+                .observe(call);
+    }
 
-            JsonNode userJson = userMono.block();
-
-            UserDTO userDTO = new UserDTO();
-            userDTO.setId(userJson.get("id").asText());
-            userDTO.setDisplayName(userJson.has("displayName") && !userJson.get("displayName").isNull() ? userJson.get("displayName").asText() : null);
-            userDTO.setUserPrincipalName(userJson.has("userPrincipalName") && !userJson.get("userPrincipalName").isNull() ? userJson.get("userPrincipalName").asText() : null);
-            userDTO.setMail(userJson.has("mail") && !userJson.get("mail").isNull() ? userJson.get("mail").asText() : null);
-            userDTO.setJobTitle(userJson.has("jobTitle") && !userJson.get("jobTitle").isNull() ? userJson.get("jobTitle").asText() : null);
-            userDTO.setDepartment(userJson.has("department") && !userJson.get("department").isNull() ? userJson.get("department").asText() : null);
-            userDTO.setAccountEnabled(userJson.has("accountEnabled") && !userJson.get("accountEnabled").isNull() ? userJson.get("accountEnabled").asBoolean() : true);
-            userDTO.setCreatedDateTime(userJson.has("createdDateTime") && !userJson.get("createdDateTime").isNull() ? userJson.get("createdDateTime").asText() : null);
-            userDTO.setLastSignInDateTime(userJson.has("lastSignInDateTime") && !userJson.get("lastSignInDateTime").isNull() ? userJson.get("lastSignInDateTime").asText() : null);
-            userDTO.setUserType(userJson.has("userType") && !userJson.get("userType").isNull() ? userJson.get("userType").asText() : "Member");
-
-            // Get user's group memberships
-            try {
-                List<GroupDTO> groups = getUserGroups(authentication, request, null);
-                userDTO.setGroups(groups != null ? groups : new ArrayList<>());
-            } catch (Exception e) {
-                System.out.println("Warning: Could not retrieve user groups - " + e.getMessage());
-                userDTO.setGroups(new ArrayList<>());
+    private static KeyValues pageAttributes(Integer pageSize, String cursor, List<String> expand) {
+        return KeyValues.of(
+                "graph.page.size", String.valueOf(pageSize != null ? pageSize : DEFAULT_PAGE_SIZE),
+                "graph.page.continued", String.valueOf(cursor != null && !cursor.isBlank()),
+                "graph.expand", expand != null ? String.join(",", expand) : "");
+    }
+
+    private static KeyValues userAttributes(String userId) {
+        return KeyValues.of("graph.user.id", userId != null ? userId : "me");
+    }
+
+    /**
+     * The directory cache is filled with the app's own permissions and only mirrors the default tenant,
+     * so it may only answer callers of that tenant whose delegated token can read the directory too
+     */
+    public boolean canUseCache(Authentication authentication, HttpServletRequest request) {
+        if (!tenantRegistry.isDefault(tenantRegistry.resolve(request))) {
+            return false;
+        }
+        for (String scope : scopesOf(authentication, request)) {
+            String name = scope.startsWith(GRAPH_SCOPE_PREFIX) ? scope.substring(GRAPH_SCOPE_PREFIX.length()) : scope;
+            if (DIRECTORY_READ_SCOPES.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scopes granted to the caller's Graph token, empty when they cannot be determined
+     */
+    private Collection<String> scopesOf(Authentication authentication, HttpServletRequest request) {
+        if (authentication instanceof OAuth2AuthenticationToken oauthToken) {
+            OAuth2AuthorizedClient client = authorizedClientService.loadAuthorizedClient(
+                    oauthToken.getAuthorizedClientRegistrationId(), oauthToken.getName());
+            return client != null ? client.getAccessToken().getScopes() : Set.of();
+        }
+        Object session = request != null ? request.getAttribute(SessionAuthenticationFilter.SESSION_ATTRIBUTE) : null;
+        if (!(session instanceof SessionDTO sessionDTO) || sessionDTO.getAccessToken() == null) {
+            return Set.of();
+        }
+        // The session's token was obtained by this service at sign-in and never came from the client
+        String[] parts = sessionDTO.getAccessToken().split("\\.");
+        if (parts.length < 2) {
+            return Set.of();
+        }
+        try {
+            JsonNode claims = CLAIMS_READER.readTree(Base64.getUrlDecoder().decode(parts[1]));
+            return claims.hasNonNull("scp") ? List.of(claims.get("scp").asText().split(" ")) : Set.of();
+        } catch (Exception e) {
+            return Set.of();
+        }
+    }
+
+    /**
+     * Get the signed-in user's profile; during a Graph outage the last profile fetched for the same
+     * principal is returned and the request is marked stale
+     */
+    public UserDTO getCurrentUser(Authentication authentication, HttpServletRequest request) {
+        String fallbackKey = authentication != null ?
+                tenantRegistry.resolve(request).key() + ":profile:" + authentication.getName() : null;
+        return observe("profile", KeyValues.empty(), () ->
+                circuitBreakers.execute("profile", fallbackKey, request, () -> loadCurrentUser(authentication, request)));
+    }
+
+    private UserDTO loadCurrentUser(Authentication authentication, HttpServletRequest request) {
+        try {
+            String accessToken = resolveAccessToken(authentication, request);
+
+            UserDTO userDTO = RequestDeadline.await(hedger.hedge("me", () ->
+                    queries.get(accessToken, "/me", USER_FIELDS, GraphMappers.USER, GraphBulkheadFilter.INTERACTIVE)));
+
+            // Memberships come from the directory cache when it knows the user
+            boolean cacheable = canUseCache(authentication, request);
+            List<GroupDTO> cachedGroups = cacheable ? directoryCache.getUserGroups(userDTO.getId()) : null;
+            List<String> cachedRoles = cacheable ? directoryCache.getUserRoles(userDTO.getId()) : null;
+            if (cachedGroups != null && cachedRoles != null) {
+                userDTO.setGroups(cachedGroups);
+                userDTO.setRoles(cachedRoles);
+                return userDTO;
             }
 
-            // Get user's directory roles
+            // Groups and directory roles both come from one memberOf read
             try {
-                List<String> roles = getUserRoles(authentication, request, null);
-                userDTO.setRoles(roles != null ? roles : new ArrayList<>());
+                applyMemberships(userDTO, RequestDeadline.await(memberOf(accessToken, null)), true, true);
             } catch (Exception e) {
-                System.out.println("Warning: Could not retrieve user roles - " + e.getMessage());
-                userDTO.setRoles(new ArrayList<>());
+                // Out of time is not a Graph error, the caller gets 504 instead of a profile without memberships
+                if (RequestDeadline.isExceeded(e)) {
+                    throw e;
+                }
+                System.out.println("Warning: Could not retrieve user groups and roles - " + e.getMessage());
+                applyMemberships(userDTO, null, true, true);
             }
 
             return userDTO;
@@ -115,253 +261,435 @@ public class GraphApiService {
         }
     }
 
+    /**
+     * Groups of a user, or of the signed-in user when userId is null
+     */
     public List<GroupDTO> getUserGroups(Authentication authentication, HttpServletRequest request, String userId) {
-        try {
-            String accessToken;
-            if (authentication != null && authentication instanceof OAuth2AuthenticationToken) {
-                accessToken = getAccessToken(authentication);
-            } else {
-                // Use session-based token
-                accessToken = getAccessTokenFromSession(request);
+        return observe("user.groups", userAttributes(userId), () -> {
+            try {
+                String accessToken = resolveAccessToken(authentication, request);
+                return GraphMappers.memberGroups(RequestDeadline.await(memberOf(accessToken, userId)));
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to retrieve user groups: " + e.getMessage(), e);
             }
-            String uri = userId != null ? "/users/" + userId + "/memberOf" : "/me/memberOf";
+        });
+    }
 
-            Mono<JsonNode> groupsMono = webClient.get()
-                    .uri(uri + "?$select=id,displayName,description,groupTypes")
-                    .header("Authorization", "Bearer " + accessToken)
-                    .retrieve()
-                    .bodyToMono(JsonNode.class);
+    /**
+     * Directory role names of a user, or of the signed-in user when userId is null
+     */
+    public List<String> getUserRoles(Authentication authentication, HttpServletRequest request, String userId) {
+        return observe("user.roles", userAttributes(userId), () -> {
+            try {
+                String accessToken = resolveAccessToken(authentication, request);
+                return GraphMappers.memberRoles(RequestDeadline.await(memberOf(accessToken, userId)));
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to retrieve user roles: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Hedged memberOf read; the signed-in user's own read counts as interactive
+     */
+    private Mono<JsonNode> memberOf(String accessToken, String userId) {
+        String uri = (userId != null ? "/users/" + userId : "/me") + MEMBER_OF_QUERY;
+        return hedger.hedge("memberOf", () -> queries.fetch(accessToken, uri,
+                userId == null ? GraphBulkheadFilter.INTERACTIVE : GraphBulkheadFilter.BULK));
+    }
+
+    /**
+     * Get one page of users.
+     * Only the projected fields are selected from Graph, and group/role memberships are only
+     * fetched when requested through expand, with $batch requests of 20 memberOf reads.
+     *
+     * @param pageSize number of users per page (1-999), null for the default
+     * @param cursor   opaque cursor returned as nextCursor of a previous page, null for the first page
+     * @param fields   UserDTO fields to return, null or empty for all of them
+     * @param expand   memberships to include ("groups", "roles"), null or empty for none
+     * @param filter   criteria translated into Graph $filter / $search, null for none
+     */
+    public UserPageDTO getUsersPage(Authentication authentication, HttpServletRequest request,
+                                    Integer pageSize, String cursor, List<String> fields, List<String> expand,
+                                    DirectoryFilter filter) {
+        return observe("users.page", pageAttributes(pageSize, cursor, expand), () -> {
+            String accessToken = resolveAccessToken(authentication, request);
+            boolean useCache = canUseCache(authentication, request);
+            return circuitBreakers.execute("users", null, request,
+                    () -> loadUsersPage(accessToken, pageSize, cursor, fields, expand, filter, useCache,
+                            GraphBulkheadFilter.BULK));
+        });
+    }
+
+    /**
+     * Get one page of users of the default tenant with an explicit access token, e.g. an app-only
+     * token for background jobs. The page read is scheduled as background work; memberships of the
+     * page are fetched concurrently, bounded by graph.membership-concurrency.
+     */
+    public UserPageDTO getUsersPage(String accessToken, Integer pageSize, String cursor, List<String> fields,
+                                    List<String> expand, DirectoryFilter filter) {
+        return observe("users.page", pageAttributes(pageSize, cursor, expand), () ->
+                loadUsersPage(accessToken, pageSize, cursor, fields, expand, filter, true,
+                        GraphBulkheadFilter.BACKGROUND));
+    }
 
-            JsonNode groupsJson = groupsMono.block();
-            List<GroupDTO> groups = new ArrayList<>();
-
-            if (groupsJson != null && groupsJson.has("value")) {
-                JsonNode groupsArray = groupsJson.get("value");
-                for (JsonNode groupNode : groupsArray) {
-                    // Only include groups (not directory roles)
-                    if (groupNode.has("@odata.type") &&
-                            groupNode.get("@odata.type").asText().contains("group")) {
-
-                        GroupDTO groupDTO = new GroupDTO();
-                        groupDTO.setId(groupNode.get("id").asText());
-                        groupDTO.setDisplayName(groupNode.has("displayName") && !groupNode.get("displayName").isNull() ?
-                                groupNode.get("displayName").asText() : null);
-                        groupDTO.setDescription(groupNode.has("description") && !groupNode.get("description").isNull() ?
-                                groupNode.get("description").asText() : null);
-
-                        // Set group type based on groupTypes array
-                        if (groupNode.has("groupTypes") && !groupNode.get("groupTypes").isNull()) {
-                            JsonNode groupTypesArray = groupNode.get("groupTypes");
-                            if (groupTypesArray.isArray() && groupTypesArray.size() > 0) {
-                                // Microsoft 365 groups have "Unified" in groupTypes
-                                boolean isUnified = false;
-                                for (JsonNode typeNode : groupTypesArray) {
-                                    if ("Unified".equals(typeNode.asText())) {
-                                        isUnified = true;
-                                        break;
-                                    }
-                                }
-                                groupDTO.setGroupType(isUnified ? "Microsoft 365" : "Security");
-                            } else {
-                                groupDTO.setGroupType("Security");
-                            }
-                        } else {
-                            groupDTO.setGroupType("Security");
-                        }
-
-                        groups.add(groupDTO);
+    /**
+     * @param useCache whether memberships may come from the directory cache, which only holds the default tenant
+     * @param bulkhead priority class of the page read
+     */
+    private UserPageDTO loadUsersPage(String accessToken, Integer pageSize, String cursor, List<String> fields,
+                                      List<String> expand, DirectoryFilter filter, boolean useCache,
+                                      String bulkhead) {
+        Set<String> selected = resolveUserFields(fields);
+        boolean expandGroups = expand != null && expand.contains("groups");
+        boolean expandRoles = expand != null && expand.contains("roles");
+        validateExpand(expand);
+
+        GraphQuery<UserDTO> query = GraphQuery.of("/users", GraphMappers.user(selected))
+                .select(selected)
+                .eventual()
+                .bulkhead(bulkhead);
+        Mono<GraphQueryEngine.Page<UserDTO>> pageMono;
+        if (cursor != null && !cursor.isBlank()) {
+            // The nextLink already carries $select, $filter, $search and $count of the first page
+            pageMono = queries.next(accessToken, decodeCursor(cursor), query);
+        } else {
+            int top = pageSize != null ? pageSize : DEFAULT_PAGE_SIZE;
+            if (top < 1 || top > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            pageMono = queries.page(accessToken, query.top(top).where(filter, "displayName", "mail", "userPrincipalName"));
+        }
+
+        try {
+            GraphQueryEngine.Page<UserDTO> page = RequestDeadline.await(pageMono);
+            List<UserDTO> users = page.items();
+
+            List<String> membershipsMissing = List.of();
+            if (expandGroups || expandRoles) {
+                List<UserDTO> uncached = new ArrayList<>();
+                for (UserDTO userDTO : users) {
+                    List<GroupDTO> cachedGroups = useCache ? directoryCache.getUserGroups(userDTO.getId()) : null;
+                    List<String> cachedRoles = useCache ? directoryCache.getUserRoles(userDTO.getId()) : null;
+                    if (cachedGroups == null || cachedRoles == null) {
+                        uncached.add(userDTO);
+                        continue;
+                    }
+                    if (expandGroups) {
+                        userDTO.setGroups(cachedGroups);
+                    }
+                    if (expandRoles) {
+                        userDTO.setRoles(cachedRoles);
                     }
                 }
+                membershipsMissing = fetchMemberships(accessToken, uncached, expandGroups, expandRoles);
             }
 
-            return groups;
+            UserPageDTO result = new UserPageDTO(users, page.nextLink() != null ? encodeCursor(page.nextLink()) : null);
+            result.setTotalCount(page.count());
+            if (!membershipsMissing.isEmpty()) {
+                result.setMembershipsMissing(membershipsMissing);
+            }
+            return result;
 
         } catch (Exception e) {
-            throw new RuntimeException("Failed to retrieve user groups: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to retrieve users page: " + e.getMessage(), e);
         }
     }
 
-    public List<String> getUserRoles(Authentication authentication, HttpServletRequest request, String userId) {
-        try {
-            String accessToken;
-            if (authentication != null && authentication instanceof OAuth2AuthenticationToken) {
-                accessToken = getAccessToken(authentication);
-            } else {
-                // Use session-based token
-                accessToken = getAccessTokenFromSession(request);
+    /**
+     * Resolve users by object id or userPrincipalName (any key containing "@").
+     * Users known to the directory cache are answered from it; the rest are read with
+     * "id in (...)" / "userPrincipalName in (...)" filters of 15 keys each, and their memberships,
+     * when expanded, with $batch requests of 20 memberOf reads each.
+     *
+     * @return found users in the order of their first key, and the keys that matched no user
+     */
+    public UserLookupDTO lookupUsers(Authentication authentication, HttpServletRequest request,
+                                     List<String> keys, List<String> expand) {
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one user id or userPrincipalName is required");
+        }
+        if (keys.size() > MAX_LOOKUP_KEYS) {
+            throw new IllegalArgumentException("At most " + MAX_LOOKUP_KEYS + " users can be looked up at once");
+        }
+        for (String key : keys) {
+            if (key == null || key.isBlank()) {
+                throw new IllegalArgumentException("User ids and userPrincipalNames must not be blank");
             }
-            String uri = userId != null ? "/users/" + userId + "/memberOf" : "/me/memberOf";
-
-            Mono<JsonNode> rolesMono = webClient.get()
-                    .uri(uri)
-                    .header("Authorization", "Bearer " + accessToken)
-                    .retrieve()
-                    .bodyToMono(JsonNode.class);
-
-            JsonNode rolesJson = rolesMono.block();
-            List<String> roles = new ArrayList<>();
+        }
+        validateExpand(expand);
+        return observe("users.lookup", KeyValues.of("graph.lookup.keys", String.valueOf(keys.size())), () -> {
+            String accessToken = resolveAccessToken(authentication, request);
+            boolean useCache = canUseCache(authentication, request) && directoryCache.isLoaded();
+            return circuitBreakers.execute("lookup", null, request,
+                    () -> loadLookup(accessToken, keys, expand, useCache));
+        });
+    }
 
-            if (rolesJson != null && rolesJson.has("value")) {
-                JsonNode rolesArray = rolesJson.get("value");
-                for (JsonNode roleNode : rolesArray) {
-                    // Only include directory roles
-                    if (roleNode.has("@odata.type") &&
-                            roleNode.get("@odata.type").asText().contains("directoryRole")) {
+    private UserLookupDTO loadLookup(String accessToken, List<String> keys, List<String> expand, boolean useCache) {
+        boolean expandGroups = expand != null && expand.contains("groups");
+        boolean expandRoles = expand != null && expand.contains("roles");
+
+        // Found users by lower-cased id and userPrincipalName
+        Map<String, UserDTO> found = new HashMap<>();
+        List<String> missingIds = new ArrayList<>();
+        List<String> missingNames = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            boolean byName = key.contains("@");
+            if (!byName && !OBJECT_ID.matcher(key).matches()) {
+                // Graph rejects the whole filter for a malformed id
+                continue;
+            }
+            UserDTO cached = !useCache ? null : byName ?
+                    directoryCache.getUserByPrincipalName(key) : directoryCache.getUser(key);
+            if (cached == null) {
+                (byName ? missingNames : missingIds).add(key);
+                continue;
+            }
+            UserDTO user = cached;
+            if (expandGroups || expandRoles) {
+                user = directoryCache.getUserWithMemberships(cached.getId());
+                if (!expandGroups) {
+                    user.setGroups(null);
+                }
+                if (!expandRoles) {
+                    user.setRoles(null);
+                }
+            }
+            found.put(key.toLowerCase(Locale.ROOT), user);
+        }
 
-                        String roleName = roleNode.has("displayName") ?
-                                roleNode.get("displayName").asText() : "Unknown Role";
-                        roles.add(roleName);
+        try {
+            List<GraphQuery<UserDTO>> lookups = new ArrayList<>();
+            for (List<String> chunk : partition(missingIds, LOOKUP_FILTER_CHUNK)) {
+                lookups.add(GraphQuery.of("/users", GraphMappers.USER).select(USER_FIELDS)
+                        .filter("id in (" + GraphQuery.odataList(chunk) + ")"));
+            }
+            for (List<String> chunk : partition(missingNames, LOOKUP_FILTER_CHUNK)) {
+                lookups.add(GraphQuery.of("/users", GraphMappers.USER).select(USER_FIELDS)
+                        .filter("userPrincipalName in (" + GraphQuery.odataList(chunk) + ")"));
+            }
+            List<UserDTO> fetched = RequestDeadline.await(Flux.fromIterable(lookups)
+                    .flatMap(lookup -> queries.page(accessToken, lookup), graphProperties.getMembershipConcurrency())
+                    .flatMapIterable(GraphQueryEngine.Page::items)
+                    .collectList());
+
+            if (fetched != null && !fetched.isEmpty()) {
+                if (expandGroups || expandRoles) {
+                    fetchMemberships(accessToken, fetched, expandGroups, expandRoles);
+                }
+                for (UserDTO user : fetched) {
+                    found.put(user.getId().toLowerCase(Locale.ROOT), user);
+                    if (user.getUserPrincipalName() != null) {
+                        found.put(user.getUserPrincipalName().toLowerCase(Locale.ROOT), user);
                     }
                 }
             }
-
-            return roles;
-
         } catch (Exception e) {
-            throw new RuntimeException("Failed to retrieve user roles: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to look up users: " + e.getMessage(), e);
         }
-    }
 
-    public List<UserDTO> getAllUsers(Authentication authentication, HttpServletRequest request) {
-        try {
-            String accessToken;
-            if (authentication != null && authentication instanceof OAuth2AuthenticationToken) {
-                accessToken = getAccessToken(authentication);
-            } else {
-                // Use session-based token
-                accessToken = getAccessTokenFromSession(request);
+        UserLookupDTO result = new UserLookupDTO();
+        Set<String> returned = new HashSet<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            UserDTO user = found.get(key.toLowerCase(Locale.ROOT));
+            if (user == null) {
+                result.getNotFound().add(key);
+            } else if (returned.add(user.getId())) {
+                result.getUsers().add(user);
             }
+        }
+        return result;
+    }
 
-            Mono<JsonNode> usersMono = webClient.get()
-                    .uri("/users?$top=100&$select=id,displayName,userPrincipalName,mail,jobTitle,department,accountEnabled,createdDateTime,lastSignInDateTime,userType,assignedLicenses")
-                    .header("Authorization", "Bearer " + accessToken)
-                    .retrieve()
-                    .bodyToMono(JsonNode.class);
+    /**
+     * Fill in memberships with one $batch request per 20 users; the query engine retries parts
+     * throttled by Graph after their Retry-After, users still without an answer get none
+     *
+     * @return ids of the users left without an answer
+     */
+    private List<String> fetchMemberships(String accessToken, List<UserDTO> users, boolean expandGroups,
+                                          boolean expandRoles) {
+        List<String> missing = new ArrayList<>();
+        if (users.isEmpty()) {
+            return missing;
+        }
+        List<String> urls = new ArrayList<>();
+        for (UserDTO user : users) {
+            urls.add("/users/" + user.getId() + MEMBER_OF_QUERY);
+        }
+        List<JsonNode> memberships = RequestDeadline.await(queries.batch(accessToken, urls));
 
-            JsonNode usersJson = usersMono.block();
-            List<UserDTO> userDTOs = new ArrayList<>();
-
-            if (usersJson != null && usersJson.has("value")) {
-                JsonNode usersArray = usersJson.get("value");
-                for (JsonNode userNode : usersArray) {
-                    UserDTO userDTO = new UserDTO();
-                    String userId = userNode.get("id").asText();
-
-                    userDTO.setId(userId);
-                    userDTO.setDisplayName(userNode.has("displayName") ?
-                            userNode.get("displayName").asText() : null);
-                    userDTO.setUserPrincipalName(userNode.has("userPrincipalName") ?
-                            userNode.get("userPrincipalName").asText() : null);
-                    userDTO.setMail(userNode.has("mail") ?
-                            userNode.get("mail").asText() : null);
-                    userDTO.setJobTitle(userNode.has("jobTitle") ?
-                            userNode.get("jobTitle").asText() : null);
-                    userDTO.setDepartment(userNode.has("department") ?
-                            userNode.get("department").asText() : null);
-                    userDTO.setAccountEnabled(userNode.has("accountEnabled") ?
-                            userNode.get("accountEnabled").asBoolean() : true);
-                    userDTO.setCreatedDateTime(userNode.has("createdDateTime") ?
-                            userNode.get("createdDateTime").asText() : null);
-                    userDTO.setLastSignInDateTime(userNode.has("lastSignInDateTime") ?
-                            userNode.get("lastSignInDateTime").asText() : null);
-                    userDTO.setUserType(userNode.has("userType") ?
-                            userNode.get("userType").asText() : "Member");
-
-                    // Get groups and roles for each user
-                    try {
-                        List<GroupDTO> groups = getUserGroups(authentication, request, userId);
-                        List<String> roles = getUserRoles(authentication, request, userId);
-                        userDTO.setGroups(groups);
-                        userDTO.setRoles(roles);
-                    } catch (Exception e) {
-                        // If we can't get groups/roles for a user, set empty lists
-                        userDTO.setGroups(new ArrayList<>());
-                        userDTO.setRoles(new ArrayList<>());
-                    }
+        for (int i = 0; i < users.size(); i++) {
+            if (memberships.get(i) == null) {
+                System.out.println("Warning: Could not retrieve memberships for user " + users.get(i).getId());
+                missing.add(users.get(i).getId());
+            }
+            applyMemberships(users.get(i), memberships.get(i), expandGroups, expandRoles);
+        }
+        return missing;
+    }
+
+    private void applyMemberships(UserDTO userDTO, JsonNode memberOf, boolean expandGroups, boolean expandRoles) {
+        if (expandGroups) {
+            userDTO.setGroups(GraphMappers.memberGroups(memberOf));
+        }
+        if (expandRoles) {
+            userDTO.setRoles(GraphMappers.memberRoles(memberOf));
+        }
+    }
 
-                    userDTOs.add(userDTO);
+    private static void validateExpand(List<String> expand) {
+        if (expand != null) {
+            for (String name : expand) {
+                if (!"groups".equals(name) && !"roles".equals(name)) {
+                    throw new IllegalArgumentException("Unsupported expand value: " + name);
                 }
             }
+        }
+    }
 
-            return userDTOs;
-
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to retrieve all users: " + e.getMessage(), e);
+    private static <T> List<List<T>> partition(List<T> items, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            chunks.add(items.subList(i, Math.min(items.size(), i + size)));
         }
+        return chunks;
     }
 
     /**
-     * Get all security groups in the organization
+     * GET a Graph resource with an explicit access token, scheduled as background work
+     *
+     * @param uri path relative to the v1.0 endpoint, or an absolute nextLink/deltaLink
      */
-    public List<GroupDTO> getAllSecurityGroups(Authentication authentication, HttpServletRequest request) {
-        try {
-            String accessToken;
-            if (authentication != null && authentication instanceof OAuth2AuthenticationToken) {
-                accessToken = getAccessToken(authentication);
-                System.out.println("Using OAuth2 access token for all groups");
-            } else {
-                // Use session-based token
-                accessToken = getAccessTokenFromSession(request);
-                System.out.println("Using session-based access token for all groups");
+    public JsonNode fetchJson(String accessToken, String uri) {
+        WebClient.RequestHeadersSpec<?> spec = uri.startsWith(GRAPH_BASE_URL) ?
+                webClient.get().uri(java.net.URI.create(uri)) : webClient.get().uri(uri);
+        return RequestDeadline.await(spec
+                .header("Authorization", "Bearer " + accessToken)
+                .attribute(GraphBulkheadFilter.ATTRIBUTE, GraphBulkheadFilter.BACKGROUND)
+                .retrieve()
+                .bodyToMono(JsonNode.class));
+    }
+
+    /**
+     * Send a write request (POST, PATCH, DELETE) to Graph with an explicit access token, scheduled as
+     * background work
+     *
+     * @return the response body, or null for empty responses such as 204
+     */
+    public JsonNode sendJson(String accessToken, HttpMethod method, String uri, Object body) {
+        WebClient.RequestBodySpec spec = webClient.method(method).uri(uri)
+                .header("Authorization", "Bearer " + accessToken)
+                .attribute(GraphBulkheadFilter.ATTRIBUTE, GraphBulkheadFilter.BACKGROUND);
+        WebClient.RequestHeadersSpec<?> request = body != null ?
+                spec.contentType(MediaType.APPLICATION_JSON).bodyValue(body) : spec;
+        return RequestDeadline.await(request
+                .retrieve()
+                .bodyToMono(JsonNode.class));
+    }
+
+    private Set<String> resolveUserFields(List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return USER_FIELDS;
+        }
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add("id");
+        for (String field : fields) {
+            if (!USER_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unsupported field: " + field);
             }
+            selected.add(field);
+        }
+        return selected;
+    }
 
-            System.out.println("Calling Microsoft Graph API: /groups");
+    static String encodeCursor(String nextLink) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(nextLink.getBytes(StandardCharsets.UTF_8));
+    }
 
-            Mono<JsonNode> groupsMono = webClient.get()
-                    .uri("/groups?$select=id,displayName,description,groupTypes&$filter=securityEnabled eq true")
-                    .header("Authorization", "Bearer " + accessToken)
-                    .retrieve()
-                    .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(),
-                            clientResponse -> {
-                                System.out.println("Error response status: " + clientResponse.statusCode());
-                                return clientResponse.bodyToMono(String.class)
-                                        .map(body -> {
-                                            System.out.println("Error response body: " + body);
-                                            return new RuntimeException("Microsoft Graph API error: " + clientResponse.statusCode() + " - " + body);
-                                        });
-                            })
-                    .bodyToMono(JsonNode.class);
+    /**
+     * The nextLink inside a cursor; anything but a Graph users page link is rejected
+     */
+    static URI decodeCursor(String cursor) {
+        URI nextLink;
+        try {
+            nextLink = URI.create(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        // Never forward the caller's token anywhere but the Graph users collection
+        URI users = URI.create(GRAPH_BASE_URL + "/users");
+        if (!users.getScheme().equals(nextLink.getScheme()) || nextLink.getRawUserInfo() != null
+                || !users.getHost().equalsIgnoreCase(nextLink.getHost()) || nextLink.getPort() != -1
+                || !users.getRawPath().equals(nextLink.getRawPath()) || nextLink.getRawQuery() == null) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return nextLink;
+    }
 
-            JsonNode groupsJson = groupsMono.block();
-            List<GroupDTO> groups = new ArrayList<>();
-
-            if (groupsJson != null && groupsJson.has("value")) {
-                JsonNode groupsArray = groupsJson.get("value");
-                for (JsonNode groupNode : groupsArray) {
-                    GroupDTO groupDTO = new GroupDTO();
-                    groupDTO.setId(groupNode.get("id").asText());
-                    groupDTO.setDisplayName(groupNode.has("displayName") && !groupNode.get("displayName").isNull() ?
-                            groupNode.get("displayName").asText() : null);
-                    groupDTO.setDescription(groupNode.has("description") && !groupNode.get("description").isNull() ?
-                            groupNode.get("description").asText() : null);
-
-                    // Set group type based on groupTypes array
-                    if (groupNode.has("groupTypes") && !groupNode.get("groupTypes").isNull()) {
-                        JsonNode groupTypesArray = groupNode.get("groupTypes");
-                        if (groupTypesArray.isArray() && groupTypesArray.size() > 0) {
-                            // Microsoft 365 groups have "Unified" in groupTypes
-                            boolean isUnified = false;
-                            for (JsonNode typeNode : groupTypesArray) {
-                                if ("Unified".equals(typeNode.asText())) {
-                                    isUnified = true;
-                                    break;
-                                }
-                            }
-                            groupDTO.setGroupType(isUnified ? "Microsoft 365" : "Security");
-                        } else {
-                            groupDTO.setGroupType("Security");
-                        }
-                    } else {
-                        groupDTO.setGroupType("Security");
-                    }
+    /**
+     * Get all security groups in the organization
+     * The optional filter supports namePrefix and search; user-only criteria are rejected.
+     */
+    public List<GroupDTO> getAllSecurityGroups(Authentication authentication, HttpServletRequest request,
+                                               DirectoryFilter filter) {
+        if (filter != null && filter.hasUserOnlyCriteria()) {
+            throw new IllegalArgumentException("Groups can only be filtered by namePrefix and search");
+        }
+        if ((filter == null || filter.isEmpty()) && directoryCache.isGroupsLoaded() && canUseCache(authentication, request)) {
+            return directoryCache.getSecurityGroups();
+        }
+        String fallbackKey = fallbackKey(authentication, request, "groups:"
+                + (filter == null || filter.isEmpty() ? "" : filter.getNamePrefix() + ":" + filter.getSearch()));
+        return observe("groups", KeyValues.empty(), () -> {
+            String accessToken = resolveAccessToken(authentication, request);
+            return circuitBreakers.execute("groups", fallbackKey, request, () -> getSecurityGroups(accessToken, filter));
+        });
+    }
 
-                    groups.add(groupDTO);
-                }
+    /**
+     * Copies of the groups with member counts, for the groups page
+     */
+    public List<GroupDTO> withGroupCounts(Authentication authentication, HttpServletRequest request,
+                                          List<GroupDTO> groups) {
+        return observe("groups.counts", KeyValues.of("graph.groups", String.valueOf(groups.size())), () -> {
+            try {
+                String accessToken = resolveAccessToken(authentication, request);
+                return groupCounts.withCounts(accessToken, tenantRegistry.resolve(request).key(), groups);
+            } catch (RequestDeadline.DeadlineExceededException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to retrieve group counts: " + e.getMessage(), e);
             }
+        });
+    }
 
+    /**
+     * Key of a caller's last-known-good result: what Graph returns depends on the caller's token, so
+     * it is only served to the same caller. Null (no fallback) when the caller is unknown.
+     */
+    private String fallbackKey(Authentication authentication, HttpServletRequest request, String operation) {
+        String caller = Principals.idOf(authentication);
+        return caller != null ? tenantRegistry.resolve(request).key() + ":" + operation + ":" + caller : null;
+    }
+
+    /**
+     * Get all security groups with an explicit access token, following every page
+     */
+    public List<GroupDTO> getSecurityGroups(String accessToken, DirectoryFilter filter) {
+        try {
+            System.out.println("Calling Microsoft Graph API: /groups");
+            List<GroupDTO> groups = RequestDeadline.await(queries.all(accessToken,
+                    GraphQuery.of("/groups", GraphMappers.GROUP)
+                            .select(GraphMappers.GROUP_FIELDS)
+                            .filter("securityEnabled eq true")
+                            .where(filter, "displayName", "description")
+                            .top(MAX_PAGE_SIZE)
+                            .eventual()));
             System.out.println("Found " + groups.size() + " security groups");
             return groups;
-
         } catch (Exception e) {
             throw new RuntimeException("Failed to retrieve all security groups: " + e.getMessage(), e);
         }
@@ -371,51 +699,34 @@ public class GraphApiService {
      * Get all custom directory roles in the organization
      */
     public List<String> getAllCustomRoles(Authentication authentication, HttpServletRequest request) {
-        try {
-            String accessToken;
-            if (authentication != null && authentication instanceof OAuth2AuthenticationToken) {
-                accessToken = getAccessToken(authentication);
-                System.out.println("Using OAuth2 access token for all roles");
-            } else {
-                // Use session-based token
-                accessToken = getAccessTokenFromSession(request);
-                System.out.println("Using session-based access token for all roles");
-            }
-
-            System.out.println("Calling Microsoft Graph API: /directoryRoles");
-
-            Mono<JsonNode> rolesMono = webClient.get()
-                    .uri("/directoryRoles?$select=id,displayName,description")
-                    .header("Authorization", "Bearer " + accessToken)
-                    .retrieve()
-                    .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(),
-                            clientResponse -> {
-                                System.out.println("Error response status: " + clientResponse.statusCode());
-                                return clientResponse.bodyToMono(String.class)
-                                        .map(body -> {
-                                            System.out.println("Error response body: " + body);
-                                            return new RuntimeException("Microsoft Graph API error: " + clientResponse.statusCode() + " - " + body);
-                                        });
-                            })
-                    .bodyToMono(JsonNode.class);
-
-            JsonNode rolesJson = rolesMono.block();
-            List<String> roles = new ArrayList<>();
-
-            if (rolesJson != null && rolesJson.has("value")) {
-                JsonNode rolesArray = rolesJson.get("value");
-                for (JsonNode roleNode : rolesArray) {
-                    String roleName = roleNode.has("displayName") && !roleNode.get("displayName").isNull() ?
-                            roleNode.get("displayName").asText() : "Unknown Role";
-                    roles.add(roleName);
+        if (directoryCache.isRolesLoaded() && canUseCache(authentication, request)) {
+            return directoryCache.getRoleNames();
+        }
+        String fallbackKey = fallbackKey(authentication, request, "roles");
+        return observe("roles", KeyValues.empty(), () -> {
+            String accessToken = resolveAccessToken(authentication, request);
+            return circuitBreakers.execute("roles", fallbackKey, request, () -> {
+                List<String> roles = new ArrayList<>();
+                for (RoleDTO role : getDirectoryRoles(accessToken)) {
+                    roles.add(GraphMappers.roleName(role.getDisplayName()));
                 }
-            }
+                return roles;
+            });
+        });
+    }
 
+    /**
+     * Get all activated directory roles with an explicit access token
+     */
+    public List<RoleDTO> getDirectoryRoles(String accessToken) {
+        try {
+            System.out.println("Calling Microsoft Graph API: /directoryRoles");
+            List<RoleDTO> roles = RequestDeadline.await(queries.all(accessToken,
+                    GraphQuery.of("/directoryRoles", GraphMappers.ROLE).select(GraphMappers.ROLE_FIELDS)));
             System.out.println("Found " + roles.size() + " directory roles");
             return roles;
-
         } catch (Exception e) {
-            throw new RuntimeException("Failed to retrieve all directory roles: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to retrieve directory roles: " + e.getMessage(), e);
         }
     }
 
@@ -423,13 +734,26 @@ public class GraphApiService {
      * Authenticate with Azure AD using username and password (Resource Owner Password Credentials flow)
      */
     public Map<String, Object> authenticateWithCredentials(String username, String password) {
-        System.out.println("Attempting authentication for user: " + username);
+        return authenticateWithCredentials(username, password, tenantRegistry.getDefault());
+    }
+
+    /**
+     * Authenticate against the app registration of the given tenant
+     */
+    public Map<String, Object> authenticateWithCredentials(String username, String password,
+                                                           TenantRegistry.Registration tenant) {
+        return observe("login", KeyValues.of("graph.tenant", tenant.key()),
+                () -> requestUserToken(username, password, tenant));
+    }
+
+    private Map<String, Object> requestUserToken(String username, String password, TenantRegistry.Registration tenant) {
+        System.out.println("Attempting authentication for user: " + username + " in tenant " + tenant.key());
         try {
-            // Get configuration from application.yml
-            String tokenUrl = azureProperties.getProvider().getAzure().getTokenUri();
-            String clientId = azureProperties.getRegistration().getAzure().getClientId();
-            String clientSecret = azureProperties.getRegistration().getAzure().getClientSecret();
-            java.util.List<String> scopes = azureProperties.getRegistration().getAzure().getScope();
+            // Get configuration of the tenant's app registration
+            String tokenUrl = tenant.tokenUri();
+            String clientId = tenant.clientId();
+            String clientSecret = tenant.clientSecret();
+            java.util.List<String> scopes = tenant.scopes();
 
             System.out.println("Token URL: " + tokenUrl);
             System.out.println("Client ID: " + clientId);
@@ -447,7 +771,7 @@ public class GraphApiService {
                     "&password=" + java.net.URLEncoder.encode(password, "UTF-8");
 
             // Make token request
-            Mono<JsonNode> tokenMono = WebClient.create()
+            Mono<JsonNode> tokenMono = loginWebClient
                     .post()
                     .uri(tokenUrl)
                     .header("Content-Type", "application/x-www-form-urlencoded")
@@ -455,27 +779,48 @@ public class GraphApiService {
                     .retrieve()
                     .bodyToMono(JsonNode.class);
 
-            JsonNode tokenResponse = tokenMono.block();
+            JsonNode tokenResponse = RequestDeadline.await(tokenMono);
             System.out.println("Token response: " + (tokenResponse != null ? tokenResponse.toString() : "null"));
 
             if (tokenResponse != null && tokenResponse.has("access_token")) {
                 String accessToken = tokenResponse.get("access_token").asText();
+                // The object id identifies the user; the UPN can be renamed or reassigned and is only shown
+                String userId = null;
+                String userPrincipalName = null;
+                String displayName = null;
 
-                // Get user info using the access token
-                Mono<JsonNode> userMono = webClient.get()
-                        .uri("/me?$select=id,displayName,userPrincipalName,mail")
-                        .header("Authorization", "Bearer " + accessToken)
-                        .retrieve()
-                        .bodyToMono(JsonNode.class);
+                // The ID token (scope openid) already names the user; verify it locally instead of calling /me
+                if (idTokenVerifier.isEnabled() && tokenResponse.hasNonNull("id_token")) {
+                    try {
+                        Jwt idToken = idTokenVerifier.verify(tokenResponse.get("id_token").asText(), tenant);
+                        userId = idToken.getClaimAsString("oid");
+                        userPrincipalName = idToken.hasClaim("upn") ?
+                                idToken.getClaimAsString("upn") : idToken.getClaimAsString("preferred_username");
+                        displayName = idToken.getClaimAsString("name");
+                    } catch (Exception e) {
+                        System.out.println("Warning: Could not use the ID token, falling back to /me - " + e.getMessage());
+                    }
+                }
 
-                JsonNode userJson = userMono.block();
+                if (userId == null) {
+                    // Get user info using the access token
+                    UserDTO me = RequestDeadline.await(queries.get(accessToken, "/me", SIGN_IN_FIELDS,
+                            GraphMappers.USER, GraphBulkheadFilter.INTERACTIVE));
+                    if (me != null) {
+                        userId = me.getId();
+                        userPrincipalName = me.getUserPrincipalName();
+                        displayName = me.getDisplayName();
+                    }
+                }
 
-                if (userJson != null) {
+                if (userId != null) {
                     Map<String, Object> result = new HashMap<>();
                     result.put("authenticated", true);
+                    result.put("tenant", tenant.key());
                     result.put("access_token", accessToken);
-                    result.put("user_id", userJson.get("userPrincipalName").asText());
-                    result.put("display_name", userJson.get("displayName").asText());
+                    result.put("user_id", userId);
+                    result.put("user_principal_name", userPrincipalName);
+                    result.put("display_name", displayName);
 
                     // Calculate expiry time (default 1 hour)
                     long expiresIn = tokenResponse.has("expires_in") ?
@@ -497,6 +842,9 @@ public class GraphApiService {
                 return result;
             }
 
+        } catch (RequestDeadline.DeadlineExceededException e) {
+            // Not a failed login, the caller gave up
+            throw e;
         } catch (Exception e) {
             Map<String, Object> result = new HashMap<>();
             result.put("authenticated", false);
@@ -505,67 +853,16 @@ public class GraphApiService {
         }
     }
 
-
-
-    public List<RoleDTO> getDirectoryRoles(Authentication authentication) {
-        try {
-            String accessToken = getAccessToken(authentication);
-
-            Mono<JsonNode> rolesMono = webClient.get()
-                    .uri("/directoryRoles")
-                    .header("Authorization", "Bearer " + accessToken)
-                    .retrieve()
-                    .bodyToMono(JsonNode.class);
-
-            JsonNode rolesJson = rolesMono.block();
-            List<RoleDTO> roles = new ArrayList<>();
-
-            if (rolesJson != null && rolesJson.has("value")) {
-                JsonNode rolesArray = rolesJson.get("value");
-                for (JsonNode roleNode : rolesArray) {
-                    RoleDTO roleDTO = new RoleDTO();
-                    roleDTO.setId(roleNode.has("id") ? roleNode.get("id").asText() : null);
-                    roleDTO.setDisplayName(roleNode.has("displayName") ? roleNode.get("displayName").asText() : null);
-                    roleDTO.setDescription(roleNode.has("description") ? roleNode.get("description").asText() : null);
-                    roles.add(roleDTO);
-                }
-            }
-
-            return roles;
-
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to retrieve directory roles: " + e.getMessage(), e);
-        }
-    }
-
-    public List<GroupDTO> getSecurityGroups(Authentication authentication) {
-        try {
-            String accessToken = getAccessToken(authentication);
-
-            Mono<JsonNode> groupsMono = webClient.get()
-                    .uri("/groups?$filter=securityEnabled eq true&$select=id,displayName,description")
-                    .header("Authorization", "Bearer " + accessToken)
-                    .retrieve()
-                    .bodyToMono(JsonNode.class);
-
-            JsonNode groupsJson = groupsMono.block();
-            List<GroupDTO> groups = new ArrayList<>();
-
-            if (groupsJson != null && groupsJson.has("value")) {
-                JsonNode groupsArray = groupsJson.get("value");
-                for (JsonNode groupNode : groupsArray) {
-                    GroupDTO groupDTO = new GroupDTO();
-                    groupDTO.setId(groupNode.has("id") ? groupNode.get("id").asText() : null);
-                    groupDTO.setDisplayName(groupNode.has("displayName") ? groupNode.get("displayName").asText() : null);
-                    groupDTO.setDescription(groupNode.has("description") ? groupNode.get("description").asText() : null);
-                    groups.add(groupDTO);
-                }
-            }
-
-            return groups;
-
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to retrieve security groups: " + e.getMessage(), e);
+    /**
+     * Run the Graph JSON to DTO mapping on sample payloads so the JIT compiles it before real traffic
+     */
+    public List<UserDTO> exerciseMapping(JsonNode usersPage, JsonNode memberOf) {
+        List<UserDTO> users = new ArrayList<>();
+        for (JsonNode userNode : usersPage.get("value")) {
+            UserDTO userDTO = GraphMappers.USER.map(userNode);
+            applyMemberships(userDTO, memberOf, true, true);
+            users.add(userDTO);
         }
+        return users;
     }
 }
@@ -0,0 +1,252 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.AdaptiveLimiter;
+import com.example.azuregraphapi.config.RequestDeadline;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * One circuit breaker per Graph operation, plus the last successful result of each call as fallback.
+ *
+ * A breaker opens when the failure rate over the last windowSize calls reaches the threshold. While
+ * open, calls fail fast without touching Graph; after openDuration a few probe calls are let through
+ * (half-open) and their outcome closes or re-opens it. Only outages count as failures: 5xx, 429,
+ * timeouts and connection errors. A full outbound queue or an exceeded request deadline are our own
+ * limits, not Graph failing, and are rethrown as they are. Whenever a call cannot be made or fails as
+ * an outage and an earlier result exists, that result is returned and the request is marked with
+ * {@link #STALE_SINCE_ATTRIBUTE}. Otherwise a {@link GraphUnavailableException} says when to try again: when the circuit lets calls
+ * through, or Graph's own Retry-After.
+ */
+@Component
+public class GraphCircuitBreakers {
+
+    /** Request attribute holding the time (epoch millis) a fallback result was fetched */
+    public static final String STALE_SINCE_ATTRIBUTE = "graph.stale.since";
+
+    private final CircuitBreakerProperties settings;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, Fallback> fallbacks;
+
+    public GraphCircuitBreakers(CircuitBreakerProperties circuitBreakerProperties) {
+        this.settings = circuitBreakerProperties;
+        int maxEntries = settings.getFallbackMaxEntries();
+        this.fallbacks = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Fallback> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Run a Graph operation through its breaker
+     *
+     * @param operation   breaker name, e.g. "groups"
+     * @param fallbackKey key of the remembered result, null if the result must not be served stale
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, String fallbackKey, HttpServletRequest request, Supplier<T> call) {
+        Breaker breaker = breakers.computeIfAbsent(operation, Breaker::new);
+        if (!breaker.tryAcquire()) {
+            return (T) fallbackOrThrow(fallbackKey, request,
+                    new GraphUnavailableException("Microsoft Graph " + operation + " circuit is open", null,
+                            breaker.retryAfterMillis()));
+        }
+
+        try {
+            T result = call.get();
+            breaker.onSuccess();
+            if (fallbackKey != null && result != null) {
+                fallbacks.put(fallbackKey, new Fallback(result, System.currentTimeMillis()));
+            }
+            return result;
+        } catch (RuntimeException e) {
+            if (!isOutage(e)) {
+                breaker.onIgnored();
+                throw e;
+            }
+            breaker.onFailure();
+            long retryAfter = Math.max(upstreamRetryAfterMillis(e), breaker.retryAfterMillis());
+            return (T) fallbackOrThrow(fallbackKey, request,
+                    new GraphUnavailableException("Microsoft Graph " + operation + " is unavailable: " + e.getMessage(), e,
+                            retryAfter));
+        }
+    }
+
+    private Object fallbackOrThrow(String fallbackKey, HttpServletRequest request, GraphUnavailableException error) {
+        Fallback fallback = fallbackKey != null ? fallbacks.get(fallbackKey) : null;
+        if (fallback == null) {
+            throw error;
+        }
+        if (request != null) {
+            request.setAttribute(STALE_SINCE_ATTRIBUTE, fallback.storedAt);
+        }
+        return fallback.value;
+    }
+
+    private static boolean isOutage(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AdaptiveLimiter.LimitExceededException
+                    || cause instanceof RequestDeadline.DeadlineExceededException) {
+                return false;
+            }
+            if (cause instanceof WebClientResponseException responseException) {
+                int status = responseException.getStatusCode().value();
+                return status == 429 || status >= 500;
+            }
+            if (cause instanceof WebClientRequestException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retry-After (seconds) of the Graph response behind an outage, 0 when there is none
+     */
+    private static long upstreamRetryAfterMillis(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientResponseException responseException) {
+                String retryAfter = responseException.getHeaders().getFirst("Retry-After");
+                try {
+                    return retryAfter != null ? Math.max(0, Long.parseLong(retryAfter.trim())) * 1000 : 0;
+                } catch (NumberFormatException ignored) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private record Fallback(Object value, long storedAt) {}
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private class Breaker {
+        private final String name;
+        private final boolean[] window = new boolean[settings.getWindowSize()];
+        private State state = State.CLOSED;
+        private int index;
+        private int calls;
+        private int failures;
+        private long openedAt;
+        private int probesInFlight;
+        private int probeSuccesses;
+
+        Breaker(String name) {
+            this.name = name;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < settings.getOpenDuration()) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+                probeSuccesses = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight >= settings.getHalfOpenProbes()) {
+                    return false;
+                }
+                probesInFlight++;
+            }
+            return true;
+        }
+
+        /**
+         * Time until calls get through again, 0 while the circuit is closed
+         */
+        synchronized long retryAfterMillis() {
+            if (state == State.OPEN) {
+                return Math.max(0, settings.getOpenDuration() - (System.currentTimeMillis() - openedAt));
+            }
+            return 0;
+        }
+
+        synchronized void onSuccess() {
+            if (state == State.HALF_OPEN) {
+                probesInFlight--;
+                if (++probeSuccesses >= settings.getHalfOpenProbes()) {
+                    System.out.println("Circuit " + name + " closed");
+                    state = State.CLOSED;
+                    calls = 0;
+                    failures = 0;
+                    index = 0;
+                }
+                return;
+            }
+            record(false);
+        }
+
+        synchronized void onFailure() {
+            if (state == State.HALF_OPEN) {
+                open();
+                return;
+            }
+            record(true);
+            if (state == State.CLOSED && calls >= settings.getMinimumCalls()
+                    && failures * 100 >= settings.getFailureRateThreshold() * calls) {
+                open();
+            }
+        }
+
+        synchronized void onIgnored() {
+            if (state == State.HALF_OPEN) {
+                probesInFlight--;
+            }
+        }
+
+        private void record(boolean failure) {
+            if (calls == window.length) {
+                if (window[index]) {
+                    failures--;
+                }
+            } else {
+                calls++;
+            }
+            window[index] = failure;
+            if (failure) {
+                failures++;
+            }
+            index = (index + 1) % window.length;
+        }
+
+        private void open() {
+            System.out.println("Circuit " + name + " opened");
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Graph could not be reached and no earlier result was available
+     */
+    public static class GraphUnavailableException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterMillis;
+
+        public GraphUnavailableException(String message, Throwable cause, long retryAfterMillis) {
+            super(message, cause);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        /**
+         * When the call may succeed again, 0 if unknown
+         */
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.azuregraphapi.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests for idempotent Graph reads.
+ *
+ * When the first attempt has not answered within the operation's observed p95 latency, a second
+ * attempt is sent; whichever answers first wins and the other is cancelled. Hedges are paid from a
+ * global budget that every call tops up by budget-percent of a hedge, so they add at most that share
+ * of extra load. Until min-samples latencies are known, nothing is hedged. Disabled unless
+ * graph.hedging.enabled is set; counters are published as graph.hedge.*, and a sent hedge is noted as
+ * graph.hedges on the span current when the call started.
+ */
+@Component
+public class GraphHedger {
+
+    private static final long HEDGE_COST = 100;
+
+    private final HedgingProperties settings;
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final AtomicLong budget = new AtomicLong();
+
+    public GraphHedger(HedgingProperties hedgingProperties, MeterRegistry meterRegistry,
+                       ObservationRegistry observationRegistry) {
+        this.settings = hedgingProperties;
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+    }
+
+    /**
+     * Run an idempotent request, hedging it when it is slow
+     *
+     * @param operation name used for latency tracking and metrics, e.g. "me"
+     * @param attempt   creates a new request each time it is called
+     */
+    public <T> Mono<T> hedge(String operation, Supplier<Mono<T>> attempt) {
+        if (!settings.isEnabled()) {
+            return attempt.get();
+        }
+        Operation stats = operations.computeIfAbsent(operation, Operation::new);
+        return Mono.defer(() -> {
+            Observation observation = observationRegistry.getCurrentObservation();
+            stats.calls.increment();
+            addBudget();
+            long delay = stats.hedgeDelay();
+            if (delay < 0) {
+                return stats.timed(attempt.get());
+            }
+
+            Mono<Result<T>> primary = stats.timed(attempt.get()).map(value -> new Result<>(value, false));
+            Mono<Result<T>> hedged = Mono.delay(Duration.ofMillis(delay))
+                    .flatMap(tick -> {
+                        if (!tryTakeBudget()) {
+                            stats.denied.increment();
+                            return Mono.<Result<T>>empty();
+                        }
+                        stats.sent.increment();
+                        if (observation != null) {
+                            observation.highCardinalityKeyValue("graph.hedges", "1");
+                        }
+                        return stats.timed(attempt.get()).map(value -> new Result<>(value, true));
+                    })
+                    // A failing hedge must not fail the call while the first attempt may still answer
+                    .onErrorResume(e -> Mono.empty());
+
+            return primary.mergeWith(hedged)
+                    .next()
+                    .map(result -> {
+                        if (result.hedge()) {
+                            stats.wins.increment();
+                        }
+                        return result.value();
+                    });
+        });
+    }
+
+    private void addBudget() {
+        long cap = HEDGE_COST * settings.getMaxBurst();
+        budget.getAndUpdate(current -> Math.min(cap, current + settings.getBudgetPercent()));
+    }
+
+    private boolean tryTakeBudget() {
+        while (true) {
+            long current = budget.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+
+    private record Result<T>(T value, boolean hedge) {}
+
+    /**
+     * Latency window and counters of one operation
+     */
+    private class Operation {
+
+        private final long[] latencies = new long[settings.getWindow()];
+        private int next;
+        private long recorded;
+        private volatile long p95 = -1;
+
+        private final Counter calls;
+        private final Counter sent;
+        private final Counter wins;
+        private final Counter denied;
+
+        Operation(String name) {
+            calls = Counter.builder("graph.hedge.calls").tag("operation", name)
+                    .description("Hedgeable Graph calls").register(meterRegistry);
+            sent = Counter.builder("graph.hedge.sent").tag("operation", name)
+                    .description("Second attempts sent").register(meterRegistry);
+            wins = Counter.builder("graph.hedge.wins").tag("operation", name)
+                    .description("Second attempts that answered first").register(meterRegistry);
+            denied = Counter.builder("graph.hedge.denied").tag("operation", name)
+                    .description("Second attempts skipped for lack of budget").register(meterRegistry);
+            Gauge.builder("graph.hedge.delay", this, op -> op.p95).tag("operation", name)
+                    .baseUnit("milliseconds").register(meterRegistry);
+        }
+
+        /**
+         * Time after which to hedge, -1 while too few latencies are known
+         */
+        long hedgeDelay() {
+            long current = p95;
+            return current < 0 ? -1 : Math.max(settings.getMinDelay(), current);
+        }
+
+        /**
+         * Record the latency of an attempt when it answers, or when it is cancelled because the
+         * other attempt won, so the slow tail stays visible in the window
+         */
+        <T> Mono<T> timed(Mono<T> attempt) {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return attempt
+                        .doOnSuccess(value -> record(start))
+                        .doOnCancel(() -> record(start));
+            });
+        }
+
+        private synchronized void record(long startNanos) {
+            latencies[next] = (System.nanoTime() - startNanos) / 1_000_000;
+            next = (next + 1) % latencies.length;
+            recorded++;
+            // Re-sort only every 1/16th of the window
+            if (recorded >= settings.getMinSamples() && recorded % Math.max(1, latencies.length / 16) == 0) {
+                int size = (int) Math.min(recorded, latencies.length);
+                long[] sorted = Arrays.copyOf(latencies, size);
+                Arrays.sort(sorted);
+                p95 = sorted[(int) Math.ceil(size * 0.95) - 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.azuregraphapi.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Maps one Graph JSON object to a DTO. Implementations are plain code in {@link GraphMappers}, so
+ * mapping needs no reflection.
+ */
+@FunctionalInterface
+public interface GraphMapper<T> {
+
+    T map(JsonNode node);
+}
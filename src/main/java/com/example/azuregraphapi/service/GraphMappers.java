@@ -0,0 +1,126 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Graph JSON to DTO mappers and the $select lists that go with them.
+ *
+ * All mappers treat a missing property and an explicit null the same way: the DTO field is null,
+ * except accountEnabled and userType, which default to true and "Member" when selected.
+ */
+public final class GraphMappers {
+
+    /** UserDTO fields that can be requested through the fields= projection, in Graph $select naming. */
+    public static final Set<String> USER_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "id", "displayName", "userPrincipalName", "mail", "jobTitle", "department",
+            "accountEnabled", "createdDateTime", "lastSignInDateTime", "userType")));
+
+    public static final List<String> GROUP_FIELDS = List.of("id", "displayName", "description", "groupTypes");
+
+    public static final List<String> ROLE_FIELDS = List.of("id", "displayName", "description");
+
+    /** Properties read from memberOf, which returns groups and directory roles alike */
+    public static final List<String> MEMBER_OF_FIELDS = GROUP_FIELDS;
+
+    public static final GraphMapper<UserDTO> USER = user(USER_FIELDS);
+
+    public static final GraphMapper<GroupDTO> GROUP = node -> {
+        GroupDTO group = new GroupDTO(node.get("id").asText(), textOrNull(node, "displayName"), textOrNull(node, "description"));
+        group.setGroupType(groupType(node));
+        return group;
+    };
+
+    public static final GraphMapper<RoleDTO> ROLE = node ->
+            new RoleDTO(node.get("id").asText(), textOrNull(node, "displayName"), textOrNull(node, "description"));
+
+    private GraphMappers() {
+    }
+
+    /**
+     * User mapper for a projection; defaults are only applied to selected fields
+     */
+    public static GraphMapper<UserDTO> user(Set<String> selected) {
+        boolean accountEnabled = selected.contains("accountEnabled");
+        boolean userType = selected.contains("userType");
+        return node -> {
+            UserDTO user = new UserDTO(node.get("id").asText(), textOrNull(node, "displayName"),
+                    textOrNull(node, "userPrincipalName"), textOrNull(node, "mail"));
+            user.setJobTitle(textOrNull(node, "jobTitle"));
+            user.setDepartment(textOrNull(node, "department"));
+            if (accountEnabled) {
+                user.setAccountEnabled(node.hasNonNull("accountEnabled") ? node.get("accountEnabled").asBoolean() : true);
+            }
+            user.setCreatedDateTime(textOrNull(node, "createdDateTime"));
+            user.setLastSignInDateTime(textOrNull(node, "lastSignInDateTime"));
+            if (userType) {
+                user.setUserType(node.hasNonNull("userType") ? node.get("userType").asText() : "Member");
+            }
+            return user;
+        };
+    }
+
+    /**
+     * Groups in a memberOf response
+     */
+    public static List<GroupDTO> memberGroups(JsonNode memberOf) {
+        List<GroupDTO> groups = new ArrayList<>();
+        if (memberOf != null && memberOf.has("value")) {
+            for (JsonNode node : memberOf.get("value")) {
+                if (isOfType(node, "group")) {
+                    groups.add(GROUP.map(node));
+                }
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Names of the directory roles in a memberOf response
+     */
+    public static List<String> memberRoles(JsonNode memberOf) {
+        List<String> roles = new ArrayList<>();
+        if (memberOf != null && memberOf.has("value")) {
+            for (JsonNode node : memberOf.get("value")) {
+                if (isOfType(node, "directoryRole")) {
+                    roles.add(roleName(textOrNull(node, "displayName")));
+                }
+            }
+        }
+        return roles;
+    }
+
+    public static String roleName(String displayName) {
+        return displayName != null ? displayName : "Unknown Role";
+    }
+
+    public static String groupType(JsonNode groupNode) {
+        // Microsoft 365 groups have "Unified" in groupTypes
+        JsonNode groupTypes = groupNode.get("groupTypes");
+        if (groupTypes != null && groupTypes.isArray()) {
+            for (JsonNode typeNode : groupTypes) {
+                if ("Unified".equals(typeNode.asText())) {
+                    return "Microsoft 365";
+                }
+            }
+        }
+        return "Security";
+    }
+
+    public static String textOrNull(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
+
+    private static boolean isOfType(JsonNode node, String type) {
+        return node.hasNonNull("@odata.type") && node.get("@odata.type").asText().contains(type);
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.GraphClientConfig;
+import com.example.azuregraphapi.dto.DirectoryFilter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A typed read of a Graph collection: resource, $select, $filter clauses, $search, page size and
+ * the mapper for its items. Built fluently and run by {@link GraphQueryEngine}, e.g.
+ *
+ *     GraphQuery.of("/groups", GraphMappers.GROUP).select(GraphMappers.GROUP_FIELDS).filter("securityEnabled eq true")
+ */
+public final class GraphQuery<T> {
+
+    private final String resource;
+    private final GraphMapper<T> mapper;
+    private Collection<String> select;
+    private final List<String> filters = new ArrayList<>();
+    private String search;
+    private Integer top;
+    private boolean count;
+    private boolean eventual;
+    private String bulkhead;
+
+    private GraphQuery(String resource, GraphMapper<T> mapper) {
+        this.resource = resource;
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param resource collection path relative to the v1.0 endpoint, e.g. "/users"
+     */
+    public static <T> GraphQuery<T> of(String resource, GraphMapper<T> mapper) {
+        return new GraphQuery<>(resource, mapper);
+    }
+
+    public GraphQuery<T> select(Collection<String> properties) {
+        this.select = properties;
+        return this;
+    }
+
+    /**
+     * Add a $filter clause; clauses are combined with "and"
+     */
+    public GraphQuery<T> filter(String clause) {
+        filters.add(clause);
+        return this;
+    }
+
+    public GraphQuery<T> top(int top) {
+        this.top = top;
+        return this;
+    }
+
+    /**
+     * Send ConsistencyLevel: eventual, needed for advanced queries ($search, $count, some filters)
+     */
+    public GraphQuery<T> eventual() {
+        this.eventual = true;
+        return this;
+    }
+
+    /**
+     * Bulkhead class of the requests, see GraphBulkheadFilter; bulk when not set
+     */
+    public GraphQuery<T> bulkhead(String bulkhead) {
+        this.bulkhead = bulkhead;
+        return this;
+    }
+
+    /**
+     * Translate the filter into $filter / $search query parameters.
+     * Any criteria switches the query to Graph's advanced query mode, which needs $count=true
+     * together with the ConsistencyLevel: eventual header.
+     *
+     * @param searchProperties properties matched by free-text search
+     */
+    public GraphQuery<T> where(DirectoryFilter filter, String... searchProperties) {
+        if (filter == null || filter.isEmpty()) {
+            return this;
+        }
+        if (filter.getDepartment() != null) {
+            filter("department eq " + odataString(filter.getDepartment()));
+        }
+        if (filter.getAccountEnabled() != null) {
+            filter("accountEnabled eq " + filter.getAccountEnabled());
+        }
+        if (filter.getUserType() != null) {
+            filter("userType eq " + odataString(filter.getUserType()));
+        }
+        if (filter.getNamePrefix() != null) {
+            filter("startswith(displayName," + odataString(filter.getNamePrefix()) + ")");
+        }
+        if (filter.getSearch() != null && !filter.getSearch().isBlank()) {
+            // Quotes delimit search clauses, so they cannot be part of the term
+            String term = filter.getSearch().replace("\"", "").trim();
+            List<String> terms = new ArrayList<>();
+            for (String property : searchProperties) {
+                terms.add("\"" + property + ":" + term + "\"");
+            }
+            search = String.join(" OR ", terms);
+        }
+        count = true;
+        eventual = true;
+        return this;
+    }
+
+    public GraphMapper<T> getMapper() {
+        return mapper;
+    }
+
+    public boolean isEventual() {
+        return eventual;
+    }
+
+    public String getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Query values are passed as URI variables, which are encoded strictly: '+', '&' and '=' in a
+     * filter or search term reach Graph as typed instead of being read as a space or a separator
+     */
+    public URI toUri() {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(GraphClientConfig.GRAPH_BASE_URL + resource);
+        Map<String, Object> values = new HashMap<>();
+        if (top != null) {
+            builder.queryParam("$top", top);
+        }
+        if (select != null) {
+            builder.queryParam("$select", "{select}");
+            values.put("select", String.join(",", select));
+        }
+        if (!filters.isEmpty()) {
+            builder.queryParam("$filter", "{filter}");
+            values.put("filter", String.join(" and ", filters));
+        }
+        if (search != null) {
+            builder.queryParam("$search", "{search}");
+            values.put("search", search);
+        }
+        if (count) {
+            builder.queryParam("$count", "true");
+        }
+        return builder.encode().buildAndExpand(values).toUri();
+    }
+
+    public static String odataString(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    /**
+     * Comma-separated OData string literals, for "in (...)" filters
+     */
+    public static String odataList(Collection<String> values) {
+        List<String> quoted = new ArrayList<>();
+        for (String value : values) {
+            quoted.add(odataString(value));
+        }
+        return String.join(",", quoted);
+    }
+}
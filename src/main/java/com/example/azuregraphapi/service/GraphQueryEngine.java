@@ -0,0 +1,285 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.GraphBulkheadFilter;
+import com.example.azuregraphapi.config.GraphProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs {@link GraphQuery} reads against Microsoft Graph: one page, all pages following
+ * @odata.nextLink, single objects, and $batch requests of up to 20 reads.
+ *
+ * Every request goes through the same pipeline: bearer token, bulkhead class, ConsistencyLevel
+ * header when needed, error responses logged with their body and raised as
+ * WebClientResponseException (so circuit breakers can tell throttling from client errors), and
+ * items mapped straight from the JSON tree by the query's mapper. Results are returned as Monos;
+ * blocking callers wrap them in RequestDeadline.await.
+ */
+@Component
+public class GraphQueryEngine {
+
+    /** Graph allows at most 20 requests in one $batch */
+    public static final int BATCH_SIZE = 20;
+
+    /**
+     * One page of a collection
+     *
+     * @param nextLink absolute URL of the next page, null on the last page
+     * @param count    total number of matches when $count was requested, else null
+     */
+    public record Page<T>(List<T> items, String nextLink, Long count) {}
+
+    private final WebClient webClient;
+    private final GraphProperties graphProperties;
+    private final ObservationRegistry observationRegistry;
+
+    public GraphQueryEngine(WebClient graphWebClient, GraphProperties graphProperties,
+                            ObservationRegistry observationRegistry) {
+        this.webClient = graphWebClient;
+        this.graphProperties = graphProperties;
+        this.observationRegistry = observationRegistry;
+    }
+
+    /**
+     * First page of a query
+     */
+    public <T> Mono<Page<T>> page(String accessToken, GraphQuery<T> query) {
+        return next(accessToken, query.toUri(), query);
+    }
+
+    /**
+     * A later page of a query, from the nextLink of the previous one
+     */
+    public <T> Mono<Page<T>> next(String accessToken, URI nextLink, GraphQuery<T> query) {
+        return fetch(accessToken, nextLink, query.getBulkhead(), query.isEventual())
+                .map(json -> toPage(json, query.getMapper()));
+    }
+
+    /**
+     * All items of a query, reading the pages one after the other
+     */
+    public <T> Mono<List<T>> all(String accessToken, GraphQuery<T> query) {
+        return page(accessToken, query)
+                .expand(page -> page.nextLink() != null ?
+                        next(accessToken, URI.create(page.nextLink()), query) : Mono.empty())
+                .flatMapIterable(Page::items)
+                .collectList();
+    }
+
+    /**
+     * A single object, e.g. "/me"
+     */
+    public <T> Mono<T> get(String accessToken, String path, Collection<String> select, GraphMapper<T> mapper,
+                           String bulkhead) {
+        return fetch(accessToken, path + "?$select=" + String.join(",", select), bulkhead)
+                .map(mapper::map);
+    }
+
+    /**
+     * Raw JSON of a resource
+     *
+     * @param uri path and query relative to the v1.0 endpoint
+     */
+    public Mono<JsonNode> fetch(String accessToken, String uri, String bulkhead) {
+        return handle(request(webClient.get().uri(uri), accessToken, bulkhead, false));
+    }
+
+    /**
+     * Run GET requests in $batch requests of 20, up to graph.membership-concurrency at a time
+     *
+     * @param urls request paths relative to the v1.0 endpoint, e.g. "/users/{id}/memberOf"
+     * Each part is observed as a "graph.batch.request" span with its path and status, a child of
+     * the observation current when the batch is built. Parts throttled with 429 or 503, alone or
+     * with their whole batch, are sent again in a smaller $batch once the longest Retry-After has
+     * passed, up to graph.batch-retries times.
+     *
+     * @return the response body of each url in order, null where that part failed (e.g. 404, or
+     *         still throttled after the retries) or its whole batch failed
+     */
+    public Mono<List<JsonNode>> batch(String accessToken, List<String> urls) {
+        return batch(accessToken, urls, Map.of());
+    }
+
+    /**
+     * Batched GET requests that all carry the given headers, e.g. ConsistencyLevel for $count
+     */
+    public Mono<List<JsonNode>> batch(String accessToken, List<String> urls, Map<String, String> headers) {
+        return batch(accessToken, urls, headers, observationRegistry.getCurrentObservation(), 0);
+    }
+
+    private Mono<List<JsonNode>> batch(String accessToken, List<String> urls, Map<String, String> headers,
+                                       Observation parent, int attempt) {
+        JsonNode[] results = new JsonNode[urls.size()];
+        Queue<Integer> throttled = new ConcurrentLinkedQueue<>();
+        AtomicLong retryAfter = new AtomicLong(-1);
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i += BATCH_SIZE) {
+            offsets.add(i);
+        }
+        return Flux.fromIterable(offsets)
+                .flatMap(offset -> {
+                    List<String> part = urls.subList(offset, Math.min(urls.size(), offset + BATCH_SIZE));
+                    List<Map<String, Object>> requests = new ArrayList<>();
+                    List<Observation> spans = new ArrayList<>();
+                    for (int i = 0; i < part.size(); i++) {
+                        requests.add(headers.isEmpty() ?
+                                Map.of("id", String.valueOf(i), "method", "GET", "url", part.get(i)) :
+                                Map.of("id", String.valueOf(i), "method", "GET", "url", part.get(i), "headers", headers));
+                        spans.add(batchObservation(part.get(i), parent).start());
+                    }
+                    return handle(request(webClient.post().uri("/$batch")
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .bodyValue(Map.of("requests", requests)), accessToken, null, false))
+                            .doOnNext(batchJson -> {
+                                for (JsonNode response : batchJson.path("responses")) {
+                                    int index = response.path("id").asInt(-1);
+                                    if (index < 0 || index >= part.size()) {
+                                        continue;
+                                    }
+                                    int status = response.path("status").asInt();
+                                    spans.get(index).lowCardinalityKeyValue("status", String.valueOf(status));
+                                    if (status == 200) {
+                                        results[offset + index] = response.get("body");
+                                    } else if (isThrottled(status)) {
+                                        throttled.add(offset + index);
+                                        retryAfter.accumulateAndGet(retryAfterMillis(response.path("headers")), Math::max);
+                                    }
+                                }
+                            })
+                            .doOnError(e -> spans.forEach(span -> span.error(e)))
+                            .doFinally(signal -> spans.forEach(Observation::stop))
+                            .onErrorResume(e -> {
+                                System.out.println("Warning: Graph $batch request failed - " + e.getMessage());
+                                if (e instanceof WebClientResponseException response
+                                        && isThrottled(response.getStatusCode().value())) {
+                                    for (int i = 0; i < part.size(); i++) {
+                                        throttled.add(offset + i);
+                                    }
+                                    retryAfter.accumulateAndGet(
+                                            retryAfterMillis(response.getHeaders().getFirst("Retry-After")), Math::max);
+                                }
+                                return Mono.empty();
+                            });
+                }, graphProperties.getMembershipConcurrency())
+                .then(Mono.defer(() -> {
+                    if (throttled.isEmpty() || attempt >= graphProperties.getBatchRetries()) {
+                        return Mono.just(Arrays.asList(results));
+                    }
+                    List<Integer> retried = new ArrayList<>(throttled);
+                    Collections.sort(retried);
+                    List<String> retryUrls = new ArrayList<>();
+                    for (int index : retried) {
+                        retryUrls.add(urls.get(index));
+                    }
+                    long delay = retryAfter.get() >= 0 ? retryAfter.get() : graphProperties.getBatchRetryDelay() << attempt;
+                    if (parent != null) {
+                        parent.highCardinalityKeyValue("graph.retries", String.valueOf(retried.size()));
+                    }
+                    return Mono.delay(Duration.ofMillis(delay))
+                            .then(batch(accessToken, retryUrls, headers, parent, attempt + 1))
+                            .map(again -> {
+                                for (int i = 0; i < retried.size(); i++) {
+                                    results[retried.get(i)] = again.get(i);
+                                }
+                                return Arrays.asList(results);
+                            });
+                }));
+    }
+
+    private static boolean isThrottled(int status) {
+        return status == 429 || status == 503;
+    }
+
+    /**
+     * Retry-After of a batch part, whose header names Graph does not normalize
+     */
+    private static long retryAfterMillis(JsonNode headers) {
+        for (Iterator<Map.Entry<String, JsonNode>> fields = headers.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if ("Retry-After".equalsIgnoreCase(field.getKey())) {
+                return retryAfterMillis(field.getValue().asText());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retry-After in seconds as milliseconds, -1 when missing or an HTTP date
+     */
+    private static long retryAfterMillis(String seconds) {
+        if (seconds == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(seconds.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Observation batchObservation(String url, Observation parent) {
+        int query = url.indexOf('?');
+        return Observation.createNotStarted("graph.batch.request", observationRegistry)
+                .contextualName("graph batch GET")
+                .parentObservation(parent)
+                .lowCardinalityKeyValue("status", "none")
+                .highCardinalityKeyValue("graph.path", query >= 0 ? url.substring(0, query) : url);
+    }
+
+    private Mono<JsonNode> fetch(String accessToken, URI uri, String bulkhead, boolean eventual) {
+        return handle(request(webClient.get().uri(uri), accessToken, bulkhead, eventual));
+    }
+
+    private static WebClient.RequestHeadersSpec<?> request(WebClient.RequestHeadersSpec<?> spec, String accessToken,
+                                                           String bulkhead, boolean eventual) {
+        spec.header("Authorization", "Bearer " + accessToken);
+        if (bulkhead != null) {
+            spec.attribute(GraphBulkheadFilter.ATTRIBUTE, bulkhead);
+        }
+        if (eventual) {
+            spec.header("ConsistencyLevel", "eventual");
+        }
+        return spec;
+    }
+
+    private static Mono<JsonNode> handle(WebClient.RequestHeadersSpec<?> spec) {
+        return spec.retrieve()
+                .onStatus(HttpStatusCode::isError, response -> response.createException()
+                        .doOnNext(e -> System.out.println("Microsoft Graph API error: " + e.getStatusCode()
+                                + " - " + e.getResponseBodyAsString())))
+                .bodyToMono(JsonNode.class);
+    }
+
+    private static <T> Page<T> toPage(JsonNode json, GraphMapper<T> mapper) {
+        List<T> items = new ArrayList<>();
+        if (json.has("value")) {
+            for (JsonNode node : json.get("value")) {
+                items.add(mapper.map(node));
+            }
+        }
+        String nextLink = json.hasNonNull("@odata.nextLink") ? json.get("@odata.nextLink").asText() : null;
+        Long count = json.hasNonNull("@odata.count") ? json.get("@odata.count").asLong() : null;
+        return new Page<>(items, nextLink, count);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Group member counts for /api/groups?withCounts=true (prefix "graph.group-counts"),
+ * see {@link GroupCountService}
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.group-counts")
+public class GroupCountProperties {
+    
+    private long ttl = 300000;
+    private int maxEntries = 20000;
+    
+    public long getTtl() {
+        return ttl;
+    }
+    
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+    
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.RequestDeadline;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Member counts of groups for /api/groups?withCounts=true.
+ *
+ * Groups not in the cache are read with one members/$count sub-request each, packed into $batch
+ * requests of 20 that run concurrently (see {@link GraphQueryEngine#batch}). Results are kept per
+ * tenant and group for graph.group-counts.ttl ms; a group whose sub-request failed is returned without
+ * a count and retried on the next call.
+ */
+@Service
+public class GroupCountService {
+
+    private static final Map<String, String> COUNT_HEADERS = Map.of("ConsistencyLevel", "eventual");
+
+    private record Counts(Long memberCount, long fetchedAt) {}
+
+    private final GraphQueryEngine queries;
+    private final GroupCountProperties settings;
+    private final Map<String, Counts> cache;
+
+    public GroupCountService(GraphQueryEngine queries, GroupCountProperties groupCountProperties) {
+        this.queries = queries;
+        this.settings = groupCountProperties;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Counts> eldest) {
+                return size() > settings.getMaxEntries();
+            }
+        };
+    }
+
+    /**
+     * Copies of the groups with memberCount filled in where known
+     *
+     * @param tenant key of the tenant the token belongs to, part of the cache key
+     */
+    public List<GroupDTO> withCounts(String accessToken, String tenant, List<GroupDTO> groups) {
+        Map<String, Counts> known = new LinkedHashMap<>();
+        List<GroupDTO> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            for (GroupDTO group : groups) {
+                Counts counts = cache.get(tenant + " " + group.getId());
+                if (counts != null && now - counts.fetchedAt() <= settings.getTtl()) {
+                    known.put(group.getId(), counts);
+                } else {
+                    missing.add(group);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<String> urls = new ArrayList<>();
+            for (GroupDTO group : missing) {
+                urls.add("/groups/" + group.getId() + "/members/$count");
+            }
+            List<JsonNode> results = RequestDeadline.await(queries.batch(accessToken, urls, COUNT_HEADERS));
+            synchronized (cache) {
+                for (int i = 0; i < missing.size(); i++) {
+                    JsonNode count = results.get(i);
+                    if (count == null) {
+                        continue;
+                    }
+                    Counts counts = new Counts(countOf(count), now);
+                    known.put(missing.get(i).getId(), counts);
+                    cache.put(tenant + " " + missing.get(i).getId(), counts);
+                }
+            }
+        }
+
+        List<GroupDTO> result = new ArrayList<>(groups.size());
+        for (GroupDTO group : groups) {
+            GroupDTO copy = new GroupDTO(group.getId(), group.getDisplayName(), group.getDescription());
+            copy.setGroupType(group.getGroupType());
+            Counts counts = known.get(group.getId());
+            if (counts != null) {
+                copy.setMemberCount(counts.memberCount());
+            }
+            result.add(copy);
+        }
+        return result;
+    }
+
+    /**
+     * A $count body inside a batch response: a number, its text, or the base64 of its text/plain body
+     */
+    static Long countOf(JsonNode body) {
+        if (body.isNumber()) {
+            return body.asLong();
+        }
+        String text = body.asText().trim();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            try {
+                return Long.parseLong(new String(Base64.getDecoder().decode(text), StandardCharsets.UTF_8).trim());
+            } catch (IllegalArgumentException notCount) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hedged Graph reads, see {@link GraphHedger} (prefix "graph.hedging")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.hedging")
+public class HedgingProperties {
+    
+    private boolean enabled = false;
+    private int budgetPercent = 5;
+    private int maxBurst = 10;
+    private long minDelay = 20;
+    private int minSamples = 100;
+    private int window = 1000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public int getBudgetPercent() {
+        return budgetPercent;
+    }
+    
+    public void setBudgetPercent(int budgetPercent) {
+        this.budgetPercent = budgetPercent;
+    }
+    
+    public int getMaxBurst() {
+        return maxBurst;
+    }
+    
+    public void setMaxBurst(int maxBurst) {
+        this.maxBurst = maxBurst;
+    }
+    
+    public long getMinDelay() {
+        return minDelay;
+    }
+    
+    public void setMinDelay(long minDelay) {
+        this.minDelay = minDelay;
+    }
+    
+    public int getMinSamples() {
+        return minSamples;
+    }
+    
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+    
+    public int getWindow() {
+        return window;
+    }
+    
+    public void setWindow(int window) {
+        this.window = window;
+    }
+}
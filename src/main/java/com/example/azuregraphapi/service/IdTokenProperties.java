@@ -0,0 +1,40 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * ID token verification on login, see {@link IdTokenVerifier} (prefix "graph.id-token")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.id-token")
+public class IdTokenProperties {
+    
+    private boolean enabled = true;
+    private long jwksRefreshInterval = 3600000;
+    private long jwksMinRefreshInterval = 60000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public long getJwksRefreshInterval() {
+        return jwksRefreshInterval;
+    }
+    
+    public void setJwksRefreshInterval(long jwksRefreshInterval) {
+        this.jwksRefreshInterval = jwksRefreshInterval;
+    }
+    
+    public long getJwksMinRefreshInterval() {
+        return jwksMinRefreshInterval;
+    }
+    
+    public void setJwksMinRefreshInterval(long jwksMinRefreshInterval) {
+        this.jwksMinRefreshInterval = jwksMinRefreshInterval;
+    }
+}
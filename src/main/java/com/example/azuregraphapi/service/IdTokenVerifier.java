@@ -0,0 +1,158 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.RequestDeadline;
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.jwt.JwtClaimValidator;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtIssuerValidator;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Verifies ID tokens returned by the tenant's token endpoint: RS256 signature against the tenant's
+ * JWKS, expiry, issuer and audience (the registration's client id).
+ *
+ * Key sets are cached per jwk-set-uri and refreshed in the background, so a login does not wait for
+ * the JWKS download. A token signed with an unknown key triggers one immediate refresh, at most once
+ * per jwks-min-refresh-interval, to pick up rotated keys.
+ */
+@Service
+public class IdTokenVerifier {
+
+    private static final Pattern TENANT_ID = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final WebClient webClient;
+    private final TenantRegistry tenantRegistry;
+    private final IdTokenProperties settings;
+    private final Map<String, JwtDecoder> decoders = new ConcurrentHashMap<>();
+    private final Map<String, CachedKeys> keySets = new ConcurrentHashMap<>();
+
+    private record CachedKeys(JWKSet keys, long fetchedAt) {}
+
+    public IdTokenVerifier(WebClient loginWebClient, TenantRegistry tenantRegistry, IdTokenProperties idTokenProperties) {
+        this.webClient = loginWebClient;
+        this.tenantRegistry = tenantRegistry;
+        this.settings = idTokenProperties;
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Validate and decode an ID token of the given tenant
+     *
+     * @throws JwtException when the token is invalid or no key set is available
+     */
+    public Jwt verify(String idToken, TenantRegistry.Registration tenant) {
+        return decoders.computeIfAbsent(tenant.key(), key -> createDecoder(tenant)).decode(idToken);
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${graph.id-token.jwks-refresh-interval:3600000}")
+    public void refreshKeySets() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        for (TenantRegistry.Registration tenant : tenantRegistry.getAll()) {
+            if (tenant.jwkSetUri() == null) {
+                continue;
+            }
+            try {
+                fetch(tenant.jwkSetUri());
+            } catch (Exception e) {
+                System.out.println("Warning: Refreshing JWKS of tenant " + tenant.key() + " failed - " + e.getMessage());
+            }
+        }
+    }
+
+    private JwtDecoder createDecoder(TenantRegistry.Registration tenant) {
+        if (tenant.jwkSetUri() == null) {
+            throw new IllegalStateException("No jwk-set-uri configured for tenant " + tenant.key());
+        }
+        String jwkSetUri = tenant.jwkSetUri();
+        JWKSource<SecurityContext> keySource = (selector, context) -> {
+            List<JWK> keys = selector.select(keys(jwkSetUri, false));
+            return !keys.isEmpty() ? keys : selector.select(keys(jwkSetUri, true));
+        };
+
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, keySource));
+        // Claims are checked by the Spring validators below
+        processor.setJWTClaimsSetVerifier((claims, context) -> { });
+
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(processor);
+        decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+                new JwtTimestampValidator(),
+                issuerValidator(tenant),
+                new JwtClaimValidator<List<String>>(JwtClaimNames.AUD,
+                        audience -> audience != null && audience.contains(tenant.clientId()))));
+        return decoder;
+    }
+
+    /**
+     * Exact v2.0 issuer for a tenant id; tenants configured as "organizations" or "common" accept
+     * the issuer of whichever directory the token's tid claim names
+     */
+    private static OAuth2TokenValidator<Jwt> issuerValidator(TenantRegistry.Registration tenant) {
+        String authority = tenant.tokenUri().substring(0, tenant.tokenUri().indexOf("/oauth2/"));
+        if (tenant.tenantId() != null && TENANT_ID.matcher(tenant.tenantId()).matches()) {
+            return new JwtIssuerValidator(authority + "/v2.0");
+        }
+        String host = authority.substring(0, authority.lastIndexOf('/'));
+        return jwt -> new JwtIssuerValidator(host + "/" + jwt.getClaimAsString("tid") + "/v2.0").validate(jwt);
+    }
+
+    /**
+     * Cached key set; with forceRefresh, re-fetched unless that happened within the minimum interval
+     */
+    private JWKSet keys(String jwkSetUri, boolean forceRefresh) {
+        CachedKeys cached = keySets.get(jwkSetUri);
+        if (cached != null && !(forceRefresh
+                && System.currentTimeMillis() - cached.fetchedAt() > settings.getJwksMinRefreshInterval())) {
+            return cached.keys();
+        }
+        synchronized (keySets) {
+            CachedKeys current = keySets.get(jwkSetUri);
+            if (current != null && current != cached) {
+                return current.keys();
+            }
+            return fetch(jwkSetUri);
+        }
+    }
+
+    private JWKSet fetch(String jwkSetUri) {
+        String body = RequestDeadline.await(webClient.get()
+                .uri(jwkSetUri)
+                .retrieve()
+                .bodyToMono(String.class));
+        try {
+            JWKSet keys = JWKSet.parse(body);
+            keySets.put(jwkSetUri, new CachedKeys(keys, System.currentTimeMillis()));
+            return keys;
+        } catch (ParseException e) {
+            throw new IllegalStateException("Invalid JWKS document at " + jwkSetUri + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Changes kept on this node only; tokens are bound to the process that issued them
+ */
+@Component
+@ConditionalOnProperty(prefix = "graph.changes", name = "store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryChangeStore implements ChangeStore {
+
+    private final ChangeLogProperties settings;
+    private final long epoch = System.currentTimeMillis();
+    private final NavigableMap<Long, Change> bySequence = new TreeMap<>();
+    private final Map<String, Long> latestSequence = new HashMap<>();
+    private long sequence;
+    private long floor;
+
+    public InMemoryChangeStore(ChangeLogProperties changeLogProperties) {
+        this.settings = changeLogProperties;
+    }
+
+    @Override
+    public long epoch() {
+        return epoch;
+    }
+
+    @Override
+    public synchronized void append(String type, String id) {
+        String key = type + ":" + id;
+        long next = ++sequence;
+        Long previous = latestSequence.put(key, next);
+        if (previous != null) {
+            bySequence.remove(previous);
+        }
+        bySequence.put(next, new Change(next, type, id));
+
+        while (bySequence.size() > settings.getMaxEntries()) {
+            Change dropped = bySequence.pollFirstEntry().getValue();
+            latestSequence.remove(dropped.type() + ":" + dropped.id());
+            floor = dropped.sequence();
+        }
+    }
+
+    @Override
+    public synchronized long lastSequence() {
+        return sequence;
+    }
+
+    @Override
+    public synchronized long floor() {
+        return floor;
+    }
+
+    @Override
+    public synchronized List<Change> changesAfter(long after, int limit) {
+        List<Change> changes = new ArrayList<>();
+        for (Change change : bySequence.tailMap(after, false).values()) {
+            if (changes.size() == limit) {
+                break;
+            }
+            changes.add(change);
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessions kept on this node only; clients must stick to the node they signed in on
+ */
+@Component
+@ConditionalOnProperty(prefix = "graph.session", name = "store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySessionStore implements SessionStore {
+
+    private record Stored(byte[] session, long expiresAt) {}
+
+    private final Map<String, Stored> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public void save(String id, byte[] session, long expiresAt) {
+        sessions.put(id, new Stored(session, expiresAt));
+    }
+
+    @Override
+    public byte[] find(String id) {
+        Stored stored = sessions.get(id);
+        return stored != null ? stored.session() : null;
+    }
+
+    @Override
+    public void delete(String id) {
+        sessions.remove(id);
+    }
+
+    @Override
+    public int deleteExpired(long now) {
+        int before = sessions.size();
+        sessions.values().removeIf(stored -> stored.expiresAt() < now);
+        return before - sessions.size();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.azuregraphapi.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Changes in database tables shared by all nodes (see {@link JdbcSessionStore}), so a change token
+ * issued by one node is valid on any other and survives restarts. The epoch is set once when the
+ * tables are created.
+ *
+ * Every node appends the changes it applies to its own cache. An object changed once is therefore
+ * bumped again by each node applying it, and a consumer that read it from a node that was behind
+ * receives it again in its current state.
+ *
+ * Appends are serialized on the single graph_change_log row, which holds the last sequence handed
+ * out: each one locks it, takes the next sequence and commits its change before the next appender
+ * can start. Changes therefore become visible in sequence order, and a reader that moved its token
+ * past a sequence can never see a lower one appear later.
+ *
+ * Like {@link CrawlLeases} the tables are created with CREATE ... IF NOT EXISTS, so only H2 is
+ * supported as is.
+ */
+@Component
+@ConditionalOnProperty(prefix = "graph.changes", name = "store", havingValue = "jdbc")
+public class JdbcChangeStore implements ChangeStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChangeLogProperties settings;
+    private long epoch;
+
+    public JdbcChangeStore(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                           ChangeLogProperties changeLogProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.settings = changeLogProperties;
+    }
+
+    @PostConstruct
+    public void createTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS graph_changes ("
+                + "sequence BIGINT PRIMARY KEY, "
+                + "type VARCHAR(16) NOT NULL, "
+                + "object_id VARCHAR(64) NOT NULL)");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS graph_changes_object ON graph_changes (type, object_id)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS graph_change_log ("
+                + "id INT PRIMARY KEY, "
+                + "epoch BIGINT NOT NULL, "
+                + "last_sequence BIGINT NOT NULL, "
+                + "floor BIGINT NOT NULL)");
+        try {
+            jdbcTemplate.update("INSERT INTO graph_change_log (id, epoch, last_sequence, floor) VALUES (1, ?, 0, 0)",
+                    System.currentTimeMillis());
+        } catch (DuplicateKeyException e) {
+            // Created by another node or an earlier run
+        }
+        epoch = jdbcTemplate.queryForObject("SELECT epoch FROM graph_change_log WHERE id = 1", Long.class);
+    }
+
+    @Override
+    public long epoch() {
+        return epoch;
+    }
+
+    @Override
+    public void append(String type, String id) {
+        transactionTemplate.executeWithoutResult(status -> {
+            long next = jdbcTemplate.queryForObject(
+                    "SELECT last_sequence FROM graph_change_log WHERE id = 1 FOR UPDATE", Long.class) + 1;
+            jdbcTemplate.update("UPDATE graph_change_log SET last_sequence = ? WHERE id = 1", next);
+            // No other appender can run until commit, so the object's row cannot appear in between
+            if (jdbcTemplate.update("UPDATE graph_changes SET sequence = ? WHERE type = ? AND object_id = ?",
+                    next, type, id) == 0) {
+                jdbcTemplate.update("INSERT INTO graph_changes (sequence, type, object_id) VALUES (?, ?, ?)",
+                        next, type, id);
+            }
+        });
+    }
+
+    @Override
+    public long lastSequence() {
+        return jdbcTemplate.queryForObject("SELECT last_sequence FROM graph_change_log WHERE id = 1", Long.class);
+    }
+
+    @Override
+    public long floor() {
+        return jdbcTemplate.queryForObject("SELECT floor FROM graph_change_log WHERE id = 1", Long.class);
+    }
+
+    @Override
+    public List<Change> changesAfter(long sequence, int limit) {
+        return jdbcTemplate.query("SELECT sequence, type, object_id FROM graph_changes WHERE sequence > ? "
+                        + "ORDER BY sequence LIMIT ?",
+                (resultSet, rowNum) -> new Change(resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3)),
+                sequence, limit);
+    }
+
+    /**
+     * Drop the changes beyond max-entries. The floor is raised before the rows are deleted, so a
+     * reader that missed them also sees its token expired.
+     */
+    @Scheduled(initialDelayString = "${graph.changes.trim-interval:60000}",
+            fixedDelayString = "${graph.changes.trim-interval:60000}")
+    public void trim() {
+        try {
+            List<Long> cutoff = jdbcTemplate.queryForList("SELECT sequence FROM graph_changes "
+                    + "ORDER BY sequence DESC LIMIT 1 OFFSET ?", Long.class, settings.getMaxEntries());
+            if (cutoff.isEmpty()) {
+                return;
+            }
+            jdbcTemplate.update("UPDATE graph_change_log SET floor = GREATEST(floor, ?) WHERE id = 1", cutoff.get(0));
+            int removed = jdbcTemplate.update("DELETE FROM graph_changes WHERE sequence <= ?", cutoff.get(0));
+            System.out.println("Removed " + removed + " changes beyond graph.changes.max-entries");
+        } catch (Exception e) {
+            System.out.println("Warning: Trimming the change log failed - " + e.getMessage());
+        }
+    }
+}
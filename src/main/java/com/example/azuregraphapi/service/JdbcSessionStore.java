@@ -0,0 +1,56 @@
+package com.example.azuregraphapi.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Sessions in a database table shared by all nodes, so any node can serve any session.
+ * Uses the application DataSource (spring.datasource). Rows are keyed by the hash of the session
+ * code and hold the session encrypted, so the table alone does not give access to any session.
+ */
+@Component
+@ConditionalOnProperty(prefix = "graph.session", name = "store", havingValue = "jdbc")
+public class JdbcSessionStore implements SessionStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcSessionStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS graph_sessions ("
+                + "code VARCHAR(64) PRIMARY KEY, "
+                + "data VARBINARY(16384) NOT NULL, "
+                + "expires_at BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS graph_sessions_expires_at ON graph_sessions (expires_at)");
+    }
+
+    @Override
+    public void save(String id, byte[] session, long expiresAt) {
+        jdbcTemplate.update("INSERT INTO graph_sessions (code, data, expires_at) VALUES (?, ?, ?)",
+                id, session, expiresAt);
+    }
+
+    @Override
+    public byte[] find(String id) {
+        List<byte[]> rows = jdbcTemplate.query("SELECT data FROM graph_sessions WHERE code = ?",
+                (resultSet, rowNum) -> resultSet.getBytes(1), id);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    @Override
+    public void delete(String id) {
+        jdbcTemplate.update("DELETE FROM graph_sessions WHERE code = ?", id);
+    }
+
+    @Override
+    public int deleteExpired(long now) {
+        return jdbcTemplate.update("DELETE FROM graph_sessions WHERE expires_at < ?", now);
+    }
+}
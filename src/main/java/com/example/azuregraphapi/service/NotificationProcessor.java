@@ -0,0 +1,154 @@
+package com.example.azuregraphapi.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies Graph change notifications to {@link DirectoryCache} in batches.
+ *
+ * The receiver only queues notifications so it can answer Graph within its deadline. A single worker
+ * drains the queue in batches of up to batch-size changes, waiting at most batch-linger ms for a batch
+ * to fill. Deletions are applied to the cache directly. User and group notifications do not carry the
+ * changed properties, so any other change in a batch triggers one delta round of
+ * {@link DirectorySyncService}, which fetches exactly what changed since the last round.
+ */
+@Service
+public class NotificationProcessor {
+
+    public static final String TYPE_USER = "user";
+    public static final String TYPE_GROUP = "group";
+    /** Pseudo change queued when Graph reports missed notifications */
+    public static final String CHANGE_MISSED = "missed";
+
+    /**
+     * A single queued change
+     *
+     * @param resourceType {@link #TYPE_USER} or {@link #TYPE_GROUP}, null for {@link #CHANGE_MISSED}
+     * @param changeType created, updated, deleted or missed
+     */
+    public record Change(String resourceType, String id, String changeType) {
+    }
+
+    private final DirectoryCache directoryCache;
+    private final ChangeLog changeLog;
+    private final ObjectProvider<DirectorySyncService> directorySyncService;
+    private final NotificationProperties settings;
+    private final BlockingQueue<Change> queue;
+    private volatile Thread worker;
+
+    public NotificationProcessor(DirectoryCache directoryCache, ChangeLog changeLog,
+                                 ObjectProvider<DirectorySyncService> directorySyncService,
+                                 NotificationProperties notificationProperties) {
+        this.directoryCache = directoryCache;
+        this.changeLog = changeLog;
+        this.directorySyncService = directorySyncService;
+        this.settings = notificationProperties;
+        this.queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = new Thread(this::run, "graph-notifications");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread current = worker;
+        worker = null;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    /**
+     * Queue a change without blocking
+     *
+     * @return false when the queue is full
+     */
+    public boolean offer(Change change) {
+        return queue.offer(change);
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    private void run() {
+        while (worker == Thread.currentThread()) {
+            try {
+                List<Change> batch = new ArrayList<>();
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getBatchLinger());
+                while (batch.size() < settings.getBatchSize()) {
+                    if (queue.drainTo(batch, settings.getBatchSize() - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Change next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                apply(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.out.println("Warning: Applying change notifications failed - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Apply one batch; only the last change per object counts
+     */
+    void apply(List<Change> batch) {
+        Map<String, Change> latest = new LinkedHashMap<>();
+        for (Change change : batch) {
+            latest.put(change.resourceType() + ":" + change.id(), change);
+        }
+
+        int deleted = 0;
+        boolean needsSync = false;
+        for (Change change : latest.values()) {
+            if ("deleted".equals(change.changeType())) {
+                if (TYPE_USER.equals(change.resourceType())) {
+                    directoryCache.removeUser(change.id());
+                    changeLog.record(ChangeLog.USER, change.id());
+                } else if (TYPE_GROUP.equals(change.resourceType())) {
+                    changeLog.recordMembers(directoryCache.removeGroup(change.id()));
+                    changeLog.record(ChangeLog.GROUP, change.id());
+                }
+                deleted++;
+            } else {
+                needsSync = true;
+            }
+        }
+
+        boolean synced = false;
+        if (needsSync) {
+            DirectorySyncService syncService = directorySyncService.getIfAvailable();
+            if (syncService != null) {
+                syncService.sync();
+                synced = true;
+            } else {
+                System.out.println("Warning: Directory sync is disabled, ignoring "
+                        + (latest.size() - deleted) + " changed objects");
+            }
+        }
+        System.out.println("Applied " + batch.size() + " change notifications (" + deleted + " deletions"
+                + (synced ? ", delta sync" : "") + ")");
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Graph change notification subscriptions, see {@link SubscriptionManager} (prefix "graph.notifications")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.notifications")
+public class NotificationProperties {
+    
+    private String notificationUrl;
+    private String clientState;
+    private String resources = "users,groups";
+    private long expirationMinutes = 4200;
+    private long renewBeforeMinutes = 720;
+    private long checkInterval = 600000;
+    private int queueCapacity = 10000;
+    private int batchSize = 500;
+    private long batchLinger = 2000;
+    private boolean stubEnabled = false;
+    
+    public String getNotificationUrl() {
+        return notificationUrl;
+    }
+    
+    public void setNotificationUrl(String notificationUrl) {
+        this.notificationUrl = notificationUrl;
+    }
+    
+    public String getClientState() {
+        return clientState;
+    }
+    
+    public void setClientState(String clientState) {
+        this.clientState = clientState;
+    }
+    
+    public String getResources() {
+        return resources;
+    }
+    
+    public void setResources(String resources) {
+        this.resources = resources;
+    }
+    
+    public long getExpirationMinutes() {
+        return expirationMinutes;
+    }
+    
+    public void setExpirationMinutes(long expirationMinutes) {
+        this.expirationMinutes = expirationMinutes;
+    }
+    
+    public long getRenewBeforeMinutes() {
+        return renewBeforeMinutes;
+    }
+    
+    public void setRenewBeforeMinutes(long renewBeforeMinutes) {
+        this.renewBeforeMinutes = renewBeforeMinutes;
+    }
+    
+    public long getCheckInterval() {
+        return checkInterval;
+    }
+    
+    public void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+    
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public long getBatchLinger() {
+        return batchLinger;
+    }
+    
+    public void setBatchLinger(long batchLinger) {
+        this.batchLinger = batchLinger;
+    }
+    
+    public boolean isStubEnabled() {
+        return stubEnabled;
+    }
+    
+    public void setStubEnabled(boolean stubEnabled) {
+        this.stubEnabled = stubEnabled;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pre-serialized list responses, see {@link SerializedResponseCache} (prefix "graph.response-cache")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.response-cache")
+public class ResponseCacheProperties {
+    
+    private boolean enabled = true;
+    private long ttl = 60000;
+    private int maxEntries = 1000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public long getTtl() {
+        return ttl;
+    }
+    
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+    
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.FlightEvents;
+import com.example.azuregraphapi.config.Principals;
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.example.azuregraphapi.config.ResponseFormats;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Read responses kept in serialized form: the body bytes, their gzip encoding and a content-hash ETag.
+ * The body is encoded in the format the request's Accept header asks for, see {@link ResponseFormats}.
+ *
+ * Entries are keyed by tenant, caller, media type and request URI including the query string: what Graph
+ * returns depends on the caller's token (consent, scopes, administrative units), so one user's response is
+ * never served to another. They are dropped after graph.response-cache.ttl ms and whenever
+ * {@link DirectoryCache} changes, which covers everything served from the cache for the default tenant;
+ * other tenants rely on the TTL alone.
+ */
+@Component
+public class SerializedResponseCache {
+
+    /**
+     * A serialized response
+     *
+     * @param contentType encoding of body, JSON or one of the binary formats
+     * @param headers     response headers that belong to the body, e.g. X-Next-Cursor
+     */
+    public record Entry(byte[] body, byte[] gzip, String etag, MediaType contentType, Map<String, String> headers,
+                        long version, long createdAt) {
+
+        /**
+         * ETag of the gzip encoding; the two encodings are different representations
+         */
+        public String gzipEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gz\"";
+        }
+
+        /**
+         * True when an If-None-Match header value lists the ETag of either encoding
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final ResponseFormats formats;
+    private final DirectoryCache directoryCache;
+    private final TenantRegistry tenantRegistry;
+    private final ResponseCacheProperties settings;
+    private final Map<String, Entry> entries;
+
+    public SerializedResponseCache(ResponseFormats formats, DirectoryCache directoryCache,
+                                   TenantRegistry tenantRegistry, ResponseCacheProperties responseCacheProperties) {
+        this.formats = formats;
+        this.directoryCache = directoryCache;
+        this.tenantRegistry = tenantRegistry;
+        this.settings = responseCacheProperties;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > settings.getMaxEntries();
+            }
+        };
+    }
+
+    /**
+     * The cached response for this request, null when there is none or it is outdated
+     */
+    public Entry get(HttpServletRequest request) {
+        if (!settings.isEnabled()) {
+            return null;
+        }
+        String key = keyOf(request, formats.negotiate(request));
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && (entry.version() != directoryCache.getVersion()
+                    || System.currentTimeMillis() - entry.createdAt() > settings.getTtl())) {
+                entries.remove(key);
+                entry = null;
+            }
+            FlightEvents.cacheLookup("response", entry != null);
+            return entry;
+        }
+    }
+
+    /**
+     * Serialize a response body and keep it for later requests with the same key
+     *
+     * @return the serialized entry, also when caching is disabled
+     */
+    public Entry put(HttpServletRequest request, Object body, Map<String, String> headers) {
+        // Read the version first: a change while serializing then makes the entry outdated, not wrong
+        long version = directoryCache.getVersion();
+        MediaType contentType = formats.negotiate(request);
+        Entry entry;
+        try {
+            byte[] bytes = formats.mapperFor(contentType).writeValueAsBytes(body);
+            entry = new Entry(bytes, gzip(bytes), etagOf(bytes), contentType, Map.copyOf(headers),
+                    version, System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize response: " + e.getMessage(), e);
+        }
+        if (settings.isEnabled()) {
+            synchronized (entries) {
+                entries.put(keyOf(request, contentType), entry);
+            }
+        }
+        return entry;
+    }
+
+    private String keyOf(HttpServletRequest request, MediaType contentType) {
+        String query = request.getQueryString();
+        String principal = Principals.idOf(SecurityContextHolder.getContext().getAuthentication());
+        return tenantRegistry.resolve(request).key() + " " + principal + " " + contentType + " "
+                + request.getRequestURI() + (query != null ? "?" + query : "");
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(data);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String etagOf(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
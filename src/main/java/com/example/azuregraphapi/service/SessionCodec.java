@@ -0,0 +1,149 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.SessionDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Compact binary encoding of a {@link SessionDTO}.
+ *
+ * Layout: version byte, user id, user principal name, display name, tenant, access token, then created and expiry time
+ * in epoch seconds as varints. Strings are length-prefixed UTF-8 with a varint length (0 = null).
+ * A JWT access token is stored as its three base64url segments decoded to raw bytes, which saves
+ * a quarter of its size; anything else is stored as a plain string.
+ */
+public final class SessionCodec {
+
+    private static final int VERSION = 2;
+    private static final int TOKEN_PLAIN = 0;
+    private static final int TOKEN_JWT = 1;
+
+    private SessionCodec() {
+    }
+
+    public static byte[] encode(SessionDTO session) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(2048);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(VERSION);
+            writeString(out, session.getUserId());
+            writeString(out, session.getUserPrincipalName());
+            writeString(out, session.getDisplayName());
+            writeString(out, session.getTenant());
+            writeToken(out, session.getAccessToken());
+            writeVarLong(out, session.getCreatedAt() / 1000);
+            writeVarLong(out, session.getExpiresAt() / 1000);
+            out.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode session: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException for another encoding version
+     */
+    public static SessionDTO decode(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int version = in.get();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported session encoding version " + version);
+        }
+        SessionDTO session = new SessionDTO();
+        session.setUserId(readString(in));
+        session.setUserPrincipalName(readString(in));
+        session.setDisplayName(readString(in));
+        session.setTenant(readString(in));
+        session.setAccessToken(readToken(in));
+        session.setCreatedAt(readVarLong(in) * 1000);
+        session.setExpiresAt(readVarLong(in) * 1000);
+        return session;
+    }
+
+    private static void writeToken(DataOutputStream out, String token) throws IOException {
+        String[] segments = token != null ? token.split("\\.", -1) : null;
+        if (segments != null && segments.length == 3) {
+            try {
+                byte[][] decoded = new byte[3][];
+                for (int i = 0; i < 3; i++) {
+                    decoded[i] = Base64.getUrlDecoder().decode(segments[i]);
+                    // Only re-encodable segments round-trip exactly
+                    if (!Base64.getUrlEncoder().withoutPadding().encodeToString(decoded[i]).equals(segments[i])) {
+                        throw new IllegalArgumentException("Padded or non-canonical segment");
+                    }
+                }
+                out.writeByte(TOKEN_JWT);
+                for (byte[] segment : decoded) {
+                    writeVarLong(out, segment.length);
+                    out.write(segment);
+                }
+                return;
+            } catch (IllegalArgumentException e) {
+                // Not base64url, keep it as text
+            }
+        }
+        out.writeByte(TOKEN_PLAIN);
+        writeString(out, token);
+    }
+
+    private static String readToken(ByteBuffer in) {
+        if (in.get() == TOKEN_PLAIN) {
+            return readString(in);
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            byte[] segment = new byte[(int) readVarLong(in)];
+            in.get(segment);
+            if (i > 0) {
+                token.append('.');
+            }
+            token.append(Base64.getUrlEncoder().withoutPadding().encodeToString(segment));
+        }
+        return token.toString();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
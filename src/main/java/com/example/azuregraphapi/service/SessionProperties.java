@@ -0,0 +1,67 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Login sessions, see {@link SessionService} (prefix "graph.session")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.session")
+public class SessionProperties {
+    
+    private String store = "memory";
+    private String cookieName = "AZURE_SESSION";
+    private String encryptionKey;
+    private long nearCacheTtl = 5000;
+    private int nearCacheMaxEntries = 10000;
+    private long purgeInterval = 300000;
+    
+    public String getStore() {
+        return store;
+    }
+    
+    public void setStore(String store) {
+        this.store = store;
+    }
+    
+    public String getCookieName() {
+        return cookieName;
+    }
+    
+    public void setCookieName(String cookieName) {
+        this.cookieName = cookieName;
+    }
+    
+    public String getEncryptionKey() {
+        return encryptionKey;
+    }
+    
+    public void setEncryptionKey(String encryptionKey) {
+        this.encryptionKey = encryptionKey;
+    }
+    
+    public long getNearCacheTtl() {
+        return nearCacheTtl;
+    }
+    
+    public void setNearCacheTtl(long nearCacheTtl) {
+        this.nearCacheTtl = nearCacheTtl;
+    }
+    
+    public int getNearCacheMaxEntries() {
+        return nearCacheMaxEntries;
+    }
+    
+    public void setNearCacheMaxEntries(int nearCacheMaxEntries) {
+        this.nearCacheMaxEntries = nearCacheMaxEntries;
+    }
+    
+    public long getPurgeInterval() {
+        return purgeInterval;
+    }
+    
+    public void setPurgeInterval(long purgeInterval) {
+        this.purgeInterval = purgeInterval;
+    }
+}
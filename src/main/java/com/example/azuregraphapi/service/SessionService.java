@@ -0,0 +1,239 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.FlightEvents;
+import com.example.azuregraphapi.dto.SessionDTO;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseCookie;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessions of users signed in through /api/auth/login, identified by a random session code the
+ * client sends as X-Session-Code header or cookie. Replaces the servlet HttpSession so that nodes
+ * keep no session state of their own when a shared {@link SessionStore} is configured.
+ *
+ * The store only sees the SHA-256 of the session code and the session encrypted with AES-GCM under
+ * graph.session.encryption-key, bound to that hash. A copy of the store therefore neither contains
+ * usable session codes nor the users' access tokens.
+ *
+ * Sessions read from the store are kept in a small near-cache for near-cache-ttl ms. A logout on
+ * another node therefore takes effect here within that time.
+ */
+@Service
+public class SessionService {
+
+    public static final String HEADER = "X-Session-Code";
+
+    private static final int MAX_CODE_LENGTH = 64;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SessionStore sessionStore;
+    private final SessionProperties settings;
+    private final SecretKey encryptionKey;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Cached> nearCache = new ConcurrentHashMap<>();
+
+    private record Cached(SessionDTO session, long loadedAt) {}
+
+    public SessionService(SessionStore sessionStore, SessionProperties sessionProperties) {
+        this.sessionStore = sessionStore;
+        this.settings = sessionProperties;
+        this.encryptionKey = encryptionKey(sessionProperties);
+    }
+
+    /**
+     * Store a new session
+     *
+     * @return the session code
+     */
+    public String create(SessionDTO session) {
+        byte[] code = new byte[32];
+        random.nextBytes(code);
+        String sessionCode = Base64.getUrlEncoder().withoutPadding().encodeToString(code);
+        String id = idOf(sessionCode);
+        sessionStore.save(id, encrypt(id, SessionCodec.encode(session)), session.getExpiresAt());
+        cache(id, session);
+        return sessionCode;
+    }
+
+    /**
+     * The session for a code, null when it is unknown or expired
+     */
+    public SessionDTO find(String code) {
+        if (code == null || code.isEmpty() || code.length() > MAX_CODE_LENGTH) {
+            return null;
+        }
+        String id = idOf(code);
+        Cached cached = nearCache.get(id);
+        boolean fresh = cached != null && System.currentTimeMillis() - cached.loadedAt() < settings.getNearCacheTtl();
+        FlightEvents.cacheLookup("session", fresh);
+        if (fresh) {
+            return cached.session().isExpired() ? null : cached.session();
+        }
+
+        byte[] stored = sessionStore.find(id);
+        if (stored == null) {
+            nearCache.remove(id);
+            return null;
+        }
+        SessionDTO session;
+        try {
+            session = SessionCodec.decode(decrypt(id, stored));
+        } catch (IllegalStateException | GeneralSecurityException e) {
+            // Stored by an older version or under another key, the user signs in again
+            delete(code);
+            return null;
+        }
+        if (session.isExpired()) {
+            nearCache.remove(id);
+            return null;
+        }
+        cache(id, session);
+        return session;
+    }
+
+    public void delete(String code) {
+        if (code == null) {
+            return;
+        }
+        String id = idOf(code);
+        nearCache.remove(id);
+        sessionStore.delete(id);
+    }
+
+    /**
+     * Key of a session in the store and near-cache: the base64url SHA-256 of its code
+     */
+    static String idOf(String code) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(code.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Session code sent with the request: the X-Session-Code header, else the session cookie
+     */
+    public String codeOf(HttpServletRequest request) {
+        String header = request.getHeader(HEADER);
+        if (header != null && !header.isBlank()) {
+            return header.trim();
+        }
+        if (request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (settings.getCookieName().equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cookie carrying the session code, or clearing it when code is null
+     */
+    public ResponseCookie cookie(String code, long expiresAt) {
+        long maxAge = code != null ? Math.max(0, (expiresAt - System.currentTimeMillis()) / 1000) : 0;
+        return ResponseCookie.from(settings.getCookieName(), code != null ? code : "")
+                .httpOnly(true)
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(Duration.ofSeconds(maxAge))
+                .build();
+    }
+
+    @Scheduled(initialDelayString = "${graph.session.purge-interval:300000}",
+            fixedDelayString = "${graph.session.purge-interval:300000}")
+    public void purgeExpired() {
+        try {
+            long now = System.currentTimeMillis();
+            nearCache.values().removeIf(cached -> cached.session().isExpired());
+            int removed = sessionStore.deleteExpired(now);
+            if (removed > 0) {
+                System.out.println("Removed " + removed + " expired sessions");
+            }
+        } catch (Exception e) {
+            System.out.println("Warning: Removing expired sessions failed - " + e.getMessage());
+        }
+    }
+
+    private void cache(String id, SessionDTO session) {
+        if (nearCache.size() >= settings.getNearCacheMaxEntries()) {
+            nearCache.clear();
+        }
+        nearCache.put(id, new Cached(session, System.currentTimeMillis()));
+    }
+
+    /**
+     * Random IV followed by the AES-GCM ciphertext, authenticated together with the session id
+     */
+    private byte[] encrypt(String id, byte[] encoded) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(id.getBytes(StandardCharsets.UTF_8));
+            byte[] ciphertext = cipher.doFinal(encoded);
+            byte[] stored = Arrays.copyOf(iv, IV_LENGTH + ciphertext.length);
+            System.arraycopy(ciphertext, 0, stored, IV_LENGTH, ciphertext.length);
+            return stored;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Encrypting the session failed", e);
+        }
+    }
+
+    private byte[] decrypt(String id, byte[] stored) throws GeneralSecurityException {
+        if (stored.length <= IV_LENGTH) {
+            throw new GeneralSecurityException("Stored session too short");
+        }
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, stored, 0, IV_LENGTH));
+        cipher.updateAAD(id.getBytes(StandardCharsets.UTF_8));
+        return cipher.doFinal(stored, IV_LENGTH, stored.length - IV_LENGTH);
+    }
+
+    /**
+     * The configured key; the memory store may use a random one since its sessions end with the process
+     */
+    private static SecretKey encryptionKey(SessionProperties settings) {
+        String configured = settings.getEncryptionKey();
+        if (configured == null || configured.isBlank()) {
+            if ("jdbc".equals(settings.getStore())) {
+                throw new IllegalStateException("graph.session.encryption-key must be set for the jdbc session store");
+            }
+            byte[] key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            return new SecretKeySpec(key, "AES");
+        }
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(configured.trim());
+        } catch (IllegalArgumentException e) {
+            key = new byte[0];
+        }
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalStateException("graph.session.encryption-key must be a base64 AES key of 16, 24 or 32 bytes");
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.azuregraphapi.service;
+
+/**
+ * Backend holding encrypted sessions by the hash of their session code, see {@link SessionService#idOf}.
+ * Selected with graph.session.store: "memory" or "jdbc".
+ */
+public interface SessionStore {
+
+    void save(String id, byte[] session, long expiresAt);
+
+    /**
+     * The encrypted session, null when unknown
+     */
+    byte[] find(String id);
+
+    void delete(String id);
+
+    /**
+     * Remove sessions that expired before the given time
+     *
+     * @return number of removed sessions
+     */
+    int deleteExpired(long now);
+}
@@ -0,0 +1,40 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Directory cache snapshot file, see {@link DirectorySnapshotStore} (prefix "graph.snapshot")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.snapshot")
+public class SnapshotProperties {
+    
+    private boolean enabled = true;
+    private String path = "directory-snapshot.bin";
+    private long writeInterval = 300000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    public long getWriteInterval() {
+        return writeInterval;
+    }
+    
+    public void setWriteInterval(long writeInterval) {
+        this.writeInterval = writeInterval;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.azuregraphapi.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates and renews the Graph change-notification subscriptions (default tenant, app-only credential)
+ * that feed {@link NotificationProcessor}.
+ *
+ * Subscriptions are only managed when graph.notifications.notification-url is set; it must be reachable
+ * from Graph over HTTPS. Without graph.notifications.client-state each run picks a random one, so a
+ * cluster (sessions or changes in the shared database) must configure it: all nodes then accept each
+ * other's notifications. On startup, subscriptions to the same URL are adopted when their clientState
+ * is ours and deleted when Graph reports a different one, e.g. one left by an earlier single-node run.
+ * Subscriptions whose clientState Graph does not return are left to expire.
+ */
+@Service
+public class SubscriptionManager {
+
+    private final GraphApiService graphApiService;
+    private final AppTokenService appTokenService;
+    private final NotificationProperties settings;
+    private final String clientState;
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private volatile boolean started;
+
+    private record Subscription(String id, String resource, Instant expiresAt) {}
+
+    public SubscriptionManager(GraphApiService graphApiService, AppTokenService appTokenService,
+                               NotificationProperties notificationProperties, SessionProperties sessionProperties,
+                               ChangeLogProperties changeLogProperties) {
+        this.graphApiService = graphApiService;
+        this.appTokenService = appTokenService;
+        this.settings = notificationProperties;
+        boolean configured = settings.getClientState() != null && !settings.getClientState().isBlank();
+        boolean shared = "jdbc".equals(sessionProperties.getStore()) || "jdbc".equals(changeLogProperties.getStore());
+        if (isEnabled() && shared && !configured) {
+            throw new IllegalStateException("graph.notifications.client-state must be configured when sessions "
+                    + "or changes are kept in the shared database, so every node accepts the notifications");
+        }
+        this.clientState = configured ? settings.getClientState() : UUID.randomUUID().toString();
+    }
+
+    public boolean isEnabled() {
+        return settings.getNotificationUrl() != null && !settings.getNotificationUrl().isBlank();
+    }
+
+    /**
+     * Compare a received clientState with ours in constant time
+     */
+    public boolean isValidClientState(String received) {
+        return received != null && MessageDigest.isEqual(
+                clientState.getBytes(StandardCharsets.UTF_8), received.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * clientState to put into notifications emitted by the local stub
+     */
+    public String getClientState() {
+        return clientState;
+    }
+
+    /**
+     * Graph validates the notification URL while creating a subscription, so this waits until the
+     * receiver is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            adoptExistingSubscriptions();
+            started = true;
+            ensureSubscriptions();
+        } catch (Exception e) {
+            System.out.println("Warning: Creating change-notification subscriptions failed - " + e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${graph.notifications.check-interval:600000}",
+            fixedDelayString = "${graph.notifications.check-interval:600000}")
+    public void scheduledCheck() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            if (!started) {
+                adoptExistingSubscriptions();
+                started = true;
+            }
+            ensureSubscriptions();
+        } catch (Exception e) {
+            System.out.println("Warning: Renewing change-notification subscriptions failed - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create missing subscriptions and renew those expiring within renew-before-minutes
+     */
+    public synchronized void ensureSubscriptions() {
+        String accessToken = appTokenService.getAccessToken();
+        Instant renewAfter = Instant.now().plus(Duration.ofMinutes(settings.getRenewBeforeMinutes()));
+        for (String resource : settings.getResources().split(",")) {
+            resource = resource.trim();
+            if (resource.isEmpty()) {
+                continue;
+            }
+            Subscription subscription = subscriptions.get(resource);
+            if (subscription == null) {
+                create(accessToken, resource);
+            } else if (subscription.expiresAt().isBefore(renewAfter)) {
+                renew(accessToken, subscription);
+            }
+        }
+    }
+
+    /**
+     * Handle a lifecycle notification for one of our subscriptions
+     *
+     * @param lifecycleEvent reauthorizationRequired or subscriptionRemoved
+     */
+    public synchronized void onLifecycleEvent(String subscriptionId, String lifecycleEvent) {
+        Subscription subscription = subscriptions.values().stream()
+                .filter(s -> s.id().equals(subscriptionId))
+                .findFirst()
+                .orElse(null);
+        if (subscription == null) {
+            return;
+        }
+        if ("subscriptionRemoved".equals(lifecycleEvent)) {
+            subscriptions.remove(subscription.resource());
+            ensureSubscriptions();
+        } else if ("reauthorizationRequired".equals(lifecycleEvent)) {
+            renew(appTokenService.getAccessToken(), subscription);
+        }
+    }
+
+    private void create(String accessToken, String resource) {
+        Instant expiresAt = Instant.now().plus(Duration.ofMinutes(settings.getExpirationMinutes()))
+                .truncatedTo(ChronoUnit.SECONDS);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("changeType", "updated,deleted");
+        body.put("notificationUrl", settings.getNotificationUrl());
+        body.put("lifecycleNotificationUrl", settings.getNotificationUrl());
+        body.put("resource", resource);
+        body.put("expirationDateTime", expiresAt.toString());
+        body.put("clientState", clientState);
+
+        JsonNode created = graphApiService.sendJson(accessToken, HttpMethod.POST, "/subscriptions", body);
+        if (created == null || !created.hasNonNull("id")) {
+            throw new IllegalStateException("Graph returned no subscription for " + resource);
+        }
+        subscriptions.put(resource, new Subscription(created.get("id").asText(), resource, expiresAt));
+        System.out.println("Subscribed to changes of " + resource + " until " + expiresAt);
+    }
+
+    private void renew(String accessToken, Subscription subscription) {
+        Instant expiresAt = Instant.now().plus(Duration.ofMinutes(settings.getExpirationMinutes()))
+                .truncatedTo(ChronoUnit.SECONDS);
+        try {
+            graphApiService.sendJson(accessToken, HttpMethod.PATCH, "/subscriptions/" + subscription.id(),
+                    Map.of("expirationDateTime", expiresAt.toString()));
+            subscriptions.put(subscription.resource(),
+                    new Subscription(subscription.id(), subscription.resource(), expiresAt));
+        } catch (WebClientResponseException.NotFound e) {
+            // Expired or removed on Graph's side
+            subscriptions.remove(subscription.resource());
+            create(accessToken, subscription.resource());
+        }
+    }
+
+    /**
+     * Take over subscriptions to our URL created by another node or an earlier run with our
+     * clientState, and delete those with a different one
+     */
+    private void adoptExistingSubscriptions() {
+        String accessToken = appTokenService.getAccessToken();
+        JsonNode existing = graphApiService.fetchJson(accessToken, "/subscriptions");
+        if (existing == null || !existing.has("value")) {
+            return;
+        }
+        Set<String> resources = new HashSet<>();
+        for (String resource : settings.getResources().split(",")) {
+            resources.add(resource.trim());
+        }
+        for (JsonNode subscription : existing.get("value")) {
+            if (!settings.getNotificationUrl().equals(GraphMappers.textOrNull(subscription, "notificationUrl"))) {
+                continue;
+            }
+            String id = subscription.get("id").asText();
+            String state = GraphMappers.textOrNull(subscription, "clientState");
+            String resource = GraphMappers.textOrNull(subscription, "resource");
+            String expiresAt = GraphMappers.textOrNull(subscription, "expirationDateTime");
+            if (state == null) {
+                continue;
+            }
+            if (!isValidClientState(state)) {
+                graphApiService.sendJson(accessToken, HttpMethod.DELETE, "/subscriptions/" + id, null);
+            } else if (resources.contains(resource) && expiresAt != null) {
+                subscriptions.putIfAbsent(resource, new Subscription(id, resource, Instant.parse(expiresAt)));
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Delta sync of the directory cache, see {@link DirectorySyncService} (prefix "graph.sync")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.sync")
+public class SyncProperties {
+    
+    private boolean enabled = true;
+    private long initialDelay = 0;
+    private long interval = 60000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+    
+    public void setInitialDelay(long initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+    
+    public long getInterval() {
+        return interval;
+    }
+    
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+}
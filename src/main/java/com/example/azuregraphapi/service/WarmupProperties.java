@@ -0,0 +1,49 @@
+package com.example.azuregraphapi.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Startup warm-up before readiness, see {@link WarmupService} (prefix "graph.warmup")
+ */
+@Component
+@ConfigurationProperties(prefix = "graph.warmup")
+public class WarmupProperties {
+    
+    private boolean enabled = true;
+    private long timeout = 30000;
+    private int connections = 4;
+    private int mappingIterations = 2000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public long getTimeout() {
+        return timeout;
+    }
+    
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+    
+    public int getConnections() {
+        return connections;
+    }
+    
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+    
+    public int getMappingIterations() {
+        return mappingIterations;
+    }
+    
+    public void setMappingIterations(int mappingIterations) {
+        this.mappingIterations = mappingIterations;
+    }
+}
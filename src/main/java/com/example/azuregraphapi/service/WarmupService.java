@@ -0,0 +1,165 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.AzureProperties;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Warms the node up before it reports ready.
+ *
+ * Application runners complete before Spring Boot switches the readiness state to ACCEPTING_TRAFFIC,
+ * so /actuator/health/readiness stays OUT_OF_SERVICE while this runs. Warm-up opens pooled connections
+ * to the token and Graph hosts, preloads directory roles and security groups with the app-only
+ * credential, and runs the Graph-to-DTO mapping and Jackson serialization until they are compiled.
+ * Failures are logged and never keep the node from becoming ready; the whole phase is bounded by
+ * graph.warmup.timeout.
+ */
+@Component
+public class WarmupService implements ApplicationRunner {
+
+    private static final String SAMPLE_USERS = "{\"value\":[{\"id\":\"00000000-0000-0000-0000-000000000001\","
+            + "\"displayName\":\"Warm Up\",\"userPrincipalName\":\"warmup@example.com\",\"mail\":\"warmup@example.com\","
+            + "\"jobTitle\":\"Engineer\",\"department\":\"IT\",\"accountEnabled\":true,"
+            + "\"createdDateTime\":\"2024-01-01T00:00:00Z\",\"userType\":\"Member\"}]}";
+    private static final String SAMPLE_MEMBER_OF = "{\"value\":["
+            + "{\"@odata.type\":\"#microsoft.graph.group\",\"id\":\"g1\",\"displayName\":\"Group\",\"groupTypes\":[\"Unified\"]},"
+            + "{\"@odata.type\":\"#microsoft.graph.directoryRole\",\"id\":\"r1\",\"displayName\":\"Role\"}]}";
+
+    private final GraphApiService graphApiService;
+    private final AppTokenService appTokenService;
+    private final DirectoryCache directoryCache;
+    private final WarmupProperties settings;
+    private final SyncProperties syncProperties;
+    private final AzureProperties azureProperties;
+    private final WebClient graphWebClient;
+    private final WebClient loginWebClient;
+    private final ObjectMapper objectMapper;
+
+    public WarmupService(GraphApiService graphApiService, AppTokenService appTokenService,
+                         DirectoryCache directoryCache, WarmupProperties warmupProperties,
+                         SyncProperties syncProperties,
+                         AzureProperties azureProperties, WebClient graphWebClient,
+                         WebClient loginWebClient, ObjectMapper objectMapper) {
+        this.graphApiService = graphApiService;
+        this.appTokenService = appTokenService;
+        this.directoryCache = directoryCache;
+        this.settings = warmupProperties;
+        this.syncProperties = syncProperties;
+        this.azureProperties = azureProperties;
+        this.graphWebClient = graphWebClient;
+        this.loginWebClient = loginWebClient;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+
+        Mono<Void> connections = warmLoginConnection().then(Mono.fromCallable(appTokenService::getAccessToken)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(accessToken -> Mono.when(warmGraphConnections(accessToken, settings.getConnections()),
+                        preloadDirectory(accessToken))))
+                .onErrorResume(e -> {
+                    System.out.println("Warning: Connection warm-up incomplete - " + e.getMessage());
+                    return Mono.empty();
+                });
+        Mono<Void> mapping = Mono.fromRunnable(() -> warmMapping(settings.getMappingIterations()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+
+        try {
+            Mono.when(connections, mapping).block(Duration.ofMillis(settings.getTimeout()));
+        } catch (Exception e) {
+            System.out.println("Warning: Warm-up did not finish - " + e.getMessage());
+        }
+        System.out.println("Warm-up finished in " + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    /**
+     * DNS and TLS to the login host through the public JWKS document, which needs no credential
+     */
+    private Mono<Void> warmLoginConnection() {
+        String jwkSetUri = azureProperties.getProvider().getAzure().getJwkSetUri();
+        if (jwkSetUri == null) {
+            return Mono.empty();
+        }
+        return loginWebClient.get()
+                .uri(jwkSetUri)
+                .retrieve()
+                .toBodilessEntity()
+                .then()
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    /**
+     * Open several pooled connections to Graph with concurrent lightweight requests
+     */
+    private Mono<Void> warmGraphConnections(String accessToken, int connections) {
+        return Flux.range(0, connections)
+                .flatMap(i -> graphWebClient.get()
+                        .uri("/organization?$select=id")
+                        .header("Authorization", "Bearer " + accessToken)
+                        .retrieve()
+                        .toBodilessEntity()
+                        .onErrorResume(e -> Mono.empty()), connections)
+                .then();
+    }
+
+    /**
+     * Load directory roles and security groups into the cache unless a snapshot already provided them.
+     * Preloaded entries are only served while delta sync keeps them current.
+     */
+    private Mono<Void> preloadDirectory(String accessToken) {
+        boolean cacheable = syncProperties.isEnabled();
+        Mono<Void> roles = Mono.fromRunnable(() -> {
+            List<RoleDTO> directoryRoles = graphApiService.getDirectoryRoles(accessToken);
+            if (cacheable && !directoryCache.isRolesLoaded()) {
+                directoryRoles.forEach(directoryCache::putRole);
+                directoryCache.markRolesLoaded();
+            }
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+        Mono<Void> groups = Mono.fromRunnable(() -> {
+            List<GroupDTO> securityGroups = graphApiService.getSecurityGroups(accessToken, null);
+            if (cacheable && !directoryCache.isGroupsLoaded()) {
+                securityGroups.forEach(group -> directoryCache.putGroup(group, true));
+                directoryCache.markGroupsLoaded();
+            }
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+        return Mono.when(roles, groups)
+                .onErrorResume(e -> {
+                    System.out.println("Warning: Could not preload roles and groups - " + e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private void warmMapping(int iterations) {
+        try {
+            JsonNode usersPage = objectMapper.readTree(SAMPLE_USERS);
+            JsonNode memberOf = objectMapper.readTree(SAMPLE_MEMBER_OF);
+            for (int i = 0; i < iterations; i++) {
+                List<UserDTO> users = graphApiService.exerciseMapping(usersPage, memberOf);
+                objectMapper.writeValueAsBytes(users);
+                objectMapper.writeValueAsBytes(users.get(0).getGroups());
+                objectMapper.writeValueAsBytes(new RoleDTO("r1", "Role", null));
+            }
+        } catch (Exception e) {
+            System.out.println("Warning: Mapping warm-up failed - " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.azuregraphapi.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTests {
+
+	private AdaptiveLimiter limiter(int initialLimit) {
+		LimiterProperties.Bulkhead settings = new LimiterProperties.Bulkhead(initialLimit, 1, 10, 10, 5000);
+		return new AdaptiveLimiter("test", settings, 1000, 0.5, tenant -> 1);
+	}
+
+	@Test
+	void throttlingHalvesTheLimit() {
+		AdaptiveLimiter limiter = limiter(8);
+		limiter.acquire("t").block().complete(true);
+		assertEquals(4, limiter.getLimit());
+	}
+
+	@Test
+	void fastCallsRaiseTheLimit() {
+		AdaptiveLimiter limiter = limiter(2);
+		for (int i = 0; i < 4; i++) {
+			limiter.acquire("t").block().complete(false);
+		}
+		assertTrue(limiter.getLimit() >= 3);
+	}
+
+	@Test
+	void waitersAreReleasedFairlyAcrossTenants() {
+		AdaptiveLimiter limiter = limiter(1);
+		AdaptiveLimiter.Permit running = limiter.acquire("noisy").block();
+
+		List<String> order = new ArrayList<>();
+		List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+		for (String tenant : List.of("noisy", "noisy", "noisy", "quiet")) {
+			limiter.acquire(tenant).subscribe(permit -> {
+				order.add(tenant);
+				permits.add(permit);
+			});
+		}
+		assertEquals(4, limiter.getQueued());
+
+		running.cancel();
+		while (order.size() < 4) {
+			permits.get(order.size() - 1).cancel();
+		}
+		// The quiet tenant does not wait behind the noisy tenant's backlog; on equal passes the tenant
+		// that queued first goes first
+		assertEquals(List.of("noisy", "quiet", "noisy", "noisy"), order);
+	}
+
+	private AdaptiveLimiter prioritized(int initialLimit, long bulkAging) {
+		LimiterProperties.Bulkhead settings = new LimiterProperties.Bulkhead(initialLimit, 1, 10, 10, 5000);
+		return new AdaptiveLimiter("test", settings, List.of(
+				new AdaptiveLimiter.PriorityClass("interactive", 1, 1, 0, 5000),
+				new AdaptiveLimiter.PriorityClass("bulk", 1, 0, bulkAging, 5000)),
+				1000, 0.5, tenant -> 1);
+	}
+
+	@Test
+	void reservedSlotsStayFreeForInteractiveCalls() {
+		AdaptiveLimiter limiter = prioritized(3, 1000);
+		AdaptiveLimiter.Permit first = limiter.acquire("bulk", "t").block();
+		AdaptiveLimiter.Permit second = limiter.acquire("bulk", "t").block();
+		List<AdaptiveLimiter.Permit> waiting = new ArrayList<>();
+		limiter.acquire("bulk", "t").subscribe(waiting::add);
+		assertEquals(1, limiter.getQueued("bulk"));
+
+		// The third slot is reserved, the interactive call does not queue behind bulk work
+		AdaptiveLimiter.Permit login = limiter.acquire("interactive", "t").block(Duration.ofMillis(100));
+		assertEquals(1, limiter.getInFlight("interactive"));
+		login.complete(false);
+		first.complete(false);
+		assertEquals(1, waiting.size());
+		second.cancel();
+		waiting.get(0).cancel();
+	}
+
+	@Test
+	void agedBulkCallsOvertakeNewerInteractiveCalls() {
+		AdaptiveLimiter limiter = prioritized(2, 0);
+		AdaptiveLimiter.Permit running = limiter.acquire("interactive", "t").block();
+		AdaptiveLimiter.Permit other = limiter.acquire("interactive", "t").block();
+
+		List<String> order = new ArrayList<>();
+		List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+		for (String priorityClass : List.of("bulk", "interactive")) {
+			limiter.acquire(priorityClass, "t").subscribe(permit -> {
+				order.add(priorityClass);
+				permits.add(permit);
+			});
+		}
+		running.cancel();
+		other.cancel();
+		permits.forEach(AdaptiveLimiter.Permit::cancel);
+		// Without an aging offset the earlier bulk call goes first
+		assertEquals(List.of("bulk", "interactive"), order);
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.example.azuregraphapi.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServlet;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.csrf.CsrfFilter;
+import org.springframework.security.web.csrf.CsrfTokenRequestAttributeHandler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CsrfCookieFilterTests {
+
+	@Test
+	void cookieTokenIsIssuedAndAcceptedWhenEchoedInTheHeader() throws Exception {
+		MockHttpServletRequest get = new MockHttpServletRequest("GET", "/api/user/profile");
+		MockHttpServletResponse issued = new MockHttpServletResponse();
+		csrfFilter().doFilter(get, issued, new MockFilterChain(new HttpServlet() {},
+				new CsrfCookieFilter()));
+		Cookie token = issued.getCookie("XSRF-TOKEN");
+		assertNotNull(token);
+		assertNull(get.getSession(false));
+
+		MockHttpServletRequest forged = new MockHttpServletRequest("POST", "/api/users/lookup");
+		forged.setCookies(token);
+		MockHttpServletResponse rejected = new MockHttpServletResponse();
+		csrfFilter().doFilter(forged, rejected, new MockFilterChain());
+		assertEquals(403, rejected.getStatus());
+
+		MockHttpServletRequest echoed = new MockHttpServletRequest("POST", "/api/users/lookup");
+		echoed.setCookies(token);
+		echoed.addHeader("X-XSRF-TOKEN", token.getValue());
+		MockHttpServletResponse accepted = new MockHttpServletResponse();
+		csrfFilter().doFilter(echoed, accepted, new MockFilterChain());
+		assertEquals(200, accepted.getStatus());
+	}
+
+	private static CsrfFilter csrfFilter() {
+		CsrfFilter filter = new CsrfFilter(CookieCsrfTokenRepository.withHttpOnlyFalse());
+		filter.setRequestHandler(new CsrfTokenRequestAttributeHandler());
+		return filter;
+	}
+
+}
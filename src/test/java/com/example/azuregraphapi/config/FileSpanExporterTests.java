@@ -0,0 +1,51 @@
+package com.example.azuregraphapi.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileSpanExporterTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void writesOneJsonLinePerSpan() throws Exception {
+		TracingProperties properties = new TracingProperties();
+		Path file = tempDir.resolve("spans.jsonl");
+		properties.setFile(file.toString());
+		FileSpanExporter exporter = new FileSpanExporter(properties);
+
+		try (SdkTracerProvider provider = SdkTracerProvider.builder()
+				.addSpanProcessor(SimpleSpanProcessor.create(exporter)).build()) {
+			Tracer tracer = provider.get("test");
+			Span parent = tracer.spanBuilder("graph users.page").startSpan();
+			tracer.spanBuilder("http get").setParent(Context.current().with(parent)).startSpan()
+					.setAttribute("graph.user.id", "u1")
+					.end();
+			parent.end();
+		}
+
+		List<String> lines = Files.readAllLines(file);
+		assertEquals(2, lines.size());
+		JsonNode child = new ObjectMapper().readTree(lines.get(0));
+		JsonNode parent = new ObjectMapper().readTree(lines.get(1));
+		assertEquals("http get", child.get("name").asText());
+		assertEquals("u1", child.get("attributes").get("graph.user.id").asText());
+		assertEquals(parent.get("spanId").asText(), child.get("parentSpanId").asText());
+		assertEquals(parent.get("traceId").asText(), child.get("traceId").asText());
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.example.azuregraphapi.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTests {
+
+	private static final long SECOND = 1_000_000_000L;
+
+	private RateLimiter limiter(int maxBuckets) {
+		RateLimitProperties properties = new RateLimitProperties();
+		properties.setDefaults(new RateLimitProperties.Bucket(3, 1));
+		properties.getEndpoints().put("/api/users", new RateLimitProperties.Bucket(1, 0.5));
+		properties.setMaxBuckets(maxBuckets);
+		return new RateLimiter(properties, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void allowsBurstThenRefillsAtTheConfiguredRate() {
+		RateLimiter limiter = limiter(100);
+		long now = 0;
+		for (int i = 0; i < 3; i++) {
+			assertTrue(limiter.tryAcquire("user:a", "/api/roles", now).allowed());
+		}
+		RateLimiter.Decision rejected = limiter.tryAcquire("user:a", "/api/groups", now);
+		assertFalse(rejected.allowed());
+		assertEquals(1000, rejected.retryAfterMillis());
+
+		assertTrue(limiter.tryAcquire("user:a", "/api/roles", now + SECOND).allowed());
+		assertFalse(limiter.tryAcquire("user:a", "/api/roles", now + SECOND).allowed());
+		// Other clients and endpoints with their own limit have their own buckets
+		assertTrue(limiter.tryAcquire("user:b", "/api/roles", now).allowed());
+		assertTrue(limiter.tryAcquire("user:a", "/api/users", now).allowed());
+		assertEquals(2000, limiter.tryAcquire("user:a", "/api/users", now).retryAfterMillis());
+	}
+
+	@Test
+	void evictsIdleBucketsThenTheOnesClosestToFullWhenAtMaxBuckets() {
+		RateLimiter limiter = limiter(2);
+		assertTrue(limiter.tryAcquire("ip:1", "/api/roles", 0).allowed());
+		for (int i = 0; i < 3; i++) {
+			assertTrue(limiter.tryAcquire("ip:2", "/api/roles", SECOND / 2).allowed());
+		}
+		// ip:1 is full again first and makes room; ip:2 keeps its empty bucket
+		assertTrue(limiter.tryAcquire("ip:3", "/api/roles", SECOND / 2).allowed());
+		assertEquals(2, limiter.size());
+		assertFalse(limiter.tryAcquire("ip:2", "/api/roles", SECOND / 2).allowed());
+
+		// Idle buckets are dropped before any bucket in use; ip:2 only got one token back since
+		assertTrue(limiter.tryAcquire("ip:4", "/api/roles", 2 * SECOND).allowed());
+		assertEquals(2, limiter.size());
+		assertTrue(limiter.tryAcquire("ip:2", "/api/roles", 2 * SECOND).allowed());
+		assertFalse(limiter.tryAcquire("ip:2", "/api/roles", 2 * SECOND).allowed());
+
+		// Buckets are full again, and dropped, once their tokens are refilled
+		limiter.evictIdle(5 * SECOND);
+		assertEquals(0, limiter.size());
+	}
+}
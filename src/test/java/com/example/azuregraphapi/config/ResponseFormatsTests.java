@@ -0,0 +1,74 @@
+package com.example.azuregraphapi.config;
+
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResponseFormatsTests {
+
+	private final ResponseFormats formats = new ResponseFormats(new ObjectMapper(), new Jackson2ObjectMapperBuilder());
+
+	@Test
+	void negotiatesByQualityAndFallsBackToJson() {
+		assertEquals(MediaType.APPLICATION_JSON, negotiate(null));
+		assertEquals(MediaType.APPLICATION_JSON, negotiate("text/html,application/xhtml+xml,*/*;q=0.8"));
+		assertEquals(ResponseFormats.CBOR, negotiate("application/cbor"));
+		assertEquals(ResponseFormats.SMILE, negotiate("application/json;q=0.5, application/x-jackson-smile"));
+		assertEquals(MediaType.APPLICATION_JSON, negotiate("application/x-protobuf"));
+	}
+
+	@Test
+	void binaryFormatsRoundTrip() throws Exception {
+		List<UserDTO> users = samplePage(20);
+		for (MediaType binary : List.of(ResponseFormats.SMILE, ResponseFormats.CBOR)) {
+			ObjectMapper mapper = formats.mapperFor(binary);
+			List<UserDTO> decoded = mapper.readValue(mapper.writeValueAsBytes(users), new TypeReference<List<UserDTO>>() {});
+			assertEquals(users.size(), decoded.size());
+			assertEquals(users.get(7).getUserPrincipalName(), decoded.get(7).getUserPrincipalName());
+			assertEquals(users.get(7).getGroups().get(2).getDisplayName(), decoded.get(7).getGroups().get(2).getDisplayName());
+		}
+	}
+
+	private MediaType negotiate(String accept) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		if (accept != null) {
+			request.addHeader("Accept", accept);
+		}
+		return formats.negotiate(request);
+	}
+
+	static List<UserDTO> samplePage(int size) {
+		List<GroupDTO> groups = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			GroupDTO group = new GroupDTO(UUID.randomUUID().toString(), "Group " + i, "Members of team " + i);
+			group.setGroupType("Security");
+			groups.add(group);
+		}
+		List<UserDTO> users = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			UserDTO user = new UserDTO(UUID.randomUUID().toString(), "User " + i,
+					"user" + i + "@contoso.com", "user" + i + "@contoso.com");
+			user.setJobTitle("Engineer");
+			user.setDepartment("Department " + (i % 12));
+			user.setAccountEnabled(true);
+			user.setUserType("Member");
+			user.setCreatedDateTime("2024-03-01T08:15:00Z");
+			user.setGroups(groups.subList(0, 3 + i % 10));
+			user.setRoles(List.of("User Administrator", "Global Reader"));
+			users.add(user);
+		}
+		return users;
+	}
+
+}
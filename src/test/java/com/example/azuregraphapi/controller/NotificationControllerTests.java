@@ -0,0 +1,107 @@
+package com.example.azuregraphapi.controller;
+
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.example.azuregraphapi.service.ChangeLogProperties;
+import com.example.azuregraphapi.service.NotificationProcessor;
+import com.example.azuregraphapi.service.NotificationProperties;
+import com.example.azuregraphapi.service.SessionProperties;
+import com.example.azuregraphapi.service.SubscriptionManager;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NotificationControllerTests {
+
+	private final ObjectMapper json = new ObjectMapper();
+	private final NotificationProperties settings = new NotificationProperties();
+	private NotificationProcessor processor;
+	private SubscriptionManager subscriptions;
+
+	@Test
+	void notificationsWithAnotherClientStateAreDropped() throws Exception {
+		NotificationController controller = controller(10);
+
+		ResponseEntity<?> response = controller.receive(json.readTree("{\"value\":["
+				+ notification("wrong-secret", "tenant", "Users/u1") + ","
+				+ "{\"changeType\":\"updated\",\"resource\":\"Users/u2\"}]}"));
+
+		assertEquals(202, response.getStatusCode().value());
+		assertEquals(0, processor.getQueued());
+	}
+
+	@Test
+	void notificationsOfOtherTenantsAreSkipped() throws Exception {
+		NotificationController controller = controller(10);
+
+		ResponseEntity<?> response = controller.receive(json.readTree("{\"value\":["
+				+ notification("secret", "other-tenant", "Users/u1") + ","
+				+ notification("secret", "TENANT", "Groups/g1") + "]}"));
+
+		assertEquals(202, response.getStatusCode().value());
+		assertEquals(1, processor.getQueued());
+	}
+
+	@Test
+	void fullQueueAsksGraphToRedeliver() throws Exception {
+		NotificationController controller = controller(1);
+
+		ResponseEntity<?> response = controller.receive(json.readTree("{\"value\":["
+				+ notification("secret", "tenant", "Users/u1") + ","
+				+ notification("secret", "tenant", "Users/u2") + "]}"));
+
+		assertEquals(503, response.getStatusCode().value());
+		assertEquals("30", response.getHeaders().getFirst("Retry-After"));
+	}
+
+	@Test
+	void lifecycleNotificationsGoToTheSubscriptionsOrTriggerASync() throws Exception {
+		NotificationController controller = controller(10);
+
+		controller.receive(json.readTree("{\"value\":["
+				+ "{\"clientState\":\"secret\",\"subscriptionId\":\"s1\",\"lifecycleEvent\":\"reauthorizationRequired\"},"
+				+ "{\"clientState\":\"secret\",\"subscriptionId\":\"s1\",\"lifecycleEvent\":\"missed\"}]}"));
+
+		Mockito.verify(subscriptions).onLifecycleEvent("s1", "reauthorizationRequired");
+		Mockito.verify(subscriptions, Mockito.never()).onLifecycleEvent("s1", "missed");
+		assertEquals(1, processor.getQueued());
+	}
+
+	@Test
+	void bodyWithoutNotificationsIsRejected() throws Exception {
+		assertEquals(400, controller(10).receive(json.readTree("{}")).getStatusCode().value());
+	}
+
+	private static String notification(String clientState, String tenantId, String resource) {
+		return "{\"clientState\":\"" + clientState + "\",\"tenantId\":\"" + tenantId + "\",\"changeType\":\"updated\","
+				+ "\"resource\":\"" + resource + "\"}";
+	}
+
+	/**
+	 * A controller whose processor is not started, so queued notifications stay queued
+	 */
+	private NotificationController controller(int queueCapacity) {
+		settings.setClientState("secret");
+		settings.setQueueCapacity(queueCapacity);
+		processor = new NotificationProcessor(null, null, null, settings);
+		subscriptions = Mockito.spy(new SubscriptionManager(null, null, settings, new SessionProperties(),
+				new ChangeLogProperties()));
+		Mockito.doNothing().when(subscriptions).onLifecycleEvent(Mockito.anyString(), Mockito.anyString());
+		TenantRegistry tenants = Mockito.mock(TenantRegistry.class);
+		Mockito.when(tenants.getDefault()).thenReturn(new TenantRegistry.Registration("default", "tenant", "client",
+				"secret", List.of(), null, null, 1));
+
+		NotificationController controller = new NotificationController();
+		ReflectionTestUtils.setField(controller, "notificationProcessor", processor);
+		ReflectionTestUtils.setField(controller, "subscriptionManager", subscriptions);
+		ReflectionTestUtils.setField(controller, "tenantRegistry", tenants);
+		ReflectionTestUtils.setField(controller, "notificationProperties", settings);
+		return controller;
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.example.azuregraphapi.controller;
+
+import com.example.azuregraphapi.config.GraphProperties;
+import com.example.azuregraphapi.config.SessionAuthenticationFilter;
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.example.azuregraphapi.dto.ChangeSetDTO;
+import com.example.azuregraphapi.dto.SessionDTO;
+import com.example.azuregraphapi.service.ChangeLog;
+import com.example.azuregraphapi.service.ChangeLogProperties;
+import com.example.azuregraphapi.service.CircuitBreakerProperties;
+import com.example.azuregraphapi.service.DirectoryCache;
+import com.example.azuregraphapi.service.GraphApiService;
+import com.example.azuregraphapi.service.GraphCircuitBreakers;
+import com.example.azuregraphapi.service.GraphHedger;
+import com.example.azuregraphapi.service.GraphQueryEngine;
+import com.example.azuregraphapi.service.HedgingProperties;
+import com.example.azuregraphapi.service.InMemoryChangeStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class UserControllerTests {
+
+	@Test
+	void changesAreRefusedToCallersWhoMayNotReadTheDirectory() {
+		UserController controller = controller();
+
+		ResponseEntity<?> refused = controller.getUserChanges(null, request("openid User.Read"), "ignored", null);
+		assertEquals(403, refused.getStatusCode().value());
+
+		ResponseEntity<?> allowed = controller.getUserChanges(null, request("User.Read Directory.Read.All"), null, null);
+		assertEquals(200, allowed.getStatusCode().value());
+		assertNotNull(((ChangeSetDTO) allowed.getBody()).getNextToken());
+	}
+
+	private static UserController controller() {
+		DirectoryCache cache = new DirectoryCache();
+		cache.markGroupsLoaded();
+		cache.markRolesLoaded();
+		cache.markLoaded();
+		TenantRegistry tenants = Mockito.mock(TenantRegistry.class);
+		TenantRegistry.Registration registration = new TenantRegistry.Registration("default", "tenant", "client",
+				"secret", List.of(), null, null, 1);
+		Mockito.when(tenants.resolve(ArgumentMatchers.any())).thenReturn(registration);
+		Mockito.when(tenants.isDefault(registration)).thenReturn(true);
+		GraphApiService graphApiService = new GraphApiService(null, new GraphProperties(), cache,
+				new GraphCircuitBreakers(new CircuitBreakerProperties()), tenants,
+				new GraphHedger(new HedgingProperties(), new SimpleMeterRegistry(), ObservationRegistry.NOOP),
+				null, ObservationRegistry.NOOP, null, Mockito.mock(GraphQueryEngine.class), null, null);
+		ChangeLogProperties settings = new ChangeLogProperties();
+
+		UserController controller = new UserController();
+		ReflectionTestUtils.setField(controller, "graphApiService", graphApiService);
+		ReflectionTestUtils.setField(controller, "directoryCache", cache);
+		ReflectionTestUtils.setField(controller, "changeLog",
+				new ChangeLog(cache, new InMemoryChangeStore(settings), settings));
+		return controller;
+	}
+
+	private static MockHttpServletRequest request(String scopes) {
+		String claims = "{\"scp\":\"" + scopes + "\"}";
+		String accessToken = "e30." + Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".signature";
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users/changes");
+		request.setAttribute(SessionAuthenticationFilter.SESSION_ATTRIBUTE,
+				new SessionDTO("u1", "user@contoso.com", null, "default", accessToken, 0, Long.MAX_VALUE));
+		return request;
+	}
+
+}
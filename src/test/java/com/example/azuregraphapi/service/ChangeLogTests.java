@@ -0,0 +1,119 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.ChangeSetDTO;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeLogTests {
+
+	@Test
+	void jdbcTokensAreValidOnEveryNode() {
+		JdbcTemplate database = database();
+		ChangeLogProperties settings = new ChangeLogProperties();
+		settings.setMaxEntries(2);
+		DirectoryCache cache = loadedCache();
+		ChangeLog a = new ChangeLog(cache, store(database, settings), settings);
+		ChangeLog b = new ChangeLog(cache, store(database, settings), settings);
+
+		String start = a.currentToken();
+		a.record(ChangeLog.USER, "u1");
+		b.record(ChangeLog.USER, "u2");
+		// Applied by both nodes, kept once
+		b.record(ChangeLog.USER, "u1");
+
+		ChangeSetDTO changes = b.getChangesSince(start, null);
+		assertEquals(List.of("u2", "u1"), changes.getUsers().stream().map(UserDTO::getId).toList());
+		assertTrue(a.getChangesSince(changes.getNextToken(), null).getUsers().isEmpty());
+
+		a.record(ChangeLog.USER, "u3");
+		store(database, settings).trim();
+		assertThrows(ChangeLog.TokenExpiredException.class, () -> b.getChangesSince(start, null));
+		assertEquals(List.of("u3"), a.getChangesSince(changes.getNextToken(), null).getUsers().stream()
+				.map(UserDTO::getId).toList());
+	}
+
+	@Test
+	void readerFollowingInterleavedAppendersMissesNoChange() {
+		JdbcTemplate database = database();
+		ChangeLogProperties settings = new ChangeLogProperties();
+		DirectoryCache cache = loadedCache();
+		ChangeLog reader = new ChangeLog(cache, store(database, settings), settings);
+		String token = reader.currentToken();
+
+		List<Thread> appenders = List.of("a", "b").stream().map(node -> {
+			ChangeLog changeLog = new ChangeLog(cache, store(database, settings), settings);
+			return new Thread(() -> {
+				for (int i = 0; i < 200; i++) {
+					changeLog.record(ChangeLog.USER, node + i);
+				}
+			});
+		}).toList();
+		appenders.forEach(Thread::start);
+
+		// Follow the log while the appenders run, then once more after they are done
+		Set<String> delivered = new HashSet<>();
+		boolean appending = true;
+		while (appending) {
+			appending = appenders.stream().anyMatch(Thread::isAlive);
+			ChangeSetDTO changes = reader.getChangesSince(token, null);
+			delivered.addAll(changes.getDeletedUserIds());
+			token = changes.getNextToken();
+		}
+		assertEquals(400, delivered.size());
+	}
+
+	@Test
+	void removedGroupIsAChangeOfItsMembers() {
+		DirectoryCache cache = loadedCache();
+		cache.putGroup(new GroupDTO("g1", "Sales", null), true);
+		cache.addGroupMember("g1", "u1");
+		ChangeLogProperties settings = new ChangeLogProperties();
+		ChangeLog changeLog = new ChangeLog(cache, new InMemoryChangeStore(settings), settings);
+		String start = changeLog.currentToken();
+
+		new NotificationProcessor(cache, changeLog, null, new NotificationProperties())
+				.apply(List.of(new NotificationProcessor.Change(NotificationProcessor.TYPE_GROUP, "g1", "deleted")));
+
+		ChangeSetDTO changes = changeLog.getChangesSince(start, null);
+		assertEquals(List.of("g1"), changes.getDeletedGroupIds());
+		assertEquals("u1", changes.getUsers().get(0).getId());
+		assertTrue(changes.getUsers().get(0).getGroups().isEmpty());
+	}
+
+	private static JdbcTemplate database() {
+		return new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+	}
+
+	private static JdbcChangeStore store(JdbcTemplate database, ChangeLogProperties settings) {
+		JdbcChangeStore store = new JdbcChangeStore(database,
+				new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource())), settings);
+		store.createTables();
+		return store;
+	}
+
+	private static DirectoryCache loadedCache() {
+		DirectoryCache cache = new DirectoryCache();
+		for (String id : List.of("u1", "u2", "u3")) {
+			cache.putUser(new UserDTO(id, "User " + id, id + "@contoso.com", null));
+		}
+		cache.markGroupsLoaded();
+		cache.markRolesLoaded();
+		cache.markLoaded();
+		return cache;
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.example.azuregraphapi.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlLeasesTests {
+
+	private DriverManagerDataSource dataSource;
+
+	@BeforeEach
+	void createDatabase() {
+		dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+	}
+
+	@Test
+	void nodesSplitShardsAndRetryReleasedOnes() {
+		CrawlLeases a = node("a");
+		CrawlLeases b = node("b");
+
+		assertTrue(a.openRound(1, 0));
+		assertFalse(b.openRound(1, 0));
+		assertTrue(a.publish(1, List.of(List.of("u1", "u2"), List.of("u3"), List.of()), "{}".getBytes()));
+
+		CrawlLeases.Shard first = a.claimShard(1, 0);
+		CrawlLeases.Shard second = b.claimShard(1, 0);
+		assertNotEquals(first.shard(), second.shard());
+		assertEquals(List.of("u1", "u2"), first.userIds());
+
+		a.releaseShard(1, first.shard());
+		assertTrue(b.completeShard(1, second.shard(), "[]".getBytes()));
+		assertNull(a.finishRound(1, 0));
+		// Untried shards go first, then the released one
+		assertEquals(2, b.claimShard(1, 0).shard());
+		assertTrue(b.completeShard(1, 2, "[]".getBytes()));
+		assertEquals(first.shard(), b.claimShard(1, 0).shard());
+		assertTrue(b.completeShard(1, first.shard(), "[]".getBytes()));
+
+		assertNull(a.claimShard(1, 0));
+		assertEquals(CrawlLeases.DONE, a.finishRound(1, 10));
+		assertNull(b.finishRound(1, 10));
+		assertEquals(List.of(0, 1, 2), b.doneShards(1));
+		assertEquals(CrawlLeases.DONE, b.latestRound().state());
+	}
+
+	@Test
+	void expiredLeasesMoveToAnotherNodeUntilAttemptsRunOut() {
+		CrawlLeases a = node("a");
+		CrawlLeases b = node("b");
+		assertTrue(a.openRound(1, 0));
+		assertTrue(a.publish(1, List.of(List.of("u1")), "{}".getBytes()));
+
+		assertEquals(0, a.claimShard(1, 0).shard());
+		assertNull(b.claimShard(1, 500));
+		assertEquals(0, b.claimShard(1, 1001).shard());
+		assertFalse(a.completeShard(1, 0, "[]".getBytes()));
+
+		// b stops too; the second expiry exhausts max-attempts and fails the round
+		assertNull(a.claimShard(1, 2002));
+		assertEquals(CrawlLeases.FAILED, a.finishRound(1, 2002));
+		assertEquals(List.of(), a.doneShards(1));
+		assertNull(a.latestRound(CrawlLeases.DONE));
+
+		// The next round starts over and, once DONE, is the latest DONE round
+		assertTrue(b.openRound(2, 3000));
+		assertTrue(b.publish(2, List.of(List.of("u1")), "{}".getBytes()));
+		assertEquals(0, b.claimShard(2, 3000).shard());
+		assertTrue(b.completeShard(2, 0, "[]".getBytes()));
+		assertEquals(CrawlLeases.DONE, b.finishRound(2, 3000));
+		assertEquals(2, a.latestRound(CrawlLeases.DONE).id());
+		assertEquals(2, a.latestRound().id());
+	}
+
+	private CrawlLeases node(String nodeId) {
+		CrawlProperties properties = new CrawlProperties();
+		properties.setNodeId(nodeId);
+		properties.setLeaseDuration(1000);
+		properties.setMaxAttempts(2);
+		CrawlLeases leases = new CrawlLeases(new JdbcTemplate(dataSource),
+				new TransactionTemplate(new DataSourceTransactionManager(dataSource)), properties);
+		leases.createTables();
+		return leases;
+	}
+
+}
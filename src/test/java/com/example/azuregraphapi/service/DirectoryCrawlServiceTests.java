@@ -0,0 +1,228 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectoryCrawlServiceTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final DriverManagerDataSource dataSource =
+			new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+
+	private final DirectorySyncService sync = Mockito.mock(DirectorySyncService.class);
+
+	private long interval = 3600000;
+	private long retryDelay = 0;
+	/** Runs while the users are listed, standing in for delta sync */
+	private Runnable duringListing = () -> { };
+
+	@Test
+	void failedShardIsFinishedByAnotherNodeAndBothMergeEverything() throws Exception {
+		DirectoryCache cacheA = new DirectoryCache();
+		DirectoryCache cacheB = new DirectoryCache();
+		DirectoryCrawlService a = node("a", cacheA, new AtomicInteger());
+		AtomicInteger failures = new AtomicInteger(1);
+		DirectoryCrawlService b = node("b", cacheB, failures);
+
+		a.poll(); // opens the round and lists it
+		b.poll(); // crawls shards until the failing one, which it gives back
+		assertEquals(0, failures.get());
+		a.poll(); // crawls the rest, including the released shard, and finishes the round
+		b.poll(); // merges what a crawled
+
+		for (DirectoryCache cache : List.of(cacheA, cacheB)) {
+			assertTrue(cache.isLoaded());
+			assertEquals(9, cache.getUsers().size());
+			assertEquals(List.of("Engineering"), cache.getUserGroups("u3").stream().map(GroupDTO::getDisplayName).toList());
+			assertEquals(List.of("Global Reader"), cache.getUserRoles("u7"));
+			assertEquals(9, cache.getGroupMembers("g1").size());
+		}
+	}
+
+	@Test
+	void roundWithAShardOutOfAttemptsFailsAndIsRetried() throws Exception {
+		DirectoryCache cache = new DirectoryCache();
+		AtomicInteger failures = new AtomicInteger(3);
+		DirectoryCrawlService node = node("a", cache, failures);
+
+		node.poll(); // opens and lists round 1
+		for (int i = 0; i < 3; i++) {
+			node.poll(); // the shard of u3 fails on each of its 3 attempts
+		}
+		assertFalse(cache.isLoaded());
+		assertNull(cache.getUser("u3"));
+
+		node.poll(); // retry-delay 0: opens and lists round 2
+		node.poll(); // crawls it
+		assertTrue(cache.isLoaded());
+		assertEquals(9, cache.getUsers().size());
+	}
+
+	@Test
+	void doneRoundRemovesWhatItDidNotFindAndRestartsDeltaSyncFromBeforeTheListing() throws Exception {
+		DirectoryCache cache = new DirectoryCache();
+		UserDTO stale = new UserDTO();
+		stale.setId("gone");
+		stale.setUserPrincipalName("gone@contoso.com");
+		cache.putUser(stale);
+		GroupDTO staleGroup = new GroupDTO();
+		staleGroup.setId("old-group");
+		cache.putGroup(staleGroup, true);
+		DirectoryCrawlService node = node("a", cache, new AtomicInteger());
+
+		node.poll();
+		node.poll();
+
+		assertTrue(cache.isLoaded());
+		assertNull(cache.getUser("gone"));
+		assertNull(cache.getGroup("old-group"));
+		// u9 was deleted between the listing and its read
+		assertNull(cache.getUser("u9"));
+		assertEquals(9, cache.getUsers().size());
+		assertEquals(Set.of("g1"), cache.getGroups().stream().map(GroupDTO::getId).collect(Collectors.toSet()));
+		Mockito.verify(sync).restartFrom("/users/delta?$deltatoken=before-listing",
+				"/groups/delta?$deltatoken=before-listing", "/directoryRoles/delta?$deltatoken=before-listing");
+	}
+
+	@Test
+	void objectsAddedWhileTheRoundIsListedAreKept() throws Exception {
+		DirectoryCache cache = new DirectoryCache();
+		UserDTO stale = new UserDTO();
+		stale.setId("gone");
+		cache.putUser(stale);
+		duringListing = () -> {
+			UserDTO created = new UserDTO();
+			created.setId("created-during-listing");
+			cache.putUser(created);
+		};
+		DirectoryCrawlService node = node("a", cache, new AtomicInteger());
+
+		node.poll();
+		node.poll();
+
+		assertTrue(cache.isLoaded());
+		assertNull(cache.getUser("gone"));
+		assertEquals("created-during-listing", cache.getUser("created-during-listing").getId());
+	}
+
+	@Test
+	void failedRoundDoesNotRollBackTheCompletedRound() throws Exception {
+		interval = 0;
+		retryDelay = 3600000;
+		DirectoryCache cache = new DirectoryCache();
+		AtomicInteger failures = new AtomicInteger();
+		DirectoryCrawlService node = node("a", cache, failures);
+
+		node.poll(); // opens and lists round 1
+		node.poll(); // crawls and completes it
+		assertTrue(cache.isLoaded());
+
+		// Delta sync renames u3 afterwards, and the shard of u3 fails in round 2
+		UserDTO renamed = DirectoryCache.copyOf(cache.getUser("u3"));
+		renamed.setDisplayName("Renamed");
+		cache.putUser(renamed);
+		failures.set(3);
+		for (int i = 0; i < 6; i++) {
+			node.poll();
+		}
+
+		assertEquals("Renamed", cache.getUser("u3").getDisplayName());
+		Mockito.verify(sync, Mockito.times(1)).restartFrom(ArgumentMatchers.any(), ArgumentMatchers.any(),
+				ArgumentMatchers.any());
+	}
+
+	/**
+	 * Ten users u0..u9 in group g1 and role r1. The memberOf read of u3 fails while failures is
+	 * positive, each attempt consuming one; u9 is deleted after the listing.
+	 */
+	private DirectoryCrawlService node(String nodeId, DirectoryCache cache, AtomicInteger failures) throws Exception {
+		CrawlProperties properties = new CrawlProperties();
+		properties.setEnabled(true);
+		properties.setNodeId(nodeId);
+		properties.setShards(4);
+		properties.setInterval(interval);
+		properties.setRetryDelay(retryDelay);
+		CrawlLeases leases = new CrawlLeases(new JdbcTemplate(dataSource),
+				new TransactionTemplate(new DataSourceTransactionManager(dataSource)), properties);
+		leases.createTables();
+
+		StringBuilder users = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			users.append(i > 0 ? "," : "").append("{\"id\":\"u").append(i).append("\"}");
+		}
+		GraphApiService graph = Mockito.mock(GraphApiService.class);
+		JsonNode listing = MAPPER.readTree("{\"value\":[" + users + "]}");
+		Mockito.when(graph.fetchJson("token", "/users?$select=id&$top=999")).thenAnswer(invocation -> {
+			duringListing.run();
+			return listing;
+		});
+		Mockito.when(graph.fetchJson(ArgumentMatchers.eq("token"), ArgumentMatchers.startsWith("/groups")))
+				.thenReturn(MAPPER.readTree("{\"value\":[{\"id\":\"g1\",\"displayName\":\"Engineering\",\"securityEnabled\":true}]}"));
+		Mockito.when(graph.fetchJson(ArgumentMatchers.eq("token"), ArgumentMatchers.startsWith("/directoryRoles")))
+				.thenReturn(MAPPER.readTree("{\"value\":[{\"id\":\"r1\",\"displayName\":\"Global Reader\"}]}"));
+		Mockito.when(graph.fetchJson(ArgumentMatchers.eq("token"), ArgumentMatchers.endsWith("&$deltatoken=latest")))
+				.thenAnswer(invocation -> MAPPER.createObjectNode().put("@odata.deltaLink",
+						invocation.<String>getArgument(1).split("\\?")[0] + "?$deltatoken=before-listing"));
+		Mockito.when(graph.fetchJson(ArgumentMatchers.eq("token"), ArgumentMatchers.startsWith("/users/u3/memberOf")))
+				.thenAnswer(invocation -> {
+					failures.decrementAndGet();
+					throw WebClientResponseException.create(HttpStatus.TOO_MANY_REQUESTS.value(), "Too Many Requests",
+							null, null, null);
+				});
+		Mockito.when(graph.fetchJson(ArgumentMatchers.eq("token"), ArgumentMatchers.startsWith("/users/u9")))
+				.thenThrow(WebClientResponseException.create(HttpStatus.NOT_FOUND.value(), "Not Found", null, null, null));
+
+		GraphQueryEngine queries = Mockito.mock(GraphQueryEngine.class);
+		Mockito.when(queries.batch(ArgumentMatchers.eq("token"), ArgumentMatchers.anyList())).thenAnswer(invocation -> {
+			List<JsonNode> responses = new ArrayList<>();
+			for (String url : invocation.<List<String>>getArgument(1)) {
+				String id = url.split("/")[2].split("\\?")[0];
+				if ("u9".equals(id)) {
+					responses.add(null);
+				} else if (url.contains("/memberOf")) {
+					responses.add("u3".equals(id) && failures.get() > 0 ? null : MAPPER.readTree(
+							"{\"value\":[{\"@odata.type\":\"#microsoft.graph.group\",\"id\":\"g1\"},"
+									+ "{\"@odata.type\":\"#microsoft.graph.directoryRole\",\"id\":\"r1\"}]}"));
+				} else {
+					responses.add(MAPPER.readTree("{\"id\":\"" + id + "\",\"displayName\":\"User " + id + "\"}"));
+				}
+			}
+			return Mono.just(responses);
+		});
+
+		AppTokenService tokens = Mockito.mock(AppTokenService.class);
+		Mockito.when(tokens.getAccessToken()).thenReturn("token");
+		DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+		beans.registerSingleton("directorySyncService", sync);
+		return new DirectoryCrawlService(leases, graph, queries, tokens, cache,
+				new ChangeLog(cache, new InMemoryChangeStore(new ChangeLogProperties()), new ChangeLogProperties()),
+				beans.getBeanProvider(DirectorySyncService.class), properties);
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectorySnapshotStoreTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void snapshotRoundTrip() throws Exception {
+		SnapshotProperties properties = new SnapshotProperties();
+		properties.setPath(tempDir.resolve("snapshot.bin").toString());
+
+		DirectoryCache source = new DirectoryCache();
+		UserDTO user = new UserDTO("u1", "Ada Lovelace", "ada@example.com", null);
+		user.setAccountEnabled(true);
+		source.putUser(user);
+		GroupDTO group = new GroupDTO("g1", "Engineering", null);
+		group.setGroupType("Security");
+		source.putGroup(group, true);
+		source.addGroupMember("g1", "u1");
+		source.addGroupMember("g1", "nested-group");
+		source.putRole(new RoleDTO("r1", "Global Reader", "Reads everything"));
+		source.addRoleMember("r1", "u1");
+		source.setUsersDeltaLink("https://graph.microsoft.com/v1.0/users/delta?$deltatoken=abc");
+		source.markLoaded();
+		new DirectorySnapshotStore(source, properties).write();
+
+		DirectoryCache restored = new DirectoryCache();
+		new DirectorySnapshotStore(restored, properties).load();
+
+		assertTrue(restored.isLoaded());
+		assertEquals("Ada Lovelace", restored.getUser("u1").getDisplayName());
+		assertEquals(true, restored.getUser("u1").getAccountEnabled());
+		assertEquals(null, restored.getUser("u1").getMail());
+		assertEquals(List.of("Engineering"), restored.getUserGroups("u1").stream().map(GroupDTO::getDisplayName).toList());
+		assertEquals(List.of("Global Reader"), restored.getUserRoles("u1"));
+		assertTrue(restored.getGroupMembers("g1").contains("nested-group"));
+		assertEquals(source.getUsersDeltaLink(), restored.getUsersDeltaLink());
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DirectorySyncServiceTests {
+
+	private final ObjectMapper json = new ObjectMapper();
+
+	@Test
+	void updatesReplaceCachedObjectsInsteadOfChangingThem() throws Exception {
+		DirectoryCache cache = new DirectoryCache();
+		UserDTO user = new UserDTO("u1", "Alice", "alice@contoso.com", null);
+		user.setDepartment("Sales");
+		cache.putUser(user);
+		GroupDTO group = new GroupDTO("g1", "Sales", null);
+		group.setGroupType("Security");
+		cache.putGroup(group, true);
+		RoleDTO role = new RoleDTO("r1", "Reader", null);
+		cache.putRole(role);
+		DirectorySyncService sync = new DirectorySyncService(null, null, cache,
+				new ChangeLog(cache, new InMemoryChangeStore(new ChangeLogProperties()), new ChangeLogProperties()), new CrawlProperties());
+
+		sync.applyUser(json.readTree("{\"id\":\"u1\",\"department\":\"Support\"}"));
+		sync.applyGroup(json.readTree("{\"id\":\"g1\",\"displayName\":\"Sales EMEA\"}"));
+		sync.applyRole(json.readTree("{\"id\":\"r1\",\"description\":\"Reads everything\"}"));
+
+		// Readers holding the old instances still see a consistent object
+		assertEquals("Sales", user.getDepartment());
+		assertEquals("Sales", group.getDisplayName());
+		assertNull(role.getDescription());
+
+		assertNotSame(user, cache.getUser("u1"));
+		assertEquals("Support", cache.getUser("u1").getDepartment());
+		assertEquals("Alice", cache.getUser("u1").getDisplayName());
+		assertEquals("alice@contoso.com", cache.getUserByPrincipalName("alice@contoso.com").getUserPrincipalName());
+		assertEquals("Sales EMEA", cache.getGroup("g1").getDisplayName());
+		assertEquals("Security", cache.getGroup("g1").getGroupType());
+		assertEquals("Reader", cache.getRole("r1").getDisplayName());
+		assertEquals("Reads everything", cache.getRole("r1").getDescription());
+	}
+
+	@Test
+	void expiredDeltaLinkIsReplacedByAFullRead() throws Exception {
+		DirectoryCache cache = new DirectoryCache();
+		for (String id : List.of("u1", "u2")) {
+			cache.putUser(new UserDTO(id, "User " + id, id + "@contoso.com", null));
+		}
+		cache.putGroup(new GroupDTO("g1", "Sales", null), true);
+		cache.addGroupMember("g1", "u1");
+		cache.addGroupMember("g1", "u2");
+		cache.putGroup(new GroupDTO("g2", "Gone", null), true);
+		cache.setUsersDeltaLink("users-expired");
+		cache.setGroupsDeltaLink("groups-expired");
+		cache.setRolesDeltaLink("roles-current");
+		cache.markLoaded();
+
+		GraphApiService graphApiService = Mockito.mock(GraphApiService.class);
+		WebClientResponseException gone = WebClientResponseException.create(410, "Gone", HttpHeaders.EMPTY,
+				"{\"error\":{\"code\":\"syncStateNotFound\"}}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+		Mockito.when(graphApiService.fetchJson("token", "users-expired")).thenThrow(gone);
+		Mockito.when(graphApiService.fetchJson("token", "groups-expired")).thenThrow(gone);
+		Mockito.when(graphApiService.fetchJson("token", DirectorySyncService.USERS_DELTA)).thenReturn(json.readTree(
+				"{\"value\":[{\"id\":\"u1\",\"displayName\":\"Alice\"}],\"@odata.deltaLink\":\"users-new\"}"));
+		// g1 is returned on two pages, each with part of its members
+		Mockito.when(graphApiService.fetchJson("token", DirectorySyncService.GROUPS_DELTA)).thenReturn(json.readTree(
+				"{\"value\":[{\"id\":\"g1\",\"securityEnabled\":true,\"members@delta\":[{\"id\":\"u1\"}]}],"
+						+ "\"@odata.nextLink\":\"groups-page-2\"}"));
+		Mockito.when(graphApiService.fetchJson("token", "groups-page-2")).thenReturn(json.readTree(
+				"{\"value\":[{\"id\":\"g1\",\"members@delta\":[{\"id\":\"u3\"}]}],\"@odata.deltaLink\":\"groups-new\"}"));
+		Mockito.when(graphApiService.fetchJson("token", "roles-current")).thenReturn(json.readTree(
+				"{\"value\":[],\"@odata.deltaLink\":\"roles-next\"}"));
+		AppTokenService appTokenService = Mockito.mock(AppTokenService.class);
+		Mockito.when(appTokenService.getAccessToken()).thenReturn("token");
+		ChangeLogProperties settings = new ChangeLogProperties();
+		ChangeLog changeLog = new ChangeLog(cache, new InMemoryChangeStore(settings), settings);
+		String start = changeLog.currentToken();
+
+		new DirectorySyncService(graphApiService, appTokenService, cache, changeLog, new CrawlProperties()).sync();
+
+		assertEquals("Alice", cache.getUser("u1").getDisplayName());
+		assertNull(cache.getUser("u2"));
+		assertNull(cache.getGroup("g2"));
+		assertEquals(Set.of("u1", "u3"), cache.getGroupMembers("g1"));
+		assertEquals("users-new", cache.getUsersDeltaLink());
+		assertEquals("groups-new", cache.getGroupsDeltaLink());
+		assertEquals("roles-next", cache.getRolesDeltaLink());
+		assertEquals(List.of("u2"), changeLog.getChangesSince(start, null).getDeletedUserIds());
+	}
+
+}
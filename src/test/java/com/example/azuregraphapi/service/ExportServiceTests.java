@@ -0,0 +1,119 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.ExportJobDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import com.example.azuregraphapi.dto.UserPageDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportServiceTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void jobsAreOnlyVisibleToTheAdminWhoStartedThem() throws Exception {
+		ExportService exports = exportService();
+		assertTrue(exports.isAdmin("ADMIN-OID"));
+		assertFalse(exports.isAdmin("other-oid"));
+		assertFalse(exports.isAdmin(null));
+
+		ExportJobDTO job = exports.startExport("ndjson", "admin-oid");
+		for (int i = 0; i < 100 && !ExportService.STATUS_COMPLETED.equals(job.getStatus()); i++) {
+			Thread.sleep(50);
+		}
+		exports.shutdown();
+
+		assertEquals(ExportService.STATUS_COMPLETED, job.getStatus());
+		assertNotNull(exports.getJob(job.getId(), "admin-oid"));
+		assertNotNull(exports.getOutputFile(job.getId(), "admin-oid"));
+		assertNull(exports.getJob(job.getId(), "other-oid"));
+		assertNull(exports.getOutputFile(job.getId(), "other-oid"));
+		assertNull(exports.getJob(job.getId(), null));
+
+		// The owner is kept in the checkpoint
+		ExportService restarted = exportService();
+		restarted.resumeInterruptedJobs();
+		restarted.shutdown();
+		assertNotNull(restarted.getJob(job.getId(), "admin-oid"));
+		assertNull(restarted.getJob(job.getId(), "other-oid"));
+	}
+
+	@Test
+	void pageWithMissingMembershipsIsReadAgainFromItsCursor() throws Exception {
+		UserPageDTO incomplete = page();
+		incomplete.setMembershipsMissing(List.of("u1"));
+		GraphApiService graphApiService = graphApiService(incomplete, page());
+		ExportService exports = exportService(graphApiService);
+
+		ExportJobDTO job = finished(exports.startExport("ndjson", "admin-oid"));
+		exports.shutdown();
+
+		assertEquals(ExportService.STATUS_COMPLETED, job.getStatus());
+		assertEquals(1, job.getUsersExported());
+		Mockito.verify(graphApiService, Mockito.times(2)).getUsersPage(ArgumentMatchers.any(), ArgumentMatchers.any(),
+				ArgumentMatchers.isNull(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+	}
+
+	@Test
+	void jobFailsWhenMembershipsStayMissing() throws Exception {
+		UserPageDTO incomplete = page();
+		incomplete.setMembershipsMissing(List.of("u1"));
+		ExportService exports = exportService(graphApiService(incomplete));
+
+		ExportJobDTO job = finished(exports.startExport("csv", "admin-oid"));
+		exports.shutdown();
+
+		assertEquals(ExportService.STATUS_FAILED, job.getStatus());
+		assertTrue(job.getError().contains("u1"));
+		assertEquals(0, job.getUsersExported());
+		assertEquals(0, job.getBytesWritten());
+	}
+
+	private static ExportJobDTO finished(ExportJobDTO job) throws InterruptedException {
+		for (int i = 0; i < 100 && (ExportService.STATUS_QUEUED.equals(job.getStatus())
+				|| ExportService.STATUS_RUNNING.equals(job.getStatus())); i++) {
+			Thread.sleep(50);
+		}
+		return job;
+	}
+
+	private static UserPageDTO page() {
+		UserDTO user = new UserDTO();
+		user.setId("u1");
+		return new UserPageDTO(List.of(user), null);
+	}
+
+	private static GraphApiService graphApiService(UserPageDTO first, UserPageDTO... then) {
+		GraphApiService graphApiService = Mockito.mock(GraphApiService.class);
+		Mockito.when(graphApiService.getUsersPage(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+				ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+				.thenReturn(first, then);
+		return graphApiService;
+	}
+
+	private ExportService exportService() {
+		return exportService(graphApiService(page()));
+	}
+
+	private ExportService exportService(GraphApiService graphApiService) {
+		ExportProperties settings = new ExportProperties();
+		settings.setPageRetryDelay(0);
+		settings.setDirectory(directory.toString());
+		settings.setAdmins(List.of("admin-oid"));
+		return new ExportService(graphApiService, Mockito.mock(AppTokenService.class), settings, new ObjectMapper());
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.FlightEvents;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightRecorderServiceTests {
+
+	@Test
+	void dumpContainsApplicationEventsButNoEnvironment() throws Exception {
+		FlightRecorderProperties properties = new FlightRecorderProperties();
+		properties.setAdmins(List.of("6f1c2e4a-0b7d-4a51-9a3e-2c5d8f0e1b77"));
+		FlightRecorderService service = new FlightRecorderService(properties);
+		assertTrue(service.isAdmin("6F1C2E4A-0B7D-4A51-9A3E-2C5D8F0E1B77"));
+		assertFalse(service.isAdmin("ops@contoso.com"));
+
+		service.startContinuous();
+		Path file = null;
+		try {
+			FlightEvents.cacheLookup("response", true);
+			file = service.dump();
+			List<RecordedEvent> all = RecordingFile.readAllEvents(file);
+			List<RecordedEvent> events = all.stream()
+					.filter(event -> event.getEventType().getName().equals("azuregraphapi.CacheLookup"))
+					.toList();
+			assertEquals(1, events.size());
+			assertEquals("response", events.get(0).getString("cache"));
+			assertTrue(events.get(0).getBoolean("hit"));
+
+			// No environment variables, system properties or JVM arguments
+			assertEquals(List.of(), all.stream().map(event -> event.getEventType().getName())
+					.filter(name -> Set.of("jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty",
+							"jdk.JVMInformation").contains(name))
+					.toList());
+		} finally {
+			service.close();
+			if (file != null) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.GraphProperties;
+import com.example.azuregraphapi.config.RequestDeadline;
+import com.example.azuregraphapi.config.SessionAuthenticationFilter;
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.example.azuregraphapi.dto.RoleDTO;
+import com.example.azuregraphapi.dto.SessionDTO;
+import com.example.azuregraphapi.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphApiServiceTests {
+
+	private final GraphQueryEngine queries = Mockito.mock(GraphQueryEngine.class);
+
+	@AfterEach
+	void clearRequest() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	void profileFailsWithTheDeadlineWhenMembershipsRunOutOfTime() {
+		UserDTO me = new UserDTO();
+		me.setId("u1");
+		Mockito.when(queries.get(ArgumentMatchers.eq("token"), ArgumentMatchers.eq("/me"), ArgumentMatchers.anyCollection(),
+				ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(Mono.just(me));
+		Mockito.when(queries.fetch(ArgumentMatchers.eq("token"), ArgumentMatchers.startsWith("/me/memberOf"),
+				ArgumentMatchers.any())).thenReturn(Mono.never());
+
+		MockHttpServletRequest request = request("token", 200);
+		RuntimeException e = assertThrows(RuntimeException.class, () -> service().getCurrentUser(null, request));
+		assertTrue(RequestDeadline.isExceeded(e), e.toString());
+	}
+
+	@Test
+	void directoryCacheOnlyAnswersCallersWhoMayReadTheDirectory() {
+		DirectoryCache cache = new DirectoryCache();
+		cache.putGroup(new GroupDTO("g1", "Cached", null), true);
+		cache.markGroupsLoaded();
+		Mockito.doReturn(Mono.just(List.of(new GroupDTO("g2", "From Graph", null))))
+				.when(queries).all(ArgumentMatchers.any(), ArgumentMatchers.any());
+		GraphApiService service = service(cache);
+
+		String reader = accessToken("openid User.Read Directory.Read.All");
+		assertEquals("Cached", service.getAllSecurityGroups(null, request(reader, 5000), null).get(0).getDisplayName());
+		Mockito.verifyNoInteractions(queries);
+
+		String user = accessToken("openid User.Read");
+		assertEquals("From Graph", service.getAllSecurityGroups(null, request(user, 5000), null).get(0).getDisplayName());
+		Mockito.verify(queries).all(ArgumentMatchers.eq(user), ArgumentMatchers.any());
+	}
+
+	@Test
+	void outageFallbackIsOnlyServedToTheCallerWhoseResultItWas() {
+		Mockito.doReturn(Mono.just(List.of(new RoleDTO("r1", "Global Reader", null))))
+				.doReturn(Mono.error(WebClientResponseException.create(503, "Service Unavailable", null, null, null)))
+				.when(queries).all(ArgumentMatchers.any(), ArgumentMatchers.any());
+		GraphApiService service = service();
+		Authentication alice = new UsernamePasswordAuthenticationToken("alice-oid", null, List.of());
+		Authentication bob = new UsernamePasswordAuthenticationToken("bob-oid", null, List.of());
+
+		assertEquals(List.of("Global Reader"), service.getAllCustomRoles(alice, request("token", 5000)));
+		assertThrows(GraphCircuitBreakers.GraphUnavailableException.class,
+				() -> service.getAllCustomRoles(bob, request("token", 5000)));
+		assertEquals(List.of("Global Reader"), service.getAllCustomRoles(alice, request("token", 5000)));
+	}
+
+	@Test
+	void cursorOnlyCarriesAGraphUsersPageLink() {
+		String nextLink = "https://graph.microsoft.com/v1.0/users?$top=100&$skiptoken=abc";
+		assertEquals(nextLink, GraphApiService.decodeCursor(GraphApiService.encodeCursor(nextLink)).toString());
+
+		for (String foreign : List.of("https://evil.example.com/v1.0/users?$skiptoken=abc",
+				"https://graph.microsoft.com.evil.example.com/v1.0/users?$skiptoken=abc",
+				"https://graph.microsoft.com@evil.example.com/v1.0/users?$skiptoken=abc",
+				"http://graph.microsoft.com/v1.0/users?$skiptoken=abc",
+				"https://graph.microsoft.com:8443/v1.0/users?$skiptoken=abc",
+				"https://graph.microsoft.com/v1.0/groups?$skiptoken=abc",
+				"https://graph.microsoft.com/v1.0/users/u1/memberOf?$skiptoken=abc",
+				"https://graph.microsoft.com/v1.0/users/../groups?$skiptoken=abc",
+				"https://graph.microsoft.com/v1.0/users")) {
+			String cursor = GraphApiService.encodeCursor(foreign);
+			assertThrows(IllegalArgumentException.class, () -> GraphApiService.decodeCursor(cursor), foreign);
+		}
+		for (String malformed : List.of("not base64!", "a",
+				GraphApiService.encodeCursor("https://graph.microsoft.com/v1.0/users?a b"))) {
+			assertThrows(IllegalArgumentException.class, () -> GraphApiService.decodeCursor(malformed), malformed);
+		}
+	}
+
+	private static String accessToken(String scopes) {
+		String claims = "{\"scp\":\"" + scopes + "\"}";
+		return "e30." + Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8))
+				+ ".signature";
+	}
+
+	/**
+	 * A request signed in with the access token and a deadline the given ms from now
+	 */
+	private static MockHttpServletRequest request(String accessToken, long deadlineIn) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setAttribute(SessionAuthenticationFilter.SESSION_ATTRIBUTE,
+				new SessionDTO("u1", "user@contoso.com", null, "default", accessToken, 0, Long.MAX_VALUE));
+		request.setAttribute(RequestDeadline.ATTRIBUTE, System.currentTimeMillis() + deadlineIn);
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		return request;
+	}
+
+	private GraphApiService service() {
+		return service(new DirectoryCache());
+	}
+
+	private GraphApiService service(DirectoryCache cache) {
+		TenantRegistry tenants = Mockito.mock(TenantRegistry.class);
+		TenantRegistry.Registration registration = new TenantRegistry.Registration("default", "tenant", "client",
+				"secret", List.of(), "https://login.microsoftonline.com/tenant/oauth2/v2.0/token", null, 1);
+		Mockito.when(tenants.resolve(ArgumentMatchers.any())).thenReturn(registration);
+		Mockito.when(tenants.isDefault(registration)).thenReturn(true);
+		return new GraphApiService(null, new GraphProperties(), cache,
+				new GraphCircuitBreakers(new CircuitBreakerProperties()), tenants,
+				new GraphHedger(new HedgingProperties(), new SimpleMeterRegistry(), ObservationRegistry.NOOP),
+				null, ObservationRegistry.NOOP, null, queries, null, null);
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.AdaptiveLimiter;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphCircuitBreakersTests {
+
+	@Test
+	void unavailableCarriesGraphRetryAfterThenTheRemainingOpenTime() {
+		CircuitBreakerProperties settings = new CircuitBreakerProperties();
+		settings.setMinimumCalls(2);
+		settings.setOpenDuration(60000);
+		GraphCircuitBreakers breakers = new GraphCircuitBreakers(settings);
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("Retry-After", "7");
+		WebClientResponseException throttled = WebClientResponseException.create(429, "Too Many Requests", headers,
+				new byte[0], StandardCharsets.UTF_8);
+
+		GraphCircuitBreakers.GraphUnavailableException first = assertThrows(
+				GraphCircuitBreakers.GraphUnavailableException.class,
+				() -> breakers.execute("groups", null, null, () -> { throw throttled; }));
+		assertEquals(7000, first.getRetryAfterMillis());
+
+		// The second failure opens the circuit for a minute
+		assertThrows(GraphCircuitBreakers.GraphUnavailableException.class,
+				() -> breakers.execute("groups", null, null, () -> { throw throttled; }));
+		GraphCircuitBreakers.GraphUnavailableException open = assertThrows(
+				GraphCircuitBreakers.GraphUnavailableException.class,
+				() -> breakers.execute("groups", null, null, () -> "not called"));
+		assertTrue(open.getRetryAfterMillis() > 55000 && open.getRetryAfterMillis() <= 60000,
+				String.valueOf(open.getRetryAfterMillis()));
+	}
+
+	@Test
+	void fullOutboundQueueIsRethrownWithoutOpeningTheCircuit() {
+		CircuitBreakerProperties settings = new CircuitBreakerProperties();
+		settings.setMinimumCalls(2);
+		GraphCircuitBreakers breakers = new GraphCircuitBreakers(settings);
+		AdaptiveLimiter.LimitExceededException busy = new AdaptiveLimiter.LimitExceededException("queue full");
+
+		for (int i = 0; i < 5; i++) {
+			assertSame(busy, assertThrows(AdaptiveLimiter.LimitExceededException.class,
+					() -> breakers.execute("groups", null, null, () -> { throw busy; })));
+		}
+		assertEquals("called", breakers.execute("groups", null, null, () -> "called"));
+	}
+
+}
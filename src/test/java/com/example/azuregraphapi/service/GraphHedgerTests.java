@@ -0,0 +1,37 @@
+package com.example.azuregraphapi.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GraphHedgerTests {
+
+	@Test
+	void slowFirstAttemptIsHedged() {
+		HedgingProperties properties = new HedgingProperties();
+		properties.setEnabled(true);
+		properties.setMinSamples(32);
+		properties.setWindow(64);
+		properties.setBudgetPercent(50);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		GraphHedger hedger = new GraphHedger(properties, registry, ObservationRegistry.NOOP);
+
+		for (int i = 0; i < 64; i++) {
+			hedger.hedge("me", () -> Mono.just("fast")).block();
+		}
+
+		AtomicInteger attempts = new AtomicInteger();
+		String result = hedger.hedge("me", () -> attempts.incrementAndGet() == 1 ?
+				Mono.delay(Duration.ofSeconds(5)).map(tick -> "slow") : Mono.just("hedge")).block(Duration.ofSeconds(2));
+
+		assertEquals("hedge", result);
+		assertEquals(1.0, registry.counter("graph.hedge.wins", "operation", "me").count());
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.GraphProperties;
+import com.example.azuregraphapi.dto.DirectoryFilter;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphQueryEngineTests {
+
+	@Test
+	void allFollowsNextLinksAndMapsItems() {
+		GraphQueryEngine engine = engine(request -> {
+			assertEquals("eventual", request.headers().getFirst("ConsistencyLevel"));
+			if (request.url().getQuery().contains("$skiptoken")) {
+				return "{\"value\":[{\"id\":\"g2\",\"displayName\":null,\"groupTypes\":[]}]}";
+			}
+			return "{\"value\":[{\"id\":\"g1\",\"displayName\":\"Sales\",\"groupTypes\":[\"Unified\"]}],"
+					+ "\"@odata.nextLink\":\"https://graph.microsoft.com/v1.0/groups?$skiptoken=abc\"}";
+		});
+
+		List<GroupDTO> groups = engine.all("token", GraphQuery.of("/groups", GraphMappers.GROUP)
+				.select(GraphMappers.GROUP_FIELDS)
+				.filter("securityEnabled eq true")
+				.eventual()).block();
+
+		assertEquals(2, groups.size());
+		assertEquals("Sales", groups.get(0).getDisplayName());
+		assertEquals("Microsoft 365", groups.get(0).getGroupType());
+		assertNull(groups.get(1).getDisplayName());
+		assertEquals("Security", groups.get(1).getGroupType());
+	}
+
+	@Test
+	void filterAndSearchValuesKeepPlusSigns() {
+		DirectoryFilter filter = new DirectoryFilter();
+		filter.setDepartment("R+D");
+		filter.setSearch("c++ & go");
+		GraphQueryEngine engine = engine(request -> {
+			String query = request.url().getRawQuery();
+			assertTrue(query.contains("%2B"), query);
+			assertFalse(query.contains("+"), query);
+			assertEquals("department eq 'R+D'", UriUtils.decode(param(query, "$filter"), StandardCharsets.UTF_8));
+			assertEquals("\"displayName:c++ & go\"", UriUtils.decode(param(query, "$search"), StandardCharsets.UTF_8));
+			return "{\"value\":[]}";
+		});
+
+		engine.page("token", GraphQuery.of("/users", GraphMappers.USER).where(filter, "displayName")).block();
+	}
+
+	@Test
+	void batchReturnsBodiesInRequestOrderAndNullForFailedParts() {
+		GraphQueryEngine engine = engine(request -> "{\"responses\":["
+				+ "{\"id\":\"1\",\"status\":404,\"body\":{}},"
+				+ "{\"id\":\"0\",\"status\":200,\"body\":{\"value\":[]}}]}");
+
+		List<JsonNode> results = engine.batch("token", List.of("/users/a/memberOf", "/users/b/memberOf")).block();
+
+		assertEquals(2, results.size());
+		assertEquals(0, results.get(0).get("value").size());
+		assertNull(results.get(1));
+	}
+
+	@Test
+	void batchSendsThrottledPartsAgainAfterTheirRetryAfter() {
+		AtomicInteger calls = new AtomicInteger();
+		GraphQueryEngine engine = engine(request -> calls.incrementAndGet() == 1 ?
+				"{\"responses\":["
+						+ "{\"id\":\"0\",\"status\":200,\"body\":{\"value\":[]}},"
+						+ "{\"id\":\"1\",\"status\":429,\"headers\":{\"retry-after\":\"1\"},\"body\":{}}]}" :
+				"{\"responses\":[{\"id\":\"0\",\"status\":200,\"body\":{\"value\":[{\"id\":\"g1\"}]}}]}");
+
+		long start = System.currentTimeMillis();
+		List<JsonNode> results = engine.batch("token", List.of("/users/a/memberOf", "/users/b/memberOf")).block();
+
+		assertTrue(System.currentTimeMillis() - start >= 1000);
+		assertEquals(2, calls.get());
+		assertEquals(0, results.get(0).get("value").size());
+		assertEquals("g1", results.get(1).get("value").get(0).get("id").asText());
+	}
+
+	private static String param(String query, String name) {
+		for (String pair : query.split("&")) {
+			if (pair.startsWith(name + "=")) {
+				return pair.substring(name.length() + 1);
+			}
+		}
+		return null;
+	}
+
+	private static GraphQueryEngine engine(Function<ClientRequest, String> responder) {
+		WebClient webClient = WebClient.builder()
+				.baseUrl("https://graph.microsoft.com/v1.0")
+				.exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+						.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+						.body(responder.apply(request))
+						.build()))
+				.build();
+		return new GraphQueryEngine(webClient, new GraphProperties(), ObservationRegistry.NOOP);
+	}
+}
@@ -0,0 +1,62 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.GraphProperties;
+import com.example.azuregraphapi.dto.GroupDTO;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class GroupCountServiceTests {
+
+	@Test
+	void countsComeFromOneBatchAndAreCached() {
+		AtomicInteger batches = new AtomicInteger();
+		WebClient webClient = WebClient.builder()
+				.baseUrl("https://graph.microsoft.com/v1.0")
+				.exchangeFunction(request -> {
+					batches.incrementAndGet();
+					return Mono.just(ClientResponse.create(HttpStatus.OK)
+							.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+							.body("{\"responses\":["
+									+ "{\"id\":\"0\",\"status\":200,\"body\":42},"
+									+ "{\"id\":\"1\",\"status\":404,\"body\":{}}]}")
+							.build());
+				})
+				.build();
+		GroupCountService service = new GroupCountService(
+				new GraphQueryEngine(webClient, new GraphProperties(), ObservationRegistry.NOOP), new GroupCountProperties());
+		List<GroupDTO> groups = List.of(new GroupDTO("g1", "Sales", null), new GroupDTO("g2", "Support", null));
+
+		List<GroupDTO> counted = service.withCounts("token", "default", groups);
+		assertEquals(1, batches.get());
+		assertEquals(42L, counted.get(0).getMemberCount());
+		assertNull(counted.get(1).getMemberCount());
+		assertNull(groups.get(0).getMemberCount());
+
+		// g1 is answered from the cache, only g2 is requested again
+		service.withCounts("token", "default", List.of(groups.get(0)));
+		assertEquals(1, batches.get());
+		service.withCounts("token", "default", groups);
+		assertEquals(2, batches.get());
+	}
+
+	@Test
+	void readsCountBodiesInAnyEncoding() {
+		assertEquals(7L, GroupCountService.countOf(TextNode.valueOf("7")));
+		assertEquals(12L, GroupCountService.countOf(TextNode.valueOf("MTI=")));
+		assertNull(GroupCountService.countOf(TextNode.valueOf("n/a")));
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdTokenVerifierTests {
+
+	private static final String TENANT_ID = "4f402a0a-52d8-435d-9834-23cc12ede3ff";
+	private static final String AUTHORITY = "https://login.microsoftonline.com/" + TENANT_ID;
+
+	private final TenantRegistry.Registration tenant = new TenantRegistry.Registration("default", TENANT_ID,
+			"client-id", "secret", List.of("openid"), AUTHORITY + "/oauth2/v2.0/token",
+			AUTHORITY + "/discovery/v2.0/keys", 1);
+
+	@Test
+	void verifiesSignatureIssuerAndAudience() throws Exception {
+		RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+		IdTokenVerifier verifier = verifier(key);
+
+		Jwt jwt = verifier.verify(sign(key, "client-id"), tenant);
+		assertEquals("alice@contoso.com", jwt.getClaimAsString("preferred_username"));
+		assertEquals("Alice", jwt.getClaimAsString("name"));
+
+		assertThrows(JwtException.class, () -> verifier.verify(sign(key, "other-client"), tenant));
+		RSAKey otherKey = new RSAKeyGenerator(2048).keyID("k1").generate();
+		assertThrows(JwtException.class, () -> verifier.verify(sign(otherKey, "client-id"), tenant));
+	}
+
+	private IdTokenVerifier verifier(RSAKey key) {
+		String jwks = new JWKSet(key.toPublicJWK()).toString();
+		WebClient webClient = WebClient.builder()
+				.exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+						.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+						.body(jwks)
+						.build()))
+				.build();
+		TenantRegistry registry = Mockito.mock(TenantRegistry.class);
+		Mockito.when(registry.getAll()).thenReturn(List.of(tenant));
+		return new IdTokenVerifier(webClient, registry, new IdTokenProperties());
+	}
+
+	private static String sign(RSAKey key, String audience) throws Exception {
+		JWTClaimsSet claims = new JWTClaimsSet.Builder()
+				.issuer(AUTHORITY + "/v2.0")
+				.audience(audience)
+				.subject("subject")
+				.claim("tid", TENANT_ID)
+				.claim("preferred_username", "alice@contoso.com")
+				.claim("name", "Alice")
+				.issueTime(new Date())
+				.expirationTime(new Date(System.currentTimeMillis() + 60_000))
+				.build();
+		SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+		jwt.sign(new RSASSASigner(key));
+		return jwt.serialize();
+	}
+
+}
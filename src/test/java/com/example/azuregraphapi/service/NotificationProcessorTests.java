@@ -0,0 +1,71 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NotificationProcessorTests {
+
+	@Test
+	void deletionsAreAppliedDirectlyAndOtherChangesRunOneDeltaRound() {
+		DirectoryCache cache = cache();
+		DirectorySyncService sync = Mockito.mock(DirectorySyncService.class);
+
+		processor(cache, sync).apply(List.of(
+				new NotificationProcessor.Change(NotificationProcessor.TYPE_USER, "u1", "deleted"),
+				new NotificationProcessor.Change(NotificationProcessor.TYPE_USER, "u2", "updated"),
+				new NotificationProcessor.Change(NotificationProcessor.TYPE_GROUP, "g1", "updated")));
+
+		assertNull(cache.getUser("u1"));
+		assertNotNull(cache.getUser("u2"));
+		Mockito.verify(sync, Mockito.times(1)).sync();
+	}
+
+	@Test
+	void missedNotificationsRunADeltaRound() {
+		DirectorySyncService sync = Mockito.mock(DirectorySyncService.class);
+
+		processor(cache(), sync).apply(List.of(new NotificationProcessor.Change(null, null,
+				NotificationProcessor.CHANGE_MISSED)));
+
+		Mockito.verify(sync).sync();
+	}
+
+	@Test
+	void onlyTheLastChangePerObjectCounts() {
+		DirectoryCache cache = cache();
+		DirectorySyncService sync = Mockito.mock(DirectorySyncService.class);
+
+		processor(cache, sync).apply(List.of(
+				new NotificationProcessor.Change(NotificationProcessor.TYPE_USER, "u1", "updated"),
+				new NotificationProcessor.Change(NotificationProcessor.TYPE_USER, "u1", "deleted")));
+
+		assertNull(cache.getUser("u1"));
+		Mockito.verify(sync, Mockito.never()).sync();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static NotificationProcessor processor(DirectoryCache cache, DirectorySyncService sync) {
+		ObjectProvider<DirectorySyncService> provider = Mockito.mock(ObjectProvider.class);
+		Mockito.when(provider.getIfAvailable()).thenReturn(sync);
+		ChangeLogProperties settings = new ChangeLogProperties();
+		return new NotificationProcessor(cache, new ChangeLog(cache, new InMemoryChangeStore(settings), settings),
+				provider, new NotificationProperties());
+	}
+
+	private static DirectoryCache cache() {
+		DirectoryCache cache = new DirectoryCache();
+		for (String id : List.of("u1", "u2")) {
+			cache.putUser(new UserDTO(id, "User " + id, id + "@contoso.com", null));
+		}
+		cache.markLoaded();
+		return cache;
+	}
+
+}
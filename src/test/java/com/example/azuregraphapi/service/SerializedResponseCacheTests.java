@@ -0,0 +1,63 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.config.ResponseFormats;
+import com.example.azuregraphapi.config.TenantRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SerializedResponseCacheTests {
+
+	@AfterEach
+	void clearAuthentication() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void usersGetTheirOwnResponsesForTheSameUri() {
+		TenantRegistry tenants = Mockito.mock(TenantRegistry.class);
+		Mockito.when(tenants.resolve(ArgumentMatchers.any())).thenReturn(
+				new TenantRegistry.Registration("default", "tenant", "client", "secret", List.of(), null, null, 1));
+		SerializedResponseCache cache = new SerializedResponseCache(
+				new ResponseFormats(new ObjectMapper(), new Jackson2ObjectMapperBuilder()), new DirectoryCache(),
+				tenants, new ResponseCacheProperties());
+
+		signIn("alice-oid");
+		cache.put(request(), List.of("Alice's groups"), Map.of());
+		assertEquals("[\"Alice's groups\"]", new String(cache.get(request()).body(), StandardCharsets.UTF_8));
+
+		signIn("bob-oid");
+		assertNull(cache.get(request()));
+		cache.put(request(), List.of("Bob's groups"), Map.of());
+		assertEquals("[\"Bob's groups\"]", new String(cache.get(request()).body(), StandardCharsets.UTF_8));
+
+		signIn("alice-oid");
+		assertEquals("[\"Alice's groups\"]", new String(cache.get(request()).body(), StandardCharsets.UTF_8));
+	}
+
+	private static void signIn(String userId) {
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(userId, null, Collections.emptyList()));
+	}
+
+	private static MockHttpServletRequest request() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/groups");
+		request.setQueryString("namePrefix=Sales");
+		return request;
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.example.azuregraphapi.service;
+
+import com.example.azuregraphapi.dto.SessionDTO;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SessionServiceTests {
+
+	private static final String KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+	@Test
+	void storeHoldsNeitherTheSessionCodeNorTheAccessToken() {
+		InMemorySessionStore store = new InMemorySessionStore();
+		SessionService sessions = new SessionService(store, settings("jdbc", KEY));
+
+		String code = sessions.create(session());
+		assertNull(store.find(code));
+		byte[] stored = store.find(SessionService.idOf(code));
+		assertNotNull(stored);
+		assertFalse(new String(stored, StandardCharsets.ISO_8859_1).contains("access-token-value"));
+
+		// Another node with the same key reads it, one with another key does not
+		assertEquals("access-token-value",
+				new SessionService(store, settings("jdbc", KEY)).find(code).getAccessToken());
+		String otherKey = Base64.getEncoder().encodeToString(new byte[16]);
+		assertNull(new SessionService(store, settings("jdbc", otherKey)).find(code));
+	}
+
+	@Test
+	void jdbcStoreRequiresAnEncryptionKey() {
+		assertThrows(IllegalStateException.class, () -> new SessionService(new InMemorySessionStore(), settings("jdbc", null)));
+		assertThrows(IllegalStateException.class, () -> new SessionService(new InMemorySessionStore(), settings("jdbc", "c2hvcnQ=")));
+		assertNotNull(new SessionService(new InMemorySessionStore(), settings("memory", null)));
+	}
+
+	private static SessionProperties settings(String store, String encryptionKey) {
+		SessionProperties settings = new SessionProperties();
+		settings.setStore(store);
+		settings.setEncryptionKey(encryptionKey);
+		return settings;
+	}
+
+	private static SessionDTO session() {
+		long now = System.currentTimeMillis();
+		return new SessionDTO("u1", "user@contoso.com", "User", "default", "access-token-value", now, now + 60000);
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.example.azuregraphapi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.HttpMethod;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SubscriptionManagerTests {
+
+	@Test
+	void clusterNeedsAConfiguredClientState() {
+		NotificationProperties settings = new NotificationProperties();
+		settings.setNotificationUrl("https://api.contoso.com/api/notifications");
+		SessionProperties sessions = new SessionProperties();
+		sessions.setStore("jdbc");
+
+		assertThrows(IllegalStateException.class, () -> new SubscriptionManager(null, null, settings, sessions,
+				new ChangeLogProperties()));
+
+		settings.setClientState("shared-secret");
+		new SubscriptionManager(null, null, settings, sessions, new ChangeLogProperties());
+	}
+
+	@Test
+	void subscriptionsOfOtherNodesAreAdoptedInsteadOfDeleted() throws Exception {
+		NotificationProperties settings = new NotificationProperties();
+		settings.setNotificationUrl("https://api.contoso.com/api/notifications");
+		settings.setClientState("shared-secret");
+		GraphApiService graphApiService = Mockito.mock(GraphApiService.class);
+		AppTokenService appTokenService = Mockito.mock(AppTokenService.class);
+		Mockito.when(appTokenService.getAccessToken()).thenReturn("token");
+		String url = "\"notificationUrl\":\"https://api.contoso.com/api/notifications\"";
+		String expires = "\"expirationDateTime\":\"2099-01-01T00:00:00.1234567Z\"";
+		Mockito.when(graphApiService.fetchJson("token", "/subscriptions")).thenReturn(new ObjectMapper().readTree("{\"value\":["
+				+ "{\"id\":\"ours\",\"resource\":\"users\",\"clientState\":\"shared-secret\"," + url + "," + expires + "},"
+				+ "{\"id\":\"stale\",\"resource\":\"groups\",\"clientState\":\"old-secret\"," + url + "," + expires + "},"
+				+ "{\"id\":\"unknown\",\"resource\":\"groups\"," + url + "," + expires + "},"
+				+ "{\"id\":\"elsewhere\",\"resource\":\"groups\",\"clientState\":\"other\","
+				+ "\"notificationUrl\":\"https://other.contoso.com/hook\"," + expires + "}]}"));
+		Mockito.when(graphApiService.sendJson(ArgumentMatchers.eq("token"), ArgumentMatchers.eq(HttpMethod.POST),
+				ArgumentMatchers.eq("/subscriptions"), ArgumentMatchers.any()))
+				.thenReturn(new ObjectMapper().readTree("{\"id\":\"created\"}"));
+
+		new SubscriptionManager(graphApiService, appTokenService, settings, new SessionProperties(),
+				new ChangeLogProperties()).onReady();
+
+		Mockito.verify(graphApiService).sendJson("token", HttpMethod.DELETE, "/subscriptions/stale", null);
+		Mockito.verify(graphApiService, Mockito.never()).sendJson("token", HttpMethod.DELETE, "/subscriptions/ours", null);
+		Mockito.verify(graphApiService, Mockito.never()).sendJson("token", HttpMethod.DELETE, "/subscriptions/unknown", null);
+		Mockito.verify(graphApiService, Mockito.never())
+				.sendJson("token", HttpMethod.DELETE, "/subscriptions/elsewhere", null);
+		// Only groups is created, users is covered by the adopted subscription
+		Mockito.verify(graphApiService, Mockito.times(1)).sendJson(ArgumentMatchers.eq("token"),
+				ArgumentMatchers.eq(HttpMethod.POST), ArgumentMatchers.eq("/subscriptions"), ArgumentMatchers.any());
+	}
+
+}